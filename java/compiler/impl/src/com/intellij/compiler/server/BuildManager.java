@@ -56,6 +56,7 @@ import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.startup.StartupManager;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.ShutDownTracker;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtil;
@@ -126,6 +127,9 @@ public class BuildManager implements ApplicationComponent{
   private static final String DEFAULT_LOGGER_CONFIG = "defaultLogConfig.xml";
   private static final int MAKE_TRIGGER_DELAY = 300 /*300 ms*/;
   private static final int DOCUMENT_SAVE_TRIGGER_DELAY = 1500 /*1.5 sec*/;
+  private static final String KEEP_ALIVE_TIMEOUT_KEY = "compiler.process.keep.alive.timeout";
+  // an idle process is not reused if it is going to exit soon
+  private static final long KEEP_ALIVE_REUSE_MARGIN = 5000L;
   private final boolean IS_UNIT_TEST_MODE;
   private static final String IWS_EXTENSION = ".iws";
   private static final String IPR_EXTENSION = ".ipr";
@@ -531,6 +535,7 @@ public class BuildManager implements ApplicationComponent{
             return;
           }
 
+          final int keepAliveTimeout = getKeepAliveTimeout();
           CmdlineRemoteProto.Message.ControllerMessage.GlobalSettings globals = myGlobals;
           if (globals == null) {
             globals = buildGlobalSettings();
@@ -538,6 +543,7 @@ public class BuildManager implements ApplicationComponent{
           }
           CmdlineRemoteProto.Message.ControllerMessage.FSEvent currentFSChanges;
           final SequentialTaskExecutor projectTaskQueue;
+          final ProjectData projectData;
           synchronized (myProjectDataMap) {
             ProjectData data = myProjectDataMap.get(projectPath);
             if (data == null) {
@@ -557,6 +563,7 @@ public class BuildManager implements ApplicationComponent{
             }
             currentFSChanges = data.getAndResetRescanFlag() ? null : data.createNextEvent();
             projectTaskQueue = data.taskQueue;
+            projectData = data;
           }
 
           final CmdlineRemoteProto.Message.ControllerMessage params;
@@ -572,7 +579,14 @@ public class BuildManager implements ApplicationComponent{
                      CmdlineProtoUtil.createForceCompileRequest(projectPath, scopes, paths, userData, globals, currentFSChanges);
           }
 
+          final Ref<Channel> sessionChannel = new Ref<Channel>();
           myMessageDispatcher.registerBuildMessageHandler(sessionId, new BuilderMessageHandlerWrapper(handler) {
+            @Override
+            public void handleBuildMessage(Channel channel, UUID sessionId, CmdlineRemoteProto.Message.BuilderMessage msg) {
+              sessionChannel.set(channel);
+              super.handleBuildMessage(channel, sessionId, msg);
+            }
+
             @Override
             public void sessionTerminated(UUID sessionId) {
               try {
@@ -582,7 +596,7 @@ public class BuildManager implements ApplicationComponent{
                 future.setDone();
               }
             }
-          }, params);
+          }, params, keepAliveTimeout > 0);
 
           try {
             projectTaskQueue.submit(new Runnable() {
@@ -594,30 +608,53 @@ public class BuildManager implements ApplicationComponent{
                     return;
                   }
                   myBuildsInProgress.put(projectPath, future);
-                  final OSProcessHandler processHandler = launchBuildProcess(project, myListenPort, sessionId);
-                  final StringBuilder stdErrOutput = new StringBuilder();
-                  processHandler.addProcessListener(new ProcessAdapter() {
-                    @Override
-                    public void onTextAvailable(ProcessEvent event, Key outputType) {
-                      // re-translate builder's output to idea.log
-                      final String text = event.getText();
-                      if (!StringUtil.isEmptyOrSpaces(text)) {
-                        LOG.info("BUILDER_PROCESS [" + outputType.toString() + "]: " + text.trim());
-                        if (stdErrOutput.length() < 1024 && ProcessOutputTypes.STDERR.equals(outputType)) {
-                          stdErrOutput.append(text);
-                        }
+                  final GeneralCommandLine cmdLine = createBuildProcessCommandLine(project, myListenPort, sessionId, keepAliveTimeout);
+                  final String launchSignature = getLaunchSignature(cmdLine, sessionId);
+                  BuildProcess process = takeReusableProcess(projectData, launchSignature, keepAliveTimeout * 1000L);
+                  if (process != null) {
+                    if (myMessageDispatcher.startSession(sessionId, process.channel)) {
+                      LOG.info("Reusing build process for " + projectPath);
+                    }
+                    else {
+                      process.destroyAndWait();
+                      process = null;
+                    }
+                  }
+                  if (process == null) {
+                    process = startBuildProcess(cmdLine, launchSignature);
+                  }
+                  final OSProcessHandler processHandler = process.handler;
+                  final boolean terminated;
+                  if (keepAliveTimeout > 0) {
+                    // the process does not exit after the build, so wait for the end of the session
+                    boolean exited = false;
+                    while (!future.isDone() && !exited) {
+                      exited = processHandler.waitFor(500L);
+                    }
+                    if (!exited) {
+                      final Channel channel = sessionChannel.get() != null? sessionChannel.get() : process.channel;
+                      if (channel != null && !project.isDisposed()) {
+                        process.channel = channel;
+                        process.idleSince = System.currentTimeMillis();
+                        projectData.setIdleProcess(process);
                       }
+                      else {
+                        processHandler.destroyProcess();
+                      }
+                      return;
                     }
-                  });
-                  processHandler.startNotify();
-                  final boolean terminated = processHandler.waitFor();
+                    terminated = true;
+                  }
+                  else {
+                    terminated = processHandler.waitFor();
+                  }
                   if (terminated) {
                     final int exitValue = processHandler.getProcess().exitValue();
                     if (exitValue != 0) {
                       final StringBuilder msg = new StringBuilder();
                       msg.append("Abnormal build process termination: ");
-                      if (stdErrOutput.length() > 0) {
-                        msg.append("\n").append(stdErrOutput);
+                      if (process.stdErrOutput.length() > 0) {
+                        msg.append("\n").append(process.stdErrOutput);
                       }
                       else {
                         msg.append("unknown error");
@@ -717,7 +754,45 @@ public class BuildManager implements ApplicationComponent{
     return cmdBuilder.build();
   }
 
-  private OSProcessHandler launchBuildProcess(Project project, final int port, final UUID sessionId) throws ExecutionException {
+  private static int getKeepAliveTimeout() {
+    return Math.max(0, Registry.intValue(KEEP_ALIVE_TIMEOUT_KEY));
+  }
+
+  /**
+   * Process launched with the same command line (except for the initial session id) can serve builds of another session
+   */
+  private static String getLaunchSignature(GeneralCommandLine cmdLine, UUID sessionId) {
+    return StringUtil.replace(cmdLine.getCommandLineString(), sessionId.toString(), "");
+  }
+
+  private BuildProcess startBuildProcess(GeneralCommandLine cmdLine, String launchSignature) throws ExecutionException {
+    final Process process = cmdLine.createProcess();
+
+    final OSProcessHandler processHandler = new OSProcessHandler(process, null, mySystemCharset) {
+      @Override
+      protected boolean shouldDestroyProcessRecursively() {
+        return true;
+      }
+    };
+    final BuildProcess buildProcess = new BuildProcess(processHandler, launchSignature);
+    processHandler.addProcessListener(new ProcessAdapter() {
+      @Override
+      public void onTextAvailable(ProcessEvent event, Key outputType) {
+        // re-translate builder's output to idea.log
+        final String text = event.getText();
+        if (!StringUtil.isEmptyOrSpaces(text)) {
+          LOG.info("BUILDER_PROCESS [" + outputType.toString() + "]: " + text.trim());
+          if (buildProcess.stdErrOutput.length() < 1024 && ProcessOutputTypes.STDERR.equals(outputType)) {
+            buildProcess.stdErrOutput.append(text);
+          }
+        }
+      }
+    });
+    processHandler.startNotify();
+    return buildProcess;
+  }
+
+  private GeneralCommandLine createBuildProcessCommandLine(Project project, final int port, final UUID sessionId, int keepAliveTimeout) throws ExecutionException {
     final String compilerPath;
     final String vmExecutablePath;
     JavaSdkVersion sdkVersion = null;
@@ -824,6 +899,9 @@ public class BuildManager implements ApplicationComponent{
       cmdLine.addParameter("-D"+ GlobalOptions.GENERATE_CLASSPATH_INDEX_OPTION +"=" + shouldGenerateIndex);
     }
     cmdLine.addParameter("-D"+ GlobalOptions.COMPILE_PARALLEL_OPTION +"=" + Boolean.toString(config.PARALLEL_COMPILATION));
+    if (keepAliveTimeout > 0) {
+      cmdLine.addParameter("-D"+ GlobalOptions.BUILD_PROCESS_KEEP_ALIVE_TIMEOUT_OPTION +"=" + keepAliveTimeout);
+    }
 
     boolean isProfilingMode = false;
     final String additionalOptions = config.COMPILER_PROCESS_ADDITIONAL_VM_OPTIONS;
@@ -891,14 +969,7 @@ public class BuildManager implements ApplicationComponent{
 
     cmdLine.setWorkDirectory(workDirectory);
 
-    final Process process = cmdLine.createProcess();
-
-    return new OSProcessHandler(process, null, mySystemCharset) {
-      @Override
-      protected boolean shouldDestroyProcessRecursively() {
-        return true;
-      }
-    };
+    return cmdLine;
   }
 
   public File getBuildSystemDirectory() {
@@ -1119,7 +1190,7 @@ public class BuildManager implements ApplicationComponent{
       Disposer.register(project, new Disposable() {
         @Override
         public void dispose() {
-          myProjectDataMap.remove(projectPath);
+          removeProjectData(projectPath);
         }
       });
       StartupManager.getInstance(project).registerPostStartupActivity(new Runnable() {
@@ -1145,7 +1216,7 @@ public class BuildManager implements ApplicationComponent{
 
     @Override
     public void projectClosed(Project project) {
-      myProjectDataMap.remove(getProjectPath(project));
+      removeProjectData(getProjectPath(project));
       final MessageBusConnection conn = myConnections.remove(project);
       if (conn != null) {
         conn.disconnect();
@@ -1153,14 +1224,79 @@ public class BuildManager implements ApplicationComponent{
     }
   }
 
-  private static class ProjectData {
+  private void removeProjectData(String projectPath) {
+    final ProjectData data = myProjectDataMap.remove(projectPath);
+    if (data != null) {
+      final BuildProcess process = data.takeIdleProcess();
+      if (process != null) {
+        process.handler.destroyProcess();
+      }
+    }
+  }
+
+  /**
+   * Takes the idle build process of the project if it can serve the next build.
+   * An idle process that cannot be reused is destroyed, and this method returns only after it has exited,
+   * so that it does not run together with the process launched instead of it
+   *
+   * @return the process to reuse or null if a new process has to be launched
+   */
+  @Nullable
+  static BuildProcess takeReusableProcess(ProjectData data, String launchSignature, long keepAliveTimeout) {
+    final BuildProcess process = data.takeIdleProcess();
+    if (process == null) {
+      return null;
+    }
+    if (process.isReusable(launchSignature, keepAliveTimeout)) {
+      return process;
+    }
+    process.destroyAndWait();
+    return null;
+  }
+
+  /**
+   * Build process launched for a project. If the process is kept alive between builds,
+   * it keeps the project loaded and serves the next builds of the project until it exits after the keep alive timeout
+   */
+  static class BuildProcess {
+    final OSProcessHandler handler;
+    final String launchSignature;
+    final StringBuilder stdErrOutput = new StringBuilder();
+    volatile Channel channel;
+    volatile long idleSince;
+
+    BuildProcess(OSProcessHandler handler, String launchSignature) {
+      this.handler = handler;
+      this.launchSignature = launchSignature;
+    }
+
+    public boolean isReusable(String launchSignature, long keepAliveTimeout) {
+      return this.launchSignature.equals(launchSignature) &&
+             isAlive() &&
+             System.currentTimeMillis() - idleSince < keepAliveTimeout - KEEP_ALIVE_REUSE_MARGIN;
+    }
+
+    protected boolean isAlive() {
+      final Channel channel = this.channel;
+      return channel != null && channel.isConnected() && !handler.isProcessTerminated();
+    }
+
+    protected void destroyAndWait() {
+      handler.destroyProcess();
+      handler.waitFor();
+    }
+  }
+
+  static class ProjectData {
     final SequentialTaskExecutor taskQueue;
     private final Set<String> myChanged = new THashSet<String>(FileUtil.PATH_HASHING_STRATEGY);
     private final Set<String> myDeleted = new THashSet<String>(FileUtil.PATH_HASHING_STRATEGY);
     private long myNextEventOrdinal = 0L;
     private boolean myNeedRescan = true;
+    @Nullable
+    private BuildProcess myIdleProcess;
 
-    private ProjectData(SequentialTaskExecutor taskQueue) {
+    ProjectData(SequentialTaskExecutor taskQueue) {
       this.taskQueue = taskQueue;
     }
 
@@ -1195,6 +1331,17 @@ public class BuildManager implements ApplicationComponent{
       return rescan;
     }
 
+    @Nullable
+    public synchronized BuildProcess takeIdleProcess() {
+      final BuildProcess process = myIdleProcess;
+      myIdleProcess = null;
+      return process;
+    }
+
+    public synchronized void setIdleProcess(BuildProcess process) {
+      myIdleProcess = process;
+    }
+
     public void dropChanges() {
       myNeedRescan = true;
       myNextEventOrdinal = 0L;
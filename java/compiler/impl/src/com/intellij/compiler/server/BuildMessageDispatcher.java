@@ -40,7 +40,42 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
   public void registerBuildMessageHandler(UUID sessionId,
                                           BuilderMessageHandler handler,
                                           CmdlineRemoteProto.Message.ControllerMessage params) {
-    myMessageHandlers.put(sessionId, new SessionData(sessionId, handler, params));
+    registerBuildMessageHandler(sessionId, handler, params, false);
+  }
+
+  /**
+   * @param keepAlive if true, the build process will not close the connection after the session is finished,
+   *                  so the session is terminated when its last message (build completed event or failure) is received
+   */
+  public void registerBuildMessageHandler(UUID sessionId,
+                                          BuilderMessageHandler handler,
+                                          CmdlineRemoteProto.Message.ControllerMessage params,
+                                          boolean keepAlive) {
+    myMessageHandlers.put(sessionId, new SessionData(sessionId, handler, params, keepAlive));
+  }
+
+  /**
+   * Starts the session in a build process that is already connected: build parameters are sent right away
+   * instead of waiting for the process to request them.
+   * @return false if the session is not registered or the channel is not connected anymore
+   */
+  public boolean startSession(UUID sessionId, Channel channel) {
+    final SessionData data = myMessageHandlers.get(sessionId);
+    if (data == null || !channel.isConnected()) {
+      return false;
+    }
+    final CmdlineRemoteProto.Message.ControllerMessage params = data.params;
+    if (params == null) {
+      return false;
+    }
+    data.params = null;
+    data.channel = channel;
+    data.handler.buildStarted(sessionId);
+    Channels.write(channel, CmdlineProtoUtil.toMessage(sessionId, params));
+    if (myCanceledSessions.contains(sessionId)) {
+      Channels.write(channel, CmdlineProtoUtil.toMessage(sessionId, CmdlineProtoUtil.createCancelCommand()));
+    }
+    return true;
   }
 
   @Nullable
@@ -79,8 +114,9 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
     SessionData sessionData = (SessionData)ctx.getAttachment();
 
     UUID sessionId;
-    if (sessionData == null) {
+    if (sessionData == null || (sessionData.keepAlive && !isSameSession(sessionData, message))) {
       // this is the first message for this session, so fill session data with missing info
+      // (a build process kept alive runs several sessions over the same channel one after another)
       final CmdlineRemoteProto.Message.UUID id = message.getSessionId();
       sessionId = new UUID(id.getMostSigBits(), id.getLeastSigBits());
 
@@ -108,6 +144,9 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
     switch (messageType) {
       case FAILURE:
         handler.handleFailure(sessionId, message.getFailure());
+        if (sessionData.keepAlive) {
+          terminateSession(ctx, sessionData);
+        }
         break;
 
       case BUILDER_MESSAGE:
@@ -126,6 +165,9 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
         }
         else {
           handler.handleBuildMessage(ctx.getChannel(), sessionId, builderMessage);
+          if (sessionData.keepAlive && isBuildCompletedEvent(builderMessage)) {
+            terminateSession(ctx, sessionData);
+          }
         }
         break;
 
@@ -135,6 +177,25 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
     }
   }
 
+  private static boolean isSameSession(SessionData sessionData, CmdlineRemoteProto.Message message) {
+    final CmdlineRemoteProto.Message.UUID id = message.getSessionId();
+    return sessionData.sessionId.getMostSignificantBits() == id.getMostSigBits() &&
+           sessionData.sessionId.getLeastSignificantBits() == id.getLeastSigBits();
+  }
+
+  private static boolean isBuildCompletedEvent(CmdlineRemoteProto.Message.BuilderMessage message) {
+    return message.getType() == CmdlineRemoteProto.Message.BuilderMessage.Type.BUILD_EVENT &&
+           message.getBuildEvent().getEventType() == CmdlineRemoteProto.Message.BuilderMessage.BuildEvent.Type.BUILD_COMPLETED;
+  }
+
+  private void terminateSession(ChannelHandlerContext ctx, SessionData sessionData) {
+    ctx.setAttachment(null);
+    final BuilderMessageHandler handler = unregisterBuildMessageHandler(sessionData.sessionId);
+    if (handler != null) {
+      handler.sessionTerminated(sessionData.sessionId);
+    }
+  }
+
   @Override
   public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
     try {
@@ -183,13 +244,15 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
   private static final class SessionData {
     final UUID sessionId;
     final BuilderMessageHandler handler;
+    final boolean keepAlive;
     volatile CmdlineRemoteProto.Message.ControllerMessage params;
     volatile Channel channel;
 
-    private SessionData(UUID sessionId, BuilderMessageHandler handler, CmdlineRemoteProto.Message.ControllerMessage params) {
+    private SessionData(UUID sessionId, BuilderMessageHandler handler, CmdlineRemoteProto.Message.ControllerMessage params, boolean keepAlive) {
       this.sessionId = sessionId;
       this.handler = handler;
       this.params = params;
+      this.keepAlive = keepAlive;
     }
   }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.server;
+
+import com.intellij.util.concurrency.SequentialTaskExecutor;
+import junit.framework.TestCase;
+
+import java.util.concurrent.Executor;
+
+public class BuildProcessReuseTest extends TestCase {
+  private static final String SIGNATURE = "signature";
+  private static final long KEEP_ALIVE_TIMEOUT = 60 * 1000L;
+
+  private BuildManager.ProjectData myData;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myData = new BuildManager.ProjectData(new SequentialTaskExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        command.run();
+      }
+    }));
+  }
+
+  public void testNoIdleProcess() throws Exception {
+    assertNull(BuildManager.takeReusableProcess(myData, SIGNATURE, KEEP_ALIVE_TIMEOUT));
+  }
+
+  public void testReusedWhenSignatureMatches() throws Exception {
+    final TestProcess process = setIdle(new TestProcess(SIGNATURE, true));
+    assertSame(process, BuildManager.takeReusableProcess(myData, SIGNATURE, KEEP_ALIVE_TIMEOUT));
+    assertFalse(process.destroyed);
+    assertNull(myData.takeIdleProcess());
+  }
+
+  public void testRelaunchedWhenSignatureDiffers() throws Exception {
+    final TestProcess process = setIdle(new TestProcess(SIGNATURE, true));
+    assertNull(BuildManager.takeReusableProcess(myData, "other " + SIGNATURE, KEEP_ALIVE_TIMEOUT));
+    assertTrue(process.destroyed);
+    assertNull(myData.takeIdleProcess());
+  }
+
+  public void testRelaunchedWhenProcessIsNotAlive() throws Exception {
+    final TestProcess process = setIdle(new TestProcess(SIGNATURE, false));
+    assertNull(BuildManager.takeReusableProcess(myData, SIGNATURE, KEEP_ALIVE_TIMEOUT));
+    assertTrue(process.destroyed);
+  }
+
+  public void testRelaunchedWhenProcessIsAboutToShutDown() throws Exception {
+    final TestProcess process = setIdle(new TestProcess(SIGNATURE, true));
+    process.idleSince = System.currentTimeMillis() - KEEP_ALIVE_TIMEOUT;
+    assertNull(BuildManager.takeReusableProcess(myData, SIGNATURE, KEEP_ALIVE_TIMEOUT));
+    assertTrue(process.destroyed);
+  }
+
+  private TestProcess setIdle(TestProcess process) {
+    process.idleSince = System.currentTimeMillis();
+    myData.setIdleProcess(process);
+    return process;
+  }
+
+  private static class TestProcess extends BuildManager.BuildProcess {
+    private final boolean myAlive;
+    boolean destroyed;
+
+    TestProcess(String launchSignature, boolean alive) {
+      super(null, launchSignature);
+      myAlive = alive;
+    }
+
+    @Override
+    protected boolean isAlive() {
+      return myAlive && !destroyed;
+    }
+
+    @Override
+    protected void destroyAndWait() {
+      destroyed = true;
+    }
+  }
+}
@@ -40,6 +40,16 @@ public class JavaChangeLocalityDetector implements ChangeLocalityDetector {
       // do not use this optimization for constructors and class initializers - to update non-initialized fields
       return parent;
     }
+    if (element instanceof PsiExpression
+        && parent instanceof PsiField
+        && ((PsiField)parent).getInitializer() == element
+        && !((PsiField)parent).hasModifierProperty(PsiModifier.FINAL)
+        && (grand = parent.getParent()) instanceof PsiClass
+        && !(grand instanceof PsiAnonymousClass)) {
+      // for changes inside initializer of a non-final field, rehighlight the field only
+      // final fields are excluded: they may be constants used elsewhere, and their initialization is checked in constructors
+      return parent;
+    }
     return null;
   }
-}
\ No newline at end of file
+}
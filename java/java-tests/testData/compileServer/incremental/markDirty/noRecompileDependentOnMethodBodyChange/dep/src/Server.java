@@ -0,0 +1,7 @@
+public class Server {
+  public static final int CONSTANT = 100;
+
+  public void run() {
+    System.out.println(CONSTANT);
+  }
+}
@@ -0,0 +1,6 @@
+public class Client {
+  public static void main(String[] args) {
+    System.out.println(Server.CONSTANT);
+    new Server().run();
+  }
+}
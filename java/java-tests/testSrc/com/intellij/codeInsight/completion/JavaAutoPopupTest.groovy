@@ -778,6 +778,26 @@ class Foo {
     assert lookup.shown
   }
 
+  public void testAutopopupShownBeforeSlowContributorFinishes() {
+    registerContributor(LongContributor, LoadingOrder.FIRST)
+
+    myFixture.configureByText("a.java", """ class Foo { { int abcdef, abcdefg; <caret> } } """)
+    edt { myFixture.type 'a' }
+    joinAutopopup()
+    def start = System.currentTimeMillis()
+    while (!lookup?.shown) {
+      assert System.currentTimeMillis() - start < 10000
+      Thread.sleep(1)
+    }
+    edt {
+      assert lookup.calculating
+      assert 'abcdef' in myFixture.lookupElementStrings
+    }
+    joinCompletion()
+    assert lookup.shown
+    assert !lookup.calculating
+  }
+
   private void joinSomething(int degree) {
     if (degree == 0) return
     joinAlarm()
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon;
+
+import com.intellij.codeHighlighting.Pass;
+import com.intellij.codeInsight.daemon.impl.DaemonCodeAnalyzerImpl;
+import com.intellij.codeInsight.daemon.impl.FileStatusMap;
+import com.intellij.codeInsight.daemon.impl.JavaChangeLocalityDetector;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+public class ChangeLocalityTest extends LightCodeInsightFixtureTestCase {
+  public void testNonFinalFieldInitializerIsLocal() throws Exception {
+    myFixture.configureByText("A.java", "class A {\n  int a = 1<caret>;\n  void foo() { }\n}");
+    final PsiField field = getFieldAtCaret();
+    assertSame(field, new JavaChangeLocalityDetector().getChangeHighlightingDirtyScopeFor(field.getInitializer()));
+
+    final TextRange scope = getDirtyScopeAfterTyping("2");
+    assertEquals(findFirst(PsiField.class).getTextRange(), scope);
+  }
+
+  public void testFinalFieldInitializerIsNotLocal() throws Exception {
+    myFixture.configureByText("A.java", "class A {\n  final int a = 1<caret>;\n  void foo() { }\n}");
+    final PsiField field = getFieldAtCaret();
+    assertNull(new JavaChangeLocalityDetector().getChangeHighlightingDirtyScopeFor(field.getInitializer()));
+
+    final TextRange scope = getDirtyScopeAfterTyping("2");
+    assertNotNull(scope);
+    assertTrue(scope.toString(), scope.contains(findFirst(PsiClass.class).getTextRange()));
+  }
+
+  public void testAnonymousClassFieldInitializerIsNotLocal() throws Exception {
+    myFixture.configureByText("A.java", "class A {\n  Object o = new Object() { int a = 1<caret>; };\n}");
+    final PsiField field = getFieldAtCaret();
+    assertNull(new JavaChangeLocalityDetector().getChangeHighlightingDirtyScopeFor(field.getInitializer()));
+  }
+
+  public void testMethodBodyIsLocal() throws Exception {
+    myFixture.configureByText("A.java", "class A {\n  int a = 1;\n  void foo() { int i = 0<caret>; }\n}");
+    final TextRange scope = getDirtyScopeAfterTyping("2");
+    assertEquals(findFirst(PsiMethod.class).getTextRange(), scope);
+  }
+
+  private PsiField getFieldAtCaret() {
+    final PsiField field = PsiTreeUtil.getParentOfType(getElementAtCaret(), PsiField.class);
+    assertNotNull(field);
+    assertNotNull(field.getInitializer());
+    return field;
+  }
+
+  private <T extends PsiElement> T findFirst(Class<T> aClass) {
+    final T element = PsiTreeUtil.findChildOfType(myFixture.getFile(), aClass);
+    assertNotNull(element);
+    return element;
+  }
+
+  private PsiElement getElementAtCaret() {
+    return myFixture.getFile().findElementAt(myFixture.getCaretOffset() - 1);
+  }
+
+  private TextRange getDirtyScopeAfterTyping(final String text) {
+    final Document document = myFixture.getEditor().getDocument();
+    final FileStatusMap fileStatusMap = ((DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(getProject())).getFileStatusMap();
+    fileStatusMap.markFileUpToDate(document, Pass.UPDATE_ALL);
+    assertNull(fileStatusMap.getFileDirtyScope(document, Pass.UPDATE_ALL));
+
+    new WriteCommandAction.Simple(getProject()) {
+      @Override
+      protected void run() throws Throwable {
+        document.insertString(myFixture.getCaretOffset(), text);
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+      }
+    }.execute().throwException();
+    return fileStatusMap.getFileDirtyScope(document, Pass.UPDATE_ALL);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeInspection.*;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.codeInspection.sillyAssignment.SillyAssignmentInspection;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
+import com.intellij.psi.*;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LocalInspectionsChunksTest extends LightCodeInsightFixtureTestCase {
+  private static final String SPLIT_ELEMENTS_KEY = "daemon.inspections.split.elements";
+
+  public void testChunkedModeFindsSameProblems() throws Exception {
+    final StringBuilder text = new StringBuilder("class A {\n  void foo() {\n");
+    for (int i = 0; i < 400; i++) {
+      text.append("    int i").append(i).append(" = ").append(i).append(";\n");
+      text.append("    i").append(i).append(" = i").append(i).append(";\n");
+    }
+    text.append("  }\n}\n");
+    final PsiFile file = myFixture.configureByText("A.java", text.toString());
+
+    final LocalInspectionToolWrapper literals = new LocalInspectionToolWrapper(new LiteralsInspection());
+    final LocalInspectionToolWrapper sillyAssignment = new LocalInspectionToolWrapper(new SillyAssignmentInspection());
+    assertTrue(LocalInspectionsPass.canSplitElements(literals));
+    final List<LocalInspectionToolWrapper> tools = Arrays.asList(literals, sillyAssignment);
+
+    final List<String> normal = inspect(file, tools, false);
+    final List<String> chunked = inspect(file, tools, true);
+    assertEquals(800, normal.size());
+    assertEquals(normal, chunked);
+  }
+
+  private List<String> inspect(final PsiFile file, final List<LocalInspectionToolWrapper> tools, boolean splitElements) {
+    final RegistryValue value = Registry.get(SPLIT_ELEMENTS_KEY);
+    final boolean oldValue = value.asBoolean();
+    value.setValue(splitElements);
+    try {
+      final List<String> problems = Collections.synchronizedList(new ArrayList<String>());
+      final LocalInspectionsPass pass = new LocalInspectionsPass(file, myFixture.getEditor().getDocument(), 0, file.getTextLength(),
+                                                                 LocalInspectionsPass.EMPTY_PRIORITY_RANGE, true) {
+        @Override
+        protected void addBatchProblemDescriptor(@NotNull LocalInspectionToolWrapper toolWrapper,
+                                                 @NotNull ProblemDescriptor descriptor,
+                                                 boolean filterSuppressed) {
+          final PsiElement element = descriptor.getPsiElement();
+          problems.add(toolWrapper.getShortName() + ": " + element.getTextRange() + " " + descriptor.getDescriptionTemplate());
+        }
+      };
+      final InspectionManagerEx manager = (InspectionManagerEx)InspectionManager.getInstance(getProject());
+      ProgressManager.getInstance().runProcess(new Runnable() {
+        @Override
+        public void run() {
+          ApplicationManager.getApplication().runReadAction(new Runnable() {
+            @Override
+            public void run() {
+              pass.doInspectInBatch(manager, tools);
+            }
+          });
+        }
+      }, new ProgressIndicatorBase());
+      Collections.sort(problems);
+      return problems;
+    }
+    finally {
+      value.setValue(oldValue);
+    }
+  }
+
+  private static class LiteralsInspection extends LocalInspectionTool {
+    @NotNull
+    @Override
+    public String getGroupDisplayName() {
+      return "Test";
+    }
+
+    @NotNull
+    @Override
+    public String getDisplayName() {
+      return "Literals";
+    }
+
+    @NotNull
+    @Override
+    public String getShortName() {
+      return "Literals";
+    }
+
+    @NotNull
+    @Override
+    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, boolean isOnTheFly) {
+      return new JavaElementVisitor() {
+        @Override
+        public void visitLiteralExpression(PsiLiteralExpression expression) {
+          holder.registerProblem(expression, "literal");
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection;
+
+import com.intellij.codeHighlighting.HighlightDisplayLevel;
+import com.intellij.codeInsight.daemon.HighlightDisplayKey;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.codeInspection.ex.InspectionProfileImpl;
+import com.intellij.codeInspection.ex.InspectionToolRegistrar;
+import com.intellij.codeInspection.ex.LocalInspectionResultsCache;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.codeInspection.redundantCast.RedundantCastInspection;
+import com.intellij.codeInspection.sillyAssignment.SillyAssignmentInspection;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.profile.codeInspection.InspectionProfileManager;
+import com.intellij.psi.*;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LocalInspectionResultsCacheTest extends LightCodeInsightFixtureTestCase {
+  private static final String PROFILE = "LocalInspectionResultsCacheTest";
+
+  private LocalInspectionResultsCache myCache;
+  private PsiClass myUsedClass;
+  private PsiFile myFile;
+  private List<LocalInspectionResultsCache.Problem> myProblems;
+  private String myToolsKey;
+
+  @Override
+  protected void setUp() throws Exception {
+    //noinspection AssignmentToStaticFieldFromInstanceMethod
+    InspectionProfileImpl.INIT_INSPECTIONS = true;
+    super.setUp();
+    InspectionToolRegistrar.getInstance().ensureInitialized();
+    myCache = ((InspectionManagerEx)InspectionManager.getInstance(getProject())).getLocalResultsCache();
+    myUsedClass = myFixture.addClass("public class B { public void foo() { } }");
+    myFile = myFixture.addFileToProject("A.java", "class A { void bar() { new B().foo(); } }");
+    final PsiClass aClass = ((PsiJavaFile)myFile).getClasses()[0];
+    final ProblemDescriptor descriptor = InspectionManager.getInstance(getProject())
+      .createProblemDescriptor(aClass.getMethods()[0], "problem", (LocalQuickFix)null, ProblemHighlightType.GENERIC_ERROR_OR_WARNING, false);
+    myProblems = Collections.singletonList(new LocalInspectionResultsCache.Problem("tool", descriptor, true));
+    myToolsKey = LocalInspectionResultsCache.getToolsKey(PROFILE, Collections.<LocalInspectionToolWrapper>emptyList());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myCache.clear();
+      InspectionProfileManager.getInstance().deleteProfile(PROFILE);
+    }
+    finally {
+      myCache = null;
+      myUsedClass = null;
+      myFile = null;
+      myProblems = null;
+      super.tearDown();
+      //noinspection AssignmentToStaticFieldFromInstanceMethod
+      InspectionProfileImpl.INIT_INSPECTIONS = false;
+    }
+  }
+
+  public void testReusedWhileNothingChanges() throws Exception {
+    myCache.putResults(myFile, myToolsKey, myProblems);
+    final List<LocalInspectionResultsCache.Problem> cached = myCache.getResults(myFile, myToolsKey);
+    assertNotNull(cached);
+    assertSame(myProblems.get(0), cached.get(0));
+  }
+
+  public void testChangeInCodeBlockOfOtherFileKeepsResults() throws Exception {
+    myCache.putResults(myFile, myToolsKey, myProblems);
+    final PsiCodeBlock body = myUsedClass.getMethods()[0].getBody();
+    assertNotNull(body);
+    change(new Runnable() {
+      @Override
+      public void run() {
+        body.add(getElementFactory().createStatementFromText("int i = 0;", body));
+      }
+    });
+    assertNotNull(myCache.getResults(myFile, myToolsKey));
+  }
+
+  public void testDeclarationChangeInOtherFileDropsResults() throws Exception {
+    myCache.putResults(myFile, myToolsKey, myProblems);
+    change(new Runnable() {
+      @Override
+      public void run() {
+        myUsedClass.add(getElementFactory().createMethodFromText("public void baz() { }", myUsedClass));
+      }
+    });
+    assertNull(myCache.getResults(myFile, myToolsKey));
+  }
+
+  public void testToolSettingsChangeDropsResults() throws Exception {
+    final InspectionProfileImpl profile = new InspectionProfileImpl(PROFILE);
+    myCache.putResults(myFile, myToolsKey, myProblems);
+
+    final ModifiableModel model = profile.getModifiableModel();
+    model.setErrorLevel(HighlightDisplayKey.find(new SillyAssignmentInspection().getShortName()), HighlightDisplayLevel.ERROR);
+    model.commit();
+    assertNull(myCache.getResults(myFile, myToolsKey));
+  }
+
+  public void testProfileActivationDropsResults() throws Exception {
+    myCache.putResults(myFile, myToolsKey, myProblems);
+    InspectionProfileManager.getInstance().fireProfileChanged(null, new InspectionProfileImpl(PROFILE), null);
+    assertNull(myCache.getResults(myFile, myToolsKey));
+  }
+
+  public void testChangedSetOfEnabledToolsDropsResults() throws Exception {
+    final LocalInspectionToolWrapper sillyAssignment = new LocalInspectionToolWrapper(new SillyAssignmentInspection());
+    final LocalInspectionToolWrapper redundantCast = new LocalInspectionToolWrapper(new RedundantCastInspection());
+    final String bothTools = LocalInspectionResultsCache.getToolsKey(PROFILE, Arrays.asList(sillyAssignment, redundantCast));
+    final String oneTool = LocalInspectionResultsCache.getToolsKey(PROFILE, Arrays.asList(sillyAssignment));
+    final String otherProfile = LocalInspectionResultsCache.getToolsKey("other", Arrays.asList(sillyAssignment, redundantCast));
+
+    myCache.putResults(myFile, bothTools, myProblems);
+    assertNotNull(myCache.getResults(myFile, bothTools));
+    assertNull(myCache.getResults(myFile, oneTool));
+
+    myCache.putResults(myFile, bothTools, myProblems);
+    assertNull(myCache.getResults(myFile, otherProfile));
+  }
+
+  private void change(final Runnable change) {
+    new WriteCommandAction.Simple(getProject()) {
+      @Override
+      protected void run() throws Throwable {
+        change.run();
+      }
+    }.execute().throwException();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.search;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.Processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PsiSearchHelperFilesProcessingTest extends LightCodeInsightFixtureTestCase {
+  private static final int FILES_COUNT = 50;
+
+  private List<VirtualFile> myFiles;
+  private final ConcurrentHashMap<String, AtomicInteger> myProcessed = new ConcurrentHashMap<String, AtomicInteger>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFiles = new ArrayList<VirtualFile>();
+    for (int i = 0; i < FILES_COUNT; i++) {
+      myFiles.add(myFixture.addFileToProject("p/C" + i + ".java", "package p; class C" + i + " { }").getVirtualFile());
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myFiles = null;
+    super.tearDown();
+  }
+
+  public void testEveryFileIsProcessedOnce() throws Exception {
+    final Boolean result = getHelper().processPsiFileRootsAsync(myFiles, new Processor<PsiElement>() {
+      @Override
+      public boolean process(PsiElement root) {
+        markProcessed(root);
+        return true;
+      }
+    }, new ProgressIndicatorBase()).get();
+
+    assertTrue(result);
+    assertEquals(FILES_COUNT, myProcessed.size());
+    for (Map.Entry<String, AtomicInteger> entry : myProcessed.entrySet()) {
+      assertEquals(entry.getKey(), 1, entry.getValue().get());
+    }
+    final PsiSearchHelperImpl.SearchStatistics statistics = getHelper().getLastSearchStatistics();
+    assertNotNull(statistics);
+    assertEquals(FILES_COUNT, statistics.getMatchedCount());
+    assertEquals(FILES_COUNT, statistics.getScannedCount());
+    assertEquals(FILES_COUNT, statistics.getParsedCount());
+    assertFalse(statistics.isCanceled());
+  }
+
+  public void testStoppedProcessorStopsOtherWorkers() throws Exception {
+    final Boolean result = getHelper().processPsiFileRootsAsync(myFiles, new Processor<PsiElement>() {
+      @Override
+      public boolean process(PsiElement root) {
+        markProcessed(root);
+        return false;
+      }
+    }, new ProgressIndicatorBase()).get();
+
+    assertFalse(result);
+    assertStoppedEarly();
+    final PsiSearchHelperImpl.SearchStatistics statistics = getHelper().getLastSearchStatistics();
+    assertNotNull(statistics);
+    assertTrue(statistics.isCanceled());
+    assertEquals(0, statistics.getParsedCount());
+  }
+
+  public void testCancellationStopsOtherWorkers() throws Exception {
+    final ProgressIndicatorBase progress = new ProgressIndicatorBase();
+    try {
+      final Boolean result = getHelper().processPsiFileRootsAsync(myFiles, new Processor<PsiElement>() {
+        @Override
+        public boolean process(PsiElement root) {
+          markProcessed(root);
+          progress.cancel();
+          progress.checkCanceled();
+          return true;
+        }
+      }, progress).get();
+      assertFalse(result);
+    }
+    catch (ExecutionException e) {
+      assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof ProcessCanceledException);
+    }
+    catch (ProcessCanceledException ignored) {
+    }
+    assertStoppedEarly();
+  }
+
+  private void assertStoppedEarly() {
+    // every worker may have taken one file before it noticed the processing was stopped
+    assertTrue(String.valueOf(myProcessed.size()), myProcessed.size() >= 1);
+    assertTrue(String.valueOf(myProcessed.size()), myProcessed.size() <= Runtime.getRuntime().availableProcessors());
+  }
+
+  private void markProcessed(PsiElement root) {
+    final String name = root.getContainingFile().getName();
+    AtomicInteger count = myProcessed.get(name);
+    if (count == null) {
+      final AtomicInteger newCount = new AtomicInteger();
+      count = myProcessed.putIfAbsent(name, newCount);
+      if (count == null) count = newCount;
+    }
+    count.incrementAndGet();
+  }
+
+  private PsiSearchHelperImpl getHelper() {
+    return (PsiSearchHelperImpl)PsiSearchHelper.SERVICE.getInstance(getProject());
+  }
+}
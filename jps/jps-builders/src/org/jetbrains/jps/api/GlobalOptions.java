@@ -25,4 +25,31 @@ public interface GlobalOptions {
   String GENERATE_CLASSPATH_INDEX_OPTION = "generate.classpath.index";
   String COMPILE_PARALLEL_OPTION = "compile.parallel";
   String COMPILE_PARALLEL_MAX_THREADS_OPTION = "compile.parallel.max.threads";
+  /**
+   * Maximum number of warnings sent to the IDE during a build, further warnings are only counted; not limited by default
+   */
+  String COMPILE_MAX_WARNINGS_OPTION = "compile.max.warnings";
+  /**
+   * Maximum number of external javac processes started for the same JDK and VM options, used when chunks are compiled in parallel; 1 by default
+   */
+  String JAVAC_SERVER_POOL_SIZE_OPTION = "javac.server.pool.size";
+  /**
+   * Number of compilations after which an external javac process is restarted; non-positive value means never
+   */
+  String JAVAC_SERVER_MAX_COMPILATIONS_OPTION = "javac.server.max.compilations";
+  /**
+   * Number of threads used to copy resources of a target
+   */
+  String RESOURCES_COPY_THREADS_OPTION = "resources.copy.threads";
+  /**
+   * If true, resources are put to the output as hard links to source files when possible. Disabled by default:
+   * tools modifying output files in place would modify the sources as well
+   */
+  String RESOURCES_HARD_LINKS_OPTION = "resources.copy.hard.links";
+  String BUILD_CACHE_DIR_OPTION = "build.cache.dir";
+  /**
+   * Number of seconds the build process waits for the next build request after a build is finished.
+   * The process keeps the loaded project in memory while waiting. By default the process exits right after the build.
+   */
+  String BUILD_PROCESS_KEEP_ALIVE_TIMEOUT_OPTION = "build.process.keep.alive.timeout";
 }
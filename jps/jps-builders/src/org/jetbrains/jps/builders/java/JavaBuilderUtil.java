@@ -48,6 +48,7 @@ public class JavaBuilderUtil {
   private static final Key<Set<File>> ALL_AFFECTED_FILES_KEY = Key.create("_all_affected_files_");
   private static final Key<Set<File>> ALL_COMPILED_FILES_KEY = Key.create("_all_compiled_files_");
   public static final Key<Callbacks.ConstantAffectionResolver> CONSTANT_SEARCH_SERVICE = Key.create("_constant_search_service_");
+  private static final GlobalContextKey<AbiStatistics> ABI_STATISTICS_KEY = GlobalContextKey.create("_unchanged_abi_statistics_");
   private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.Builder");
 
   /**
@@ -94,6 +95,7 @@ public class JavaBuilderUtil {
           affectedBeforeDif.addAll(allAffectedFiles);
 
           final ModulesBasedFileFilter moduleBasedFilter = new ModulesBasedFileFilter(context, chunk);
+          final boolean abiChanged = isAbiChanged(globalMappings, delta, filesToCompile, removedPaths);
           final boolean incremental = globalMappings.differentiateOnIncrementalMake(
             delta, removedPaths, filesToCompile, allCompiledFiles, allAffectedFiles, moduleBasedFilter,
             CONSTANT_SEARCH_SERVICE.get(context)
@@ -116,6 +118,10 @@ public class JavaBuilderUtil {
             final Set<File> newlyAffectedFiles = new HashSet<File>(allAffectedFiles);
             newlyAffectedFiles.removeAll(affectedBeforeDif);
             newlyAffectedFiles.removeAll(allCompiledFiles); // the diff operation may have affected the class already compiled in thic compilation round
+            if (!abiChanged) {
+              // dependent chunks can not be affected if none of classes visible to them has changed
+              excludeFilesOutsideChunk(context, chunk, newlyAffectedFiles);
+            }
 
             final String infoMessage = "Dependency analysis found " + newlyAffectedFiles.size() + " affected files";
             LOG.info(infoMessage);
@@ -179,6 +185,57 @@ public class JavaBuilderUtil {
     }
   }
 
+  private static boolean isAbiChanged(Mappings globalMappings, Mappings delta, Collection<File> filesToCompile, Set<String> removedPaths) {
+    final List<File> pastSources = new ArrayList<File>(filesToCompile);
+    for (String path : removedPaths) {
+      pastSources.add(new File(path));
+    }
+    return globalMappings.getAbiFingerprint(pastSources) != delta.getAbiFingerprint(filesToCompile);
+  }
+
+  private static void excludeFilesOutsideChunk(CompileContext context, ModuleChunk chunk, Set<File> affectedFiles) {
+    final Set<ModuleBuildTarget> skippedTargets = new HashSet<ModuleBuildTarget>();
+    int skippedFiles = 0;
+    for (Iterator<File> iterator = affectedFiles.iterator(); iterator.hasNext(); ) {
+      final File file = iterator.next();
+      final JavaSourceRootDescriptor descriptor = context.getProjectDescriptor().getBuildRootIndex().findJavaRootDescriptor(context, file);
+      if (descriptor != null && !chunk.getTargets().contains(descriptor.target)) {
+        iterator.remove();
+        skippedTargets.add(descriptor.target);
+        skippedFiles++;
+      }
+    }
+    if (skippedFiles > 0) {
+      LOG.info("API of " + chunk.getName() + " is unchanged, " + skippedFiles + " affected files in " + skippedTargets.size() +
+               " dependent targets are not marked for recompilation");
+      synchronized (ABI_STATISTICS_KEY) {
+        AbiStatistics statistics = ABI_STATISTICS_KEY.get(context);
+        if (statistics == null) {
+          statistics = new AbiStatistics();
+          ABI_STATISTICS_KEY.set(context, statistics);
+        }
+        statistics.mySkippedTargets.addAll(skippedTargets);
+        statistics.mySkippedFiles += skippedFiles;
+      }
+    }
+  }
+
+  public static void reportAbiStatistics(CompileContext context) {
+    synchronized (ABI_STATISTICS_KEY) {
+      final AbiStatistics statistics = ABI_STATISTICS_KEY.get(context);
+      if (statistics != null) {
+        LOG.info("Unchanged API of compiled classes saved recompilation of " + statistics.mySkippedFiles + " files in " +
+                 statistics.mySkippedTargets.size() + " dependent targets");
+        ABI_STATISTICS_KEY.set(context, null);
+      }
+    }
+  }
+
+  private static class AbiStatistics {
+    private final Set<ModuleBuildTarget> mySkippedTargets = new HashSet<ModuleBuildTarget>();
+    private int mySkippedFiles;
+  }
+
   private static List<Pair<File, JpsModule>> checkAffectedFilesInCorrectModules(CompileContext context,
                                                                              Collection<File> affected,
                                                                              ModulesBasedFileFilter moduleBasedFilter) {
@@ -288,6 +288,67 @@ public class ClassRepr extends Proto {
     }
   }
 
+  /**
+   * @return hash of the class part visible to other classes: access, name, signature, supertypes, annotation properties
+   * and non-private fields and methods (including constant values). Method bodies and private members do not affect it.
+   * Order of members does not matter.
+   */
+  public long getAbiHash() {
+    long hash = hash(this, true);
+    hash = 31 * hash + hash(mySuperClass, false);
+    long interfacesHash = 0L;
+    for (TypeRepr.AbstractType anInterface : myInterfaces) {
+      interfacesHash += hash(anInterface, false);
+    }
+    hash = 31 * hash + interfacesHash;
+    long membersHash = 0L;
+    for (FieldRepr field : myFields) {
+      if ((field.access & Opcodes.ACC_PRIVATE) == 0) {
+        membersHash += hash(field, false);
+      }
+    }
+    for (MethodRepr method : myMethods) {
+      if ((method.access & Opcodes.ACC_PRIVATE) == 0) {
+        membersHash += 7 * hash(method, false);
+      }
+    }
+    hash = 31 * hash + membersHash;
+    long targetsHash = 0L;
+    for (ElemType target : myAnnotationTargets) {
+      targetsHash += target.ordinal() + 1;
+    }
+    hash = 31 * hash + targetsHash;
+    hash = 31 * hash + (myRetentionPolicy == null ? 0 : myRetentionPolicy.ordinal() + 1);
+    hash = 31 * hash + myOuterClassName;
+    return hash;
+  }
+
+  // FNV-1a over serialized form; for the class itself only the Proto part is taken
+  private static long hash(final RW.Savable savable, final boolean protoOnly) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    if (protoOnly) {
+      try {
+        final Proto proto = (Proto)savable;
+        out.writeInt(proto.access);
+        out.writeInt(proto.signature);
+        out.writeInt(proto.name);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    else {
+      savable.save(out);
+    }
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : bytes.toByteArray()) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
   public boolean isAnnotation() {
     return (access & Opcodes.ACC_ANNOTATION) > 0;
   }
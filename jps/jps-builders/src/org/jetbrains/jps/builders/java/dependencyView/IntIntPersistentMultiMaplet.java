@@ -15,26 +15,31 @@
  */
 package org.jetbrains.jps.builders.java.dependencyView;
 
-import com.intellij.openapi.util.Ref;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.SLRUCache;
 import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
 import com.intellij.util.io.KeyDescriptor;
 import com.intellij.util.io.PersistentHashMap;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntObjectProcedure;
-import gnu.trove.TIntProcedure;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
+ * Values are stored as a sequence of blocks, one per put: block is a number of ints followed by sorted ints,
+ * delta- and variable-length-encoded. Class name ids are enumerator ids and thus rather dense, so an int usually takes 1-2 bytes instead of 4.
+ * Values consisting of many appended blocks are rewritten as a single block when requested.
+ *
  * @author: db
  * Date: 08.03.11
  */
 class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   private static final TIntHashSet NULL_COLLECTION = new TIntHashSet();
   private static final int CACHE_SIZE = 128;
+  private static final int MAX_BLOCKS_BEFORE_COMPACTION = 8;
   private final PersistentHashMap<Integer, TIntHashSet> myMap;
   private final SLRUCache<Integer, TIntHashSet> myCache;
 
@@ -68,7 +73,20 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   @Override
   public TIntHashSet get(final int key) {
     final TIntHashSet collection = myCache.get(key);
-    return collection == NULL_COLLECTION? null : collection;
+    if (collection == NULL_COLLECTION) {
+      return null;
+    }
+    if (collection instanceof StoredIntSet && ((StoredIntSet)collection).getBlockCount() > MAX_BLOCKS_BEFORE_COMPACTION) {
+      // the same ids are appended again on every compilation of the same class, rewrite the value as one block
+      try {
+        myMap.put(key, collection);
+        ((StoredIntSet)collection).setBlockCount(1);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return collection;
   }
 
   @Override
@@ -93,24 +111,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
       myCache.remove(key);
       myMap.appendData(key, new PersistentHashMap.ValueDataAppender() {
         public void append(final DataOutput out) throws IOException {
-          final Ref<IOException> exRef = new Ref<IOException>();
-          value.forEach(new TIntProcedure() {
-            @Override
-            public boolean execute(int value) {
-              try {
-                out.writeInt(value);
-              }
-              catch (IOException e) {
-                exRef.set(e);
-                return false;
-              }
-              return true;
-            }
-          });
-          final IOException exception = exRef.get();
-          if (exception != null) {
-            throw exception;
-          }
+          writeBlock(out, value.toArray());
         }
       });
     }
@@ -125,7 +126,8 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
       myCache.remove(key);
       myMap.appendData(key, new PersistentHashMap.ValueDataAppender() {
         public void append(final DataOutput out) throws IOException {
-          out.writeInt(value);
+          DataInputOutputUtil.writeINT(out, 1);
+          DataInputOutputUtil.writeINT(out, value);
         }
       });
     }
@@ -252,36 +254,52 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
     }
   }
 
-  private static class IntSetExternalizer implements DataExternalizer<TIntHashSet> {
+  private static void writeBlock(final DataOutput out, final int[] values) throws IOException {
+    Arrays.sort(values);
+    DataInputOutputUtil.writeINT(out, values.length);
+    int prev = 0;
+    for (int value : values) {
+      DataInputOutputUtil.writeINT(out, value - prev);
+      prev = value;
+    }
+  }
+
+  /**
+   * Set read from storage, remembers the number of blocks its value consists of
+   */
+  static class StoredIntSet extends TIntHashSet {
+    private int myBlockCount;
+
+    int getBlockCount() {
+      return myBlockCount;
+    }
+
+    void setBlockCount(int blockCount) {
+      myBlockCount = blockCount;
+    }
+  }
+
+  static class IntSetExternalizer implements DataExternalizer<TIntHashSet> {
     @Override
     public void save(final DataOutput out, final TIntHashSet value) throws IOException {
-      final Ref<IOException> exRef = new Ref<IOException>(null);
-      value.forEach(new TIntProcedure() {
-        @Override
-        public boolean execute(int elem) {
-          try {
-            out.writeInt(elem);
-          }
-          catch (IOException e) {
-            exRef.set(e);
-            return false;
-          }
-          return true;
-        }
-      });
-      final IOException exception = exRef.get();
-      if (exception != null) {
-        throw exception;
-      }
+      writeBlock(out, value.toArray());
     }
 
     @Override
     public TIntHashSet read(final DataInput in) throws IOException {
-      final TIntHashSet result = new TIntHashSet();
+      final StoredIntSet result = new StoredIntSet();
       final DataInputStream stream = (DataInputStream)in;
+      int blocks = 0;
       while (stream.available() > 0) {
-        result.add(in.readInt());
+        final int size = DataInputOutputUtil.readINT(in);
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+          value += DataInputOutputUtil.readINT(in);
+          result.add(value);
+        }
+        blocks++;
       }
+      result.setBlockCount(blocks);
       return result;
     }
   }
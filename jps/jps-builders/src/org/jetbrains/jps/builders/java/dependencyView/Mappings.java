@@ -2213,6 +2213,27 @@ public class Mappings {
     };
   }
 
+  /**
+   * @return order-independent fingerprint of the API of classes compiled from the given sources, see {@link ClassRepr#getAbiHash()};
+   *         local and anonymous classes are not visible outside of their sources and are not taken into account
+   */
+  public long getAbiFingerprint(final Collection<File> sources) {
+    synchronized (myLock) {
+      long fingerprint = 0L;
+      for (File source : sources) {
+        final Collection<ClassRepr> classes = mySourceFileToClasses.get(source);
+        if (classes != null) {
+          for (ClassRepr aClass : classes) {
+            if (!aClass.isLocal() && !aClass.isAnonymous()) {
+              fingerprint += aClass.getAbiHash();
+            }
+          }
+        }
+      }
+      return fingerprint;
+    }
+  }
+
   @Nullable
   public Set<ClassRepr> getClasses(final String sourceFileName) {
     synchronized (myLock) {
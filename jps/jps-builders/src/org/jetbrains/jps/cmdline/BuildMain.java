@@ -31,7 +31,9 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.api.CmdlineProtoUtil;
 import org.jetbrains.jps.api.CmdlineRemoteProto;
+import org.jetbrains.jps.api.GlobalOptions;
 import org.jetbrains.jps.incremental.Utils;
+import org.jetbrains.jps.incremental.java.JavacServerPool;
 import org.jetbrains.jps.service.SharedThreadPool;
 
 import java.io.File;
@@ -46,6 +48,7 @@ public class BuildMain {
   public static final Key<String> FORCE_MODEL_LOADING_PARAMETER = Key.create("_force_model_loading");
   private static final String LOG_FILE_NAME = "log.xml";
   private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.cmdline.BuildMain");
+  private static final long KEEP_ALIVE_TIMEOUT = Long.getLong(GlobalOptions.BUILD_PROCESS_KEEP_ALIVE_TIMEOUT_OPTION, 0L) * 1000L;
   private static NioClientSocketChannelFactory ourChannelFactory;
 
   public static void main(String[] args){
@@ -96,9 +99,25 @@ public class BuildMain {
   private static class MyMessageHandler extends SimpleChannelHandler {
     private final UUID mySessionId;
     private volatile BuildSession mySession;
+    // guarded by this
+    @Nullable
+    private WarmProjectState myWarmState;
+    private int mySessionCount;
+    private volatile Channel myChannel;
+    @Nullable
+    private final KeepAliveTimer myKeepAliveTimer;
 
     private MyMessageHandler(UUID sessionId) {
       mySessionId = sessionId;
+      myKeepAliveTimer = KEEP_ALIVE_TIMEOUT > 0L? new KeepAliveTimer(KEEP_ALIVE_TIMEOUT, new Runnable() {
+        public void run() {
+          LOG.info("No build requests for " + KEEP_ALIVE_TIMEOUT + " ms, exiting");
+          final Channel channel = myChannel;
+          if (channel != null) {
+            channel.close();
+          }
+        }
+      }) : null;
     }
 
     @Override
@@ -106,30 +125,41 @@ public class BuildMain {
       CmdlineRemoteProto.Message message = (CmdlineRemoteProto.Message)e.getMessage();
       final CmdlineRemoteProto.Message.Type type = message.getType();
       final Channel channel = ctx.getChannel();
+      myChannel = channel;
 
       if (type == CmdlineRemoteProto.Message.Type.CONTROLLER_MESSAGE) {
         final CmdlineRemoteProto.Message.ControllerMessage controllerMessage = message.getControllerMessage();
         switch (controllerMessage.getType()) {
 
           case BUILD_PARAMETERS: {
-            if (mySession == null) {
-              final CmdlineRemoteProto.Message.ControllerMessage.FSEvent delta = controllerMessage.hasFsEvent()? controllerMessage.getFsEvent() : null;
-              final BuildSession session = new BuildSession(mySessionId, channel, controllerMessage.getParamsMessage(), delta);
-              mySession = session;
-              SharedThreadPool.getInstance().executeOnPooledThread(new Runnable() {
-                public void run() {
-                  try {
-                    session.run();
-                  }
-                  finally {
-                    channel.close();
-                    System.exit(0);
-                  }
+            synchronized (this) {
+              if (mySession == null) {
+                if (myKeepAliveTimer != null && !myKeepAliveTimer.sessionStarted()) {
+                  LOG.info("Cannot start build session because the process is exiting");
+                  return;
                 }
-              });
-            }
-            else {
-              LOG.info("Cannot start another build session because one is already running");
+                // a process kept alive gets requests of several sessions
+                final CmdlineRemoteProto.Message.UUID id = message.getSessionId();
+                final UUID sessionId = new UUID(id.getMostSigBits(), id.getLeastSigBits());
+                final CmdlineRemoteProto.Message.ControllerMessage.FSEvent delta = controllerMessage.hasFsEvent()? controllerMessage.getFsEvent() : null;
+                final BuildSession session = new BuildSession(sessionId, channel, controllerMessage.getParamsMessage(), delta, myWarmState, KEEP_ALIVE_TIMEOUT > 0L);
+                myWarmState = null;
+                mySession = session;
+                mySessionCount++;
+                SharedThreadPool.getInstance().executeOnPooledThread(new Runnable() {
+                  public void run() {
+                    try {
+                      session.run();
+                    }
+                    finally {
+                      sessionFinished(session, channel);
+                    }
+                  }
+                });
+              }
+              else {
+                LOG.info("Cannot start another build session because one is already running");
+              }
             }
             return;
           }
@@ -157,7 +187,9 @@ public class BuildMain {
             }
             else {
               LOG.info("Cannot cancel build: no build session is running");
-              channel.close();
+              if (mySessionCount == 0) {
+                channel.close();
+              }
             }
             return;
           }
@@ -167,6 +199,24 @@ public class BuildMain {
       Channels.write(channel, CmdlineProtoUtil.toMessage(mySessionId, CmdlineProtoUtil.createFailure("Unsupported message type: " + type.name(), null)));
     }
 
+    private void sessionFinished(BuildSession session, Channel channel) {
+      if (myKeepAliveTimer != null && channel.isConnected()) {
+        synchronized (this) {
+          myWarmState = session.getWarmState();
+          mySession = null;
+        }
+        myKeepAliveTimer.sessionFinished();
+      }
+      else {
+        final WarmProjectState state = session.getWarmState();
+        if (state != null) {
+          state.release();
+        }
+        channel.close();
+        System.exit(0);
+      }
+    }
+
     @Override
     public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
       try {
@@ -176,6 +226,18 @@ public class BuildMain {
         new Thread("Shutdown thread") {
           public void run() {
             try {
+              final WarmProjectState state;
+              synchronized (MyMessageHandler.this) {
+                state = mySession == null? myWarmState : null;
+                myWarmState = null;
+              }
+              if (state != null) {
+                state.release();
+              }
+              if (myKeepAliveTimer != null) {
+                myKeepAliveTimer.dispose();
+              }
+              JavacServerPool.getInstance().shutdownAll();
               ourChannelFactory.releaseExternalResources();
             }
             finally {
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.cmdline;
+
+import com.intellij.openapi.util.Comparing;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+import org.jetbrains.jps.incremental.messages.CompilerMessage;
+import org.jetbrains.jps.incremental.messages.ProgressMessage;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which build messages are sent to the IDE, so that a build reporting lots of messages doesn't flood the IDE:
+ * <ul>
+ *   <li>a compiler warning or info message identical to an already reported one is sent only once;</li>
+ *   <li>warnings over {@link GlobalOptions#COMPILE_MAX_WARNINGS_OPTION} are not sent, their number is reported
+ *   by a single message instead (see {@link #takeDroppedWarningsMessage()});</li>
+ *   <li>progress text messages coming more often than every {@link #PROGRESS_INTERVAL_MS} ms are not sent,
+ *   they are replaced by the following ones anyway.</li>
+ * </ul>
+ * Errors are always sent. Messages may come from several builder threads.
+ */
+final class BuildMessageFilter {
+  private static final int MAX_WARNINGS = Integer.getInteger(GlobalOptions.COMPILE_MAX_WARNINGS_OPTION, -1);
+  private static final long PROGRESS_INTERVAL_MS = 50L;
+
+  private final int myMaxWarnings;
+  private final Set<MessageKey> myReportedMessages = new HashSet<MessageKey>();
+  private int myWarningsCount;
+  private int myMergedCount;
+  private int myDroppedWarningsCount;
+  private int myReportedDroppedWarningsCount;
+  private int myDroppedProgressCount;
+  private long myLastProgressTime;
+
+  BuildMessageFilter() {
+    this(MAX_WARNINGS);
+  }
+
+  /**
+   * @param maxWarnings number of warnings to send, negative for no limit
+   */
+  BuildMessageFilter(int maxWarnings) {
+    myMaxWarnings = maxWarnings;
+  }
+
+  public synchronized boolean accept(BuildMessage message) {
+    if (message instanceof CompilerMessage && message.getKind() != BuildMessage.Kind.ERROR) {
+      final CompilerMessage compilerMessage = (CompilerMessage)message;
+      if (!myReportedMessages.add(new MessageKey(compilerMessage))) {
+        myMergedCount++;
+        return false;
+      }
+      if (compilerMessage.getKind() == BuildMessage.Kind.WARNING && myMaxWarnings >= 0 && ++myWarningsCount > myMaxWarnings) {
+        myDroppedWarningsCount++;
+        return false;
+      }
+      return true;
+    }
+    if (message instanceof ProgressMessage && ((ProgressMessage)message).getDone() < 0.0f) {
+      final long now = System.currentTimeMillis();
+      if (now - myLastProgressTime < PROGRESS_INTERVAL_MS) {
+        myDroppedProgressCount++;
+        return false;
+      }
+      myLastProgressTime = now;
+    }
+    return true;
+  }
+
+  /**
+   * @return the text of the message telling how many warnings were not sent, or null if there were no such warnings
+   * or the message has already been taken
+   */
+  @Nullable
+  public synchronized String takeDroppedWarningsMessage() {
+    if (myDroppedWarningsCount == myReportedDroppedWarningsCount) {
+      return null;
+    }
+    final int count = myDroppedWarningsCount - myReportedDroppedWarningsCount;
+    myReportedDroppedWarningsCount = myDroppedWarningsCount;
+    return count + " more warnings were not shown";
+  }
+
+  @Override
+  public synchronized String toString() {
+    return myMergedCount + " duplicate messages merged, " + myDroppedWarningsCount + " warnings and " +
+           myDroppedProgressCount + " progress messages not sent";
+  }
+
+  private static final class MessageKey {
+    private final BuildMessage.Kind myKind;
+    private final String myCompilerName;
+    private final String myText;
+    @Nullable private final String mySourcePath;
+    private final long myLine;
+    private final long myColumn;
+
+    private MessageKey(CompilerMessage message) {
+      myKind = message.getKind();
+      myCompilerName = message.getCompilerName();
+      myText = message.getMessageText();
+      mySourcePath = message.getSourcePath();
+      myLine = message.getLine();
+      myColumn = message.getColumn();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof MessageKey)) return false;
+      final MessageKey key = (MessageKey)o;
+      return myKind == key.myKind &&
+             myLine == key.myLine &&
+             myColumn == key.myColumn &&
+             Comparing.equal(myText, key.myText) &&
+             Comparing.equal(mySourcePath, key.mySourcePath) &&
+             Comparing.equal(myCompilerName, key.myCompilerName);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = myKind.hashCode();
+      result = 31 * result + (myText != null ? myText.hashCode() : 0);
+      result = 31 * result + (mySourcePath != null ? mySourcePath.hashCode() : 0);
+      result = 31 * result + (int)(myLine ^ (myLine >>> 32));
+      result = 31 * result + (int)(myColumn ^ (myColumn >>> 32));
+      return result;
+    }
+  }
+}
@@ -25,6 +25,7 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.concurrency.SequentialTaskExecutor;
 import com.intellij.util.io.DataOutputStream;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.Channels;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.api.*;
@@ -58,6 +59,7 @@ import static org.jetbrains.jps.api.CmdlineRemoteProto.Message.ControllerMessage
 final class BuildSession implements Runnable, CanceledStatus {
   private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.cmdline.BuildSession");
   private static final String FS_STATE_FILE = "fs_state.dat";
+  private static final long WRITE_WAIT_TIMEOUT_MS = 10000L;
   private final UUID mySessionId;
   private final Channel myChannel;
   private volatile boolean myCanceled = false;
@@ -70,16 +72,28 @@ final class BuildSession implements Runnable, CanceledStatus {
   private volatile ProjectDescriptor myProjectDescriptor;
   private final Map<Pair<String, String>, ConstantSearchFuture> mySearchTasks = Collections.synchronizedMap(new HashMap<Pair<String, String>, ConstantSearchFuture>());
   private final ConstantSearch myConstantSearch = new ConstantSearch();
+  private final BuildMessageFilter myMessageFilter = new BuildMessageFilter();
+  private volatile ChannelFuture myLastWriteFuture;
   private final BuildRunner myBuildRunner;
   private final boolean myForceModelLoading;
   private BuildType myBuildType;
+  private final String myGlobalOptionsPath;
+  private final Map<String, String> myPathVars;
+  private final boolean myKeepWarm;
+  // in: the state left by the previous session of this process; out: the state to be passed to the next session
+  @Nullable
+  private volatile WarmProjectState myWarmState;
+  private long myConfigStamp;
 
   BuildSession(UUID sessionId,
                Channel channel,
                CmdlineRemoteProto.Message.ControllerMessage.ParametersMessage params,
-               @Nullable CmdlineRemoteProto.Message.ControllerMessage.FSEvent delta) {
+               @Nullable CmdlineRemoteProto.Message.ControllerMessage.FSEvent delta,
+               @Nullable WarmProjectState warmState, boolean keepWarm) {
     mySessionId = sessionId;
     myChannel = channel;
+    myWarmState = warmState;
+    myKeepWarm = keepWarm;
 
     // globals
     Map<String, String> pathVars = new HashMap<String, String>();
@@ -91,6 +105,8 @@ final class BuildSession implements Runnable, CanceledStatus {
     // session params
     myProjectPath = FileUtil.toCanonicalPath(params.getProjectId());
     String globalOptionsPath = FileUtil.toCanonicalPath(globals.getGlobalOptionsPath());
+    myGlobalOptionsPath = globalOptionsPath;
+    myPathVars = pathVars;
     myBuildType = convertCompileType(params.getBuildType());
     List<TargetTypeBuildScope> scopes = params.getScopeList();
     List<String> filePaths = params.getFilePathList();
@@ -152,8 +168,8 @@ final class BuildSession implements Runnable, CanceledStatus {
             }
             response = CmdlineProtoUtil.createCompileProgressMessageResponse(buildMessage.getMessageText(), done);
           }
-          if (response != null) {
-            Channels.write(myChannel, CmdlineProtoUtil.toMessage(mySessionId, response));
+          if (response != null && myMessageFilter.accept(buildMessage)) {
+            sendMessage(CmdlineProtoUtil.toMessage(mySessionId, response));
           }
         }
       }, this);
@@ -167,10 +183,35 @@ final class BuildSession implements Runnable, CanceledStatus {
       error = e;
     }
     finally {
+      reportFilteredMessages();
       finishBuild(error, hasErrors.get(), doneSomething.get());
     }
   }
 
+  private void reportFilteredMessages() {
+    LOG.info("Build messages: " + myMessageFilter);
+    final String droppedWarnings = myMessageFilter.takeDroppedWarningsMessage();
+    if (droppedWarnings != null) {
+      sendMessage(CmdlineProtoUtil.toMessage(mySessionId, CmdlineProtoUtil.createCompileMessage(
+        BuildMessage.Kind.WARNING, droppedWarnings, null, -1L, -1L, -1L, -1L, -1L, -1.0f)));
+    }
+  }
+
+  /**
+   * Messages are written asynchronously; when the IDE doesn't keep up with reading them and the channel's write buffer is full,
+   * the build waits until already queued messages are written instead of piling up more of them in memory.
+   * The wait is bounded, so that a stuck connection doesn't block the build forever.
+   */
+  private void sendMessage(CmdlineRemoteProto.Message message) {
+    final ChannelFuture lastWrite = myLastWriteFuture;
+    if (lastWrite != null && !myChannel.isWritable()) {
+      if (!lastWrite.awaitUninterruptibly(WRITE_WAIT_TIMEOUT_MS)) {
+        LOG.info("Build messages were not written in " + WRITE_WAIT_TIMEOUT_MS + " ms, sending without waiting");
+      }
+    }
+    myLastWriteFuture = Channels.write(myChannel, message);
+  }
+
   private void runBuild(final MessageHandler msgHandler, CanceledStatus cs) throws Throwable{
     final File dataStorageRoot = Utils.getDataStorageRoot(myProjectPath);
     if (dataStorageRoot == null) {
@@ -182,6 +223,12 @@ final class BuildSession implements Runnable, CanceledStatus {
       myBuildType = BuildType.PROJECT_REBUILD;
     }
 
+    final ProjectDescriptor warmDescriptor = takeWarmDescriptor();
+    if (warmDescriptor != null) {
+      runWarmBuild(warmDescriptor, dataStorageRoot, msgHandler, cs);
+      return;
+    }
+
     final DataInputStream fsStateStream = createFSDataStream(dataStorageRoot);
 
     if (fsStateStream != null) {
@@ -194,9 +241,13 @@ final class BuildSession implements Runnable, CanceledStatus {
     }
 
     final BuildFSState fsState = new BuildFSState(false);
+    boolean completed = false;
     try {
       final ProjectDescriptor pd = myBuildRunner.load(msgHandler, dataStorageRoot, fsState);
       myProjectDescriptor = pd;
+      if (myKeepWarm) {
+        myConfigStamp = WarmProjectState.computeConfigStamp(myProjectPath, myGlobalOptionsPath, myPathVars, pd.getProject());
+      }
       if (fsStateStream != null) {
         try {
           try {
@@ -220,12 +271,62 @@ final class BuildSession implements Runnable, CanceledStatus {
       myEventsProcessor.startProcessing();
 
       myBuildRunner.runBuild(pd, cs, myConstantSearch, msgHandler, myBuildType);
+      completed = true;
+    }
+    finally {
+      saveData(fsState, dataStorageRoot, completed);
+    }
+  }
+
+  /**
+   * @return descriptor kept by the process after the previous build if it can be used for this build, null otherwise
+   */
+  @Nullable
+  private ProjectDescriptor takeWarmDescriptor() {
+    final WarmProjectState state = myWarmState;
+    if (state == null) {
+      return null;
+    }
+    myWarmState = null;
+    final ProjectDescriptor pd = state.getDescriptor();
+    if (myInitialFSDelta != null && myBuildType != BuildType.PROJECT_REBUILD && !myForceModelLoading) {
+      final long configStamp = WarmProjectState.computeConfigStamp(myProjectPath, myGlobalOptionsPath, myPathVars, pd.getProject());
+      if (state.isValidFor(myProjectPath, myInitialFSDelta.getOrdinal(), configStamp)) {
+        myConfigStamp = configStamp;
+        return pd;
+      }
+    }
+    LOG.info("Project state kept from the previous build cannot be reused, loading project " + myProjectPath);
+    state.release();
+    return null;
+  }
+
+  private void runWarmBuild(ProjectDescriptor pd, File dataStorageRoot, MessageHandler msgHandler, CanceledStatus cs) throws Throwable {
+    LOG.info("Reusing project state kept from the previous build of " + myProjectPath);
+    boolean completed = false;
+    myProjectDescriptor = pd;
+    try {
+      applyFSEvent(pd, myInitialFSDelta, false);
+      myLastEventOrdinal = myInitialFSDelta.getOrdinal();
+      myInitialFSDelta = null;
+      myEventsProcessor.startProcessing();
+
+      myBuildRunner.runBuild(pd, cs, myConstantSearch, msgHandler, myBuildType);
+      completed = true;
     }
     finally {
-      saveData(fsState, dataStorageRoot);
+      saveData(pd.fsState, dataStorageRoot, completed);
     }
   }
 
+  /**
+   * @return project state to be used by the next build session of this process, or null if nothing is kept
+   */
+  @Nullable
+  public WarmProjectState getWarmState() {
+    return myWarmState;
+  }
+
   private static boolean scopeContainsModulesOnly(List<TargetTypeBuildScope> scopes) {
     for (TargetTypeBuildScope scope : scopes) {
       String typeId = scope.getTypeId();
@@ -236,12 +337,17 @@ final class BuildSession implements Runnable, CanceledStatus {
     return true;
   }
 
-  private void saveData(final BuildFSState fsState, File dataStorageRoot) {
+  private void saveData(final BuildFSState fsState, File dataStorageRoot, boolean completed) {
     final boolean wasInterrupted = Thread.interrupted();
     try {
       saveFsState(dataStorageRoot, fsState);
       final ProjectDescriptor pd = myProjectDescriptor;
       if (pd != null) {
+        if (myKeepWarm && completed) {
+          // storages are already flushed by the builder, keep them opened for the next session
+          pd.incUsageCounter();
+          myWarmState = new WarmProjectState(myProjectPath, myConfigStamp, pd, myLastEventOrdinal);
+        }
         pd.release();
       }
     }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.cmdline;
+
+import java.util.concurrent.*;
+
+/**
+ * Shuts down a build process kept alive between build sessions (see {@link BuildMain})
+ * when no session is started within the keep alive timeout after the previous one has finished.
+ */
+final class KeepAliveTimer {
+  private final long myTimeout;
+  private final Runnable myShutdown;
+  private final ScheduledExecutorService myScheduler;
+  // guarded by this
+  private int myGeneration;
+  private boolean myShutdownStarted;
+  private ScheduledFuture<?> myPending;
+
+  /**
+   * @param timeout keep alive timeout in ms
+   * @param shutdown called once on a timer thread when the timeout has passed
+   */
+  KeepAliveTimer(long timeout, Runnable shutdown) {
+    myTimeout = timeout;
+    myShutdown = shutdown;
+    myScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        final Thread thread = new Thread(r, "Build process keep alive timer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * @return false if the process is already shutting down and must not start the session
+   */
+  public synchronized boolean sessionStarted() {
+    if (myShutdownStarted) {
+      return false;
+    }
+    myGeneration++;
+    cancelPending();
+    return true;
+  }
+
+  public synchronized void sessionFinished() {
+    if (myShutdownStarted) {
+      return;
+    }
+    final int generation = ++myGeneration;
+    cancelPending();
+    myPending = myScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (KeepAliveTimer.this) {
+          if (myGeneration != generation || myShutdownStarted) {
+            return; // another session was started meanwhile
+          }
+          myShutdownStarted = true;
+          myPending = null;
+        }
+        myShutdown.run();
+      }
+    }, myTimeout, TimeUnit.MILLISECONDS);
+  }
+
+  public void dispose() {
+    myScheduler.shutdownNow();
+  }
+
+  private void cancelPending() {
+    if (myPending != null) {
+      myPending.cancel(false);
+      myPending = null;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.cmdline;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.model.JpsProject;
+import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.model.serialization.JpsModelSerializationDataService;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Project descriptor kept in memory by a build process between build sessions, see {@link BuildMain}.
+ * The descriptor holds opened storages and the file system state, so a following make of the same project
+ * only needs to apply file system changes made since the previous session.
+ * The state owns one usage of the descriptor, so it must be either passed to the next session or released.
+ */
+final class WarmProjectState {
+  private static final String WORKSPACE_FILE = "workspace.xml";
+
+  private final String myProjectPath;
+  private final long myConfigStamp;
+  private final ProjectDescriptor myDescriptor;
+  private final long myLastEventOrdinal;
+
+  WarmProjectState(String projectPath, long configStamp, ProjectDescriptor descriptor, long lastEventOrdinal) {
+    myProjectPath = projectPath;
+    myConfigStamp = configStamp;
+    myDescriptor = descriptor;
+    myLastEventOrdinal = lastEventOrdinal;
+  }
+
+  public ProjectDescriptor getDescriptor() {
+    return myDescriptor;
+  }
+
+  /**
+   * @return true if the kept descriptor is up to date for the project, i.e. the project configuration was not changed and
+   * the file system delta sent with the next build immediately follows the events already applied to the kept state.
+   */
+  public boolean isValidFor(String projectPath, long eventOrdinal, long configStamp) {
+    return myProjectPath.equals(projectPath) && myLastEventOrdinal + 1L == eventOrdinal && myConfigStamp == configStamp;
+  }
+
+  public void release() {
+    myDescriptor.release();
+  }
+
+  /**
+   * Computes a stamp of files the project model is loaded from: project files, module files and global options.
+   * The stamp changes whenever any of these files is added, removed or modified.
+   */
+  public static long computeConfigStamp(String projectPath, @Nullable String globalOptionsPath, Map<String, String> pathVars, JpsProject project) {
+    long stamp = pathVars.hashCode();
+    final File projectFile = new File(projectPath);
+    if (projectFile.isFile()) {
+      stamp = addFileStamp(stamp, projectFile);
+    }
+    else {
+      stamp = addDirectoryStamp(stamp, new File(projectFile, ".idea"), true);
+    }
+    if (globalOptionsPath != null) {
+      stamp = addDirectoryStamp(stamp, new File(globalOptionsPath), false);
+    }
+    for (JpsModule module : project.getModules()) {
+      final File baseDir = JpsModelSerializationDataService.getBaseDirectory(module);
+      final File[] children = baseDir != null? baseDir.listFiles() : null;
+      if (children != null) {
+        for (File child : children) {
+          if (FileUtil.extensionEquals(child.getName(), "iml")) {
+            stamp = addFileStamp(stamp, child);
+          }
+        }
+      }
+    }
+    return stamp;
+  }
+
+  private static long addDirectoryStamp(long stamp, File dir, boolean recursive) {
+    final File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          if (recursive) {
+            stamp = addDirectoryStamp(stamp, child, true);
+          }
+        }
+        else if (!WORKSPACE_FILE.equals(child.getName())) {
+          stamp = addFileStamp(stamp, child);
+        }
+      }
+    }
+    return stamp;
+  }
+
+  private static long addFileStamp(long stamp, File file) {
+    stamp = 31 * stamp + FileUtil.pathHashCode(file.getPath());
+    stamp = 31 * stamp + file.lastModified();
+    return 31 * stamp + file.length();
+  }
+}
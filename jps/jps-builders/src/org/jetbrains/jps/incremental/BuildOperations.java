@@ -15,7 +15,9 @@
  */
 package org.jetbrains.jps.incremental;
 
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.jps.builders.*;
@@ -31,19 +33,49 @@ import org.jetbrains.jps.incremental.messages.FileDeletedEvent;
 import org.jetbrains.jps.incremental.storage.BuildDataManager;
 import org.jetbrains.jps.incremental.storage.BuildTargetConfiguration;
 import org.jetbrains.jps.incremental.storage.Timestamps;
+import org.jetbrains.jps.service.SharedThreadPool;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Eugene Zhuravlev
  *         Date: 10/30/12
  */
 public class BuildOperations {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.BuildOperations");
+  private static final int FS_SCAN_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+  private static final GlobalContextKey<Set<BuildTarget<?>>> FULLY_DIRTY_TARGETS_KEY = GlobalContextKey.create("_fully_dirty_targets_");
+
   private BuildOperations() {
   }
 
+  /**
+   * @return true if all source files of the target were marked dirty during this build session
+   */
+  public static boolean isTargetFullyDirty(CompileContext context, BuildTarget<?> target) {
+    synchronized (FULLY_DIRTY_TARGETS_KEY) {
+      final Set<BuildTarget<?>> targets = context.getUserData(FULLY_DIRTY_TARGETS_KEY);
+      return targets != null && targets.contains(target);
+    }
+  }
+
+  private static void markTargetFullyDirty(CompileContext context, BuildTarget<?> target) {
+    synchronized (FULLY_DIRTY_TARGETS_KEY) {
+      Set<BuildTarget<?>> targets = context.getUserData(FULLY_DIRTY_TARGETS_KEY);
+      if (targets == null) {
+        targets = new THashSet<BuildTarget<?>>();
+        context.putUserData(FULLY_DIRTY_TARGETS_KEY, targets);
+      }
+      targets.add(target);
+    }
+  }
+
   public static void ensureFSStateInitialized(CompileContext context, BuildTarget<?> target) throws IOException {
     final ProjectDescriptor pd = context.getProjectDescriptor();
     final Timestamps timestamps = pd.timestamps.getStorage();
@@ -53,18 +85,77 @@ public class BuildOperations {
       FSOperations.markDirtyFiles(context, target, timestamps, true, null, null);
       pd.fsState.markInitialScanPerformed(target);
       configuration.save();
+      markTargetFullyDirty(context, target);
     }
     else if (context.getScope().isRecompilationForced(target) || configuration.isTargetDirty() || configuration.outputRootWasDeleted(context)) {
       initTargetFSState(context, target, true);
       IncProjectBuilder.clearOutputFiles(context, target);
       pd.dataManager.cleanTargetStorages(target);
       configuration.save();
+      markTargetFullyDirty(context, target);
     }
     else if (!pd.fsState.isInitialScanPerformed(target)) {
       initTargetFSState(context, target, false);
     }
   }
 
+  /**
+   * Performs the initial file system scan for affected targets which haven't been scanned yet, e.g. on the first build
+   * after the build process start when there is no saved file system state. Roots of different targets are traversed
+   * and checked against the timestamps storage on several threads. Targets which are going to be recompiled completely
+   * are skipped here and handled by {@link #ensureFSStateInitialized} as usual.
+   */
+  public static void initFSStateInParallel(final CompileContext context) {
+    if (context.isProjectRebuild()) {
+      return;
+    }
+    final ProjectDescriptor pd = context.getProjectDescriptor();
+    final List<BuildTarget<?>> targets = new ArrayList<BuildTarget<?>>();
+    for (BuildTarget<?> target : pd.getBuildTargetIndex().getAllTargets()) {
+      if (context.getScope().isAffected(target) && !pd.fsState.isInitialScanPerformed(target)) {
+        targets.add(target);
+      }
+    }
+    if (targets.size() < 2) {
+      return;
+    }
+
+    final long start = System.currentTimeMillis();
+    final AtomicInteger scannedCount = new AtomicInteger();
+    final BoundedTaskExecutor executor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), FS_SCAN_THREADS);
+    final List<Future<?>> futures = new ArrayList<Future<?>>(targets.size());
+    for (final BuildTarget<?> target : targets) {
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          if (context.getCancelStatus().isCanceled()) {
+            return null;
+          }
+          final BuildTargetConfiguration configuration = pd.getTargetsState().getTargetConfiguration(target);
+          if (!context.getScope().isRecompilationForced(target) && !configuration.isTargetDirty() && !configuration.outputRootWasDeleted(context)) {
+            initTargetFSState(context, target, false);
+            scannedCount.incrementAndGet();
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        LOG.info(e);
+      }
+      catch (ExecutionException e) {
+        // the target isn't marked as scanned, so it will be scanned again by ensureFSStateInitialized
+        LOG.info(e.getCause());
+      }
+    }
+    LOG.info("Up-to-date check: " + scannedCount.get() + " of " + targets.size() + " targets scanned in " +
+             (System.currentTimeMillis() - start) + "ms using " + FS_SCAN_THREADS + " threads");
+  }
+
   private static void initTargetFSState(CompileContext context, BuildTarget<?> target, final boolean forceMarkDirty) throws IOException {
     final ProjectDescriptor pd = context.getProjectDescriptor();
     final Timestamps timestamps = pd.timestamps.getStorage();
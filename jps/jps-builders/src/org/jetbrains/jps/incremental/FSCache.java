@@ -46,10 +46,13 @@ public class FSCache {
       if (children != null) {
         return children == NULL_VALUE? null : children;
       }
-      final File[] files = file.listFiles();
+    }
+    // list files outside the lock, so that several threads may traverse different directories at the same time
+    final File[] files = file.listFiles();
+    synchronized (myMap) {
       myMap.put(file, files == null? NULL_VALUE : (files.length == 0? EMPTY_FILE_ARRAY : files));
-      return files;
     }
+    return files;
   }
 
   public void clear() {
@@ -36,7 +36,9 @@ import org.jetbrains.jps.model.module.JpsModule;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -151,44 +153,58 @@ public class FSOperations {
         context.getProjectDescriptor().fsState.clearRecompile(rd);
       }
       final FSCache fsCache = rd.canUseFileCache() ? context.getProjectDescriptor().getFSCache() : FSCache.NO_CACHE;
-      traverseRecursively(context, rd, rd.getRootFile(), timestamps, forceMarkDirty, currentFiles, filter, fsCache);
+      final List<File> files = new ArrayList<File>();
+      collectFilesRecursively(context, rd, rd.getRootFile(), filter, fsCache, files);
+      // the directory tree is traversed first and then files are checked against the timestamps storage in one go
+      markDirtyIfChanged(context, rd, files, timestamps, forceMarkDirty, currentFiles);
     }
   }
 
-  private static void traverseRecursively(CompileContext context,
-                                          final BuildRootDescriptor rd,
-                                          final File file,
-                                          @NotNull final Timestamps tsStorage,
-                                          final boolean forceDirty,
-                                          @Nullable Set<File> currentFiles, @Nullable FileFilter filter, @NotNull FSCache fsCache) throws IOException {
+  private static void collectFilesRecursively(CompileContext context,
+                                              final BuildRootDescriptor rd,
+                                              final File file,
+                                              @Nullable FileFilter filter,
+                                              @NotNull FSCache fsCache,
+                                              @NotNull List<File> result) {
     BuildRootIndex rootIndex = context.getProjectDescriptor().getBuildRootIndex();
     final File[] children = fsCache.getChildren(file);
     if (children != null) { // is directory
       if (children.length > 0 && rootIndex.isDirectoryAccepted(file, rd)) {
         for (File child : children) {
-          traverseRecursively(context, rd, child, tsStorage, forceDirty, currentFiles, filter, fsCache);
+          collectFilesRecursively(context, rd, child, filter, fsCache, result);
         }
       }
     }
     else { // is file
       if (rootIndex.isFileAccepted(file, rd) && (filter == null || filter.accept(file))) {
-        boolean markDirty = forceDirty;
-        if (!markDirty) {
-          markDirty = tsStorage.getStamp(file, rd.getTarget()) != FileSystemUtil.lastModified(file);
-        }
-        if (markDirty) {
-          // if it is full project rebuild, all storages are already completely cleared;
-          // so passing null because there is no need to access the storage to clear non-existing data
-          final Timestamps marker = context.isProjectRebuild() ? null : tsStorage;
-          context.getProjectDescriptor().fsState.markDirty(context, file, rd, marker, false);
-        }
-        if (currentFiles != null) {
-          currentFiles.add(file);
-        }
+        result.add(file);
       }
     }
   }
 
+  private static void markDirtyIfChanged(CompileContext context,
+                                         final BuildRootDescriptor rd,
+                                         @NotNull List<File> files,
+                                         @NotNull final Timestamps tsStorage,
+                                         final boolean forceDirty,
+                                         @Nullable Set<File> currentFiles) throws IOException {
+    // if it is full project rebuild, all storages are already completely cleared;
+    // so passing null because there is no need to access the storage to clear non-existing data
+    final Timestamps marker = context.isProjectRebuild() ? null : tsStorage;
+    for (File file : files) {
+      boolean markDirty = forceDirty;
+      if (!markDirty) {
+        markDirty = tsStorage.getStamp(file, rd.getTarget()) != FileSystemUtil.lastModified(file);
+      }
+      if (markDirty) {
+        context.getProjectDescriptor().fsState.markDirty(context, file, rd, marker, false);
+      }
+    }
+    if (currentFiles != null) {
+      currentFiles.addAll(files);
+    }
+  }
+
   public static void pruneEmptyDirs(CompileContext context, @Nullable final Set<File> dirsToDelete) {
     if (dirsToDelete == null || dirsToDelete.isEmpty()) return;
 
@@ -132,7 +132,14 @@ public class IncArtifactBuilder extends TargetBuilder<ArtifactRootDescriptor, Ar
         return;
       }
 
-      deleteOutdatedFiles(filesToDelete, context, srcOutMapping, outSrcMapping);
+      final Set<String> previousJarPaths = new THashSet<String>(FileUtil.PATH_HASHING_STRATEGY);
+      for (ArtifactRootDescriptor descriptor : pd.getBuildRootIndex().getTargetRoots(target, context)) {
+        final DestinationInfo destination = descriptor.getDestinationInfo();
+        if (destination instanceof JarDestinationInfo && filesToDelete.containsKey(destination.getOutputFilePath())) {
+          previousJarPaths.add(destination.getOutputFilePath());
+        }
+      }
+      deleteOutdatedFiles(filesToDelete, context, srcOutMapping, outSrcMapping, previousJarPaths);
       context.checkCanceled();
 
       final Set<JarInfo> changedJars = new THashSet<JarInfo>();
@@ -162,7 +169,7 @@ public class IncArtifactBuilder extends TargetBuilder<ArtifactRootDescriptor, Ar
       }
       context.checkCanceled();
 
-      JarsBuilder builder = new JarsBuilder(changedJars, context, outputConsumer, outSrcMapping);
+      JarsBuilder builder = new JarsBuilder(changedJars, context, outputConsumer, outSrcMapping, previousJarPaths);
       builder.buildJars();
       runArtifactTasks(context, artifact, ArtifactBuildTaskProvider.ArtifactBuildPhase.POST_PROCESSING);
     }
@@ -196,9 +203,13 @@ public class IncArtifactBuilder extends TargetBuilder<ArtifactRootDescriptor, Ar
     paths.add(path);
   }
 
+  /**
+   * @param keptJarPaths archives which are going to be rebuilt: they are left in place so that JarsBuilder can copy unchanged entries
+   *                     from them, and are replaced or deleted by JarsBuilder
+   */
   private static void deleteOutdatedFiles(MultiMap<String, String> filesToDelete, CompileContext context,
                                           SourceToOutputMapping srcOutMapping,
-                                          ArtifactOutputToSourceMapping outSrcMapping) throws IOException {
+                                          ArtifactOutputToSourceMapping outSrcMapping, Set<String> keptJarPaths) throws IOException {
     if (filesToDelete.isEmpty()) return;
 
     context.processMessage(new ProgressMessage("Deleting outdated files..."));
@@ -211,7 +222,7 @@ public class IncArtifactBuilder extends TargetBuilder<ArtifactRootDescriptor, Ar
         continue;
       }
 
-      boolean deleted = deletedPaths.contains(filePath);
+      boolean deleted = deletedPaths.contains(filePath) || keptJarPaths.contains(filePath);
       if (!deleted) {
         deleted = FileUtil.delete(new File(FileUtil.toSystemDependentName(filePath)));
       }
@@ -23,10 +23,12 @@ import com.intellij.openapi.util.io.FileSystemUtil;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.graph.CachingSemiGraph;
 import com.intellij.util.graph.DFSTBuilder;
 import com.intellij.util.graph.GraphGenerator;
-import com.intellij.util.io.ZipUtil;
+import com.intellij.util.io.zip.JBZipEntry;
+import com.intellij.util.io.zip.JBZipFile;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -41,30 +43,47 @@ import org.jetbrains.jps.incremental.artifacts.instructions.*;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.incremental.messages.ProgressMessage;
+import org.jetbrains.jps.service.SharedThreadPool;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * @author nik
  */
 public class JarsBuilder {
   private static final Logger LOG = Logger.getInstance("#com.intellij.compiler.impl.packagingCompiler.JarsBuilder");
+  private static final int MAX_PARALLEL_JARS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
   private final Set<JarInfo> myJarsToBuild;
   private final CompileContext myContext;
   private Map<JarInfo, File> myBuiltJars;
   private final BuildOutputConsumer myOutputConsumer;
   private final ArtifactOutputToSourceMapping myOutSrcMapping;
+  private final Set<String> myPreviousJarPaths;
+  private final Object myOutputLock = new Object();
 
   public JarsBuilder(Set<JarInfo> jarsToBuild, CompileContext context, BuildOutputConsumer outputConsumer,
                      ArtifactOutputToSourceMapping outSrcMapping) {
+    this(jarsToBuild, context, outputConsumer, outSrcMapping, Collections.<String>emptySet());
+  }
+
+  /**
+   * @param previousJarPaths paths of outdated archives which were left in place instead of deleting: unchanged entries are copied from them
+   *                         in compressed form, archives which aren't rebuilt are deleted by {@link #buildJars()}
+   */
+  public JarsBuilder(Set<JarInfo> jarsToBuild, CompileContext context, BuildOutputConsumer outputConsumer,
+                     ArtifactOutputToSourceMapping outSrcMapping, Set<String> previousJarPaths) {
     myOutputConsumer = outputConsumer;
     myOutSrcMapping = outSrcMapping;
+    myPreviousJarPaths = previousJarPaths;
     DependentJarsEvaluator evaluator = new DependentJarsEvaluator();
     for (JarInfo jarInfo : jarsToBuild) {
       evaluator.addJarWithDependencies(jarInfo);
@@ -76,36 +95,115 @@ public class JarsBuilder {
   public boolean buildJars() throws IOException, ProjectBuildException {
     myContext.processMessage(new ProgressMessage("Building archives..."));
 
-    final JarInfo[] sortedJars = sortJars();
-    if (sortedJars == null) {
-      return false;
-    }
-
-    myBuiltJars = new HashMap<JarInfo, File>();
+    myBuiltJars = new ConcurrentHashMap<JarInfo, File>();
+    final Set<String> copiedPaths = new THashSet<String>(FileUtil.PATH_HASHING_STRATEGY);
     try {
-      for (JarInfo jar : sortedJars) {
+      final JarInfo[] sortedJars = sortJars();
+      if (sortedJars == null) {
+        return false;
+      }
+
+      for (List<JarInfo> jars : groupIndependentJars(sortedJars)) {
         myContext.checkCanceled();
-        buildJar(jar);
+        buildJars(jars);
       }
 
       myContext.processMessage(new ProgressMessage("Copying archives..."));
-      copyJars();
+      copyJars(copiedPaths);
     }
     finally {
       deleteTemporaryJars();
+      deletePreviousJars(copiedPaths);
     }
 
 
     return true;
   }
 
+  /**
+   * Splits sorted jars into groups which are built one after another, jars of the same group don't contain each other
+   * and may be built in parallel.
+   */
+  private static List<List<JarInfo>> groupIndependentJars(JarInfo[] sortedJars) {
+    final List<List<JarInfo>> groups = new ArrayList<List<JarInfo>>();
+    final Map<JarInfo, Integer> levels = new HashMap<JarInfo, Integer>();
+    for (JarInfo jar : sortedJars) {
+      // nested jars precede the containing jar in the sorted array, so the level is already final here
+      final Integer level = levels.get(jar);
+      final int index = level != null ? level : 0;
+      while (groups.size() <= index) {
+        groups.add(new ArrayList<JarInfo>());
+      }
+      groups.get(index).add(jar);
+
+      final DestinationInfo destination = jar.getDestination();
+      if (destination instanceof JarDestinationInfo) {
+        final JarInfo outerJar = ((JarDestinationInfo)destination).getJarInfo();
+        final Integer outerLevel = levels.get(outerJar);
+        if (outerLevel == null || outerLevel <= index) {
+          levels.put(outerJar, index + 1);
+        }
+      }
+    }
+    return groups;
+  }
+
+  private void buildJars(List<JarInfo> jars) throws IOException, ProjectBuildException {
+    if (jars.size() == 1 || MAX_PARALLEL_JARS == 1) {
+      for (JarInfo jar : jars) {
+        myContext.checkCanceled();
+        buildJar(jar);
+      }
+      return;
+    }
+
+    final BoundedTaskExecutor executor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), MAX_PARALLEL_JARS);
+    final List<Future<?>> futures = new ArrayList<Future<?>>(jars.size());
+    for (final JarInfo jar : jars) {
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          myContext.checkCanceled();
+          buildJar(jar);
+          return null;
+        }
+      }));
+    }
+
+    Throwable error = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        if (error == null) error = e;
+      }
+      catch (ExecutionException e) {
+        if (error == null) error = e.getCause();
+      }
+    }
+    if (error instanceof IOException) throw (IOException)error;
+    if (error instanceof ProjectBuildException) throw (ProjectBuildException)error;
+    if (error instanceof RuntimeException) throw (RuntimeException)error;
+    if (error instanceof Error) throw (Error)error;
+    if (error != null) throw new ProjectBuildException(error);
+  }
+
   private void deleteTemporaryJars() {
     for (File file : myBuiltJars.values()) {
       FileUtil.delete(file);
     }
   }
 
-  private void copyJars() throws IOException {
+  private void deletePreviousJars(Set<String> replacedPaths) {
+    for (String path : myPreviousJarPaths) {
+      if (!replacedPaths.contains(path)) {
+        FileUtil.delete(new File(FileUtil.toSystemDependentName(path)));
+      }
+    }
+  }
+
+  private void copyJars(Set<String> copiedPaths) throws IOException {
     for (Map.Entry<JarInfo, File> entry : myBuiltJars.entrySet()) {
       File fromFile = entry.getValue();
       final JarInfo jarInfo = entry.getKey();
@@ -113,6 +211,7 @@ public class JarsBuilder {
       if (destination instanceof ExplodedDestinationInfo) {
         File toFile = new File(FileUtil.toSystemDependentName(destination.getOutputPath()));
         FileUtil.rename(fromFile, toFile);
+        copiedPaths.add(destination.getOutputFilePath());
       }
     }
   }
@@ -142,19 +241,20 @@ public class JarsBuilder {
     }
 
     myContext.processMessage(new ProgressMessage("Building " + jar.getPresentableDestination() + "..."));
+    final long start = System.currentTimeMillis();
     File jarFile = FileUtil.createTempFile("artifactCompiler", "tmp");
     myBuiltJars.put(jar, jarFile);
 
     FileUtil.createParentDirs(jarFile);
     final String targetJarPath = jar.getDestination().getOutputFilePath();
     List<String> packedFilePaths = new ArrayList<String>();
+    List<ArtifactOutputToSourceMapping.SourcePathAndRootIndex> packedSources = new ArrayList<ArtifactOutputToSourceMapping.SourcePathAndRootIndex>();
     Manifest manifest = loadManifest(jar, packedFilePaths);
-    final JarOutputStream jarOutputStream = createJarOutputStream(jarFile, manifest);
+    final JarWriter jarWriter = new JarWriter(jarFile, getPreviousJarFile(jar));
 
-    final THashSet<String> writtenPaths = new THashSet<String>();
     try {
       if (manifest != null) {
-        writtenPaths.add(JarFile.MANIFEST_NAME);
+        jarWriter.addManifest(manifest);
       }
 
       for (Pair<String, Object> pair : jar.getContent()) {
@@ -163,23 +263,21 @@ public class JarsBuilder {
           final ArtifactRootDescriptor descriptor = (ArtifactRootDescriptor)pair.getSecond();
           final int rootIndex = descriptor.getRootIndex();
           if (descriptor instanceof FileBasedArtifactRootDescriptor) {
-            addFileToJar(jarOutputStream, jarFile, descriptor.getRootFile(), descriptor.getFilter(), relativePath, targetJarPath, writtenPaths,
-                         packedFilePaths, rootIndex);
+            addFileToJar(jarWriter, jarFile, descriptor.getRootFile(), descriptor.getFilter(), relativePath, packedFilePaths, packedSources,
+                         rootIndex);
           }
           else {
             final String filePath = FileUtil.toSystemIndependentName(descriptor.getRootFile().getAbsolutePath());
             packedFilePaths.add(filePath);
-            myOutSrcMapping.appendData(targetJarPath, Collections
-              .singletonList(new ArtifactOutputToSourceMapping.SourcePathAndRootIndex(filePath, rootIndex)));
-            extractFileAndAddToJar(jarOutputStream, (JarBasedArtifactRootDescriptor)descriptor, relativePath, writtenPaths);
+            packedSources.add(new ArtifactOutputToSourceMapping.SourcePathAndRootIndex(filePath, rootIndex));
+            extractFileAndAddToJar(jarWriter, (JarBasedArtifactRootDescriptor)descriptor, relativePath);
           }
         }
         else {
           JarInfo nestedJar = (JarInfo)pair.getSecond();
           File nestedJarFile = myBuiltJars.get(nestedJar);
           if (nestedJarFile != null) {
-            addFileToJar(jarOutputStream, jarFile, nestedJarFile, SourceFileFilter.ALL, relativePath, targetJarPath, writtenPaths,
-                         packedFilePaths, -1);
+            addFileToJar(jarWriter, jarFile, nestedJarFile, SourceFileFilter.ALL, relativePath, packedFilePaths, packedSources, -1);
           }
           else {
             LOG.debug("nested jar file " + relativePath + " for " + jar.getPresentableDestination() + " not found");
@@ -187,22 +285,26 @@ public class JarsBuilder {
         }
       }
 
-      if (writtenPaths.isEmpty()) {
-        myContext.processMessage(new CompilerMessage(IncArtifactBuilder.BUILDER_NAME, BuildMessage.Kind.WARNING, emptyArchiveMessage));
-        return;
-      }
+      synchronized (myOutputLock) {
+        if (!packedSources.isEmpty()) {
+          myOutSrcMapping.appendData(targetJarPath, packedSources);
+        }
+        if (jarWriter.isEmpty()) {
+          myContext.processMessage(new CompilerMessage(IncArtifactBuilder.BUILDER_NAME, BuildMessage.Kind.WARNING, emptyArchiveMessage));
+          return;
+        }
 
-      final ProjectBuilderLogger logger = myContext.getLoggingManager().getProjectBuilderLogger();
-      if (logger.isEnabled()) {
-        logger.logCompiledPaths(packedFilePaths, IncArtifactBuilder.BUILDER_NAME, "Packing files:");
+        final ProjectBuilderLogger logger = myContext.getLoggingManager().getProjectBuilderLogger();
+        if (logger.isEnabled()) {
+          logger.logCompiledPaths(packedFilePaths, IncArtifactBuilder.BUILDER_NAME, "Packing files:");
+        }
+        myOutputConsumer.registerOutputFile(new File(targetJarPath), packedFilePaths);
       }
-      myOutputConsumer.registerOutputFile(new File(targetJarPath), packedFilePaths);
-
     }
     finally {
-      if (writtenPaths.isEmpty()) {
+      if (jarWriter.isEmpty()) {
         try {
-          jarOutputStream.close();
+          jarWriter.close();
         }
         catch (IOException ignored) {
         }
@@ -210,17 +312,26 @@ public class JarsBuilder {
         myBuiltJars.remove(jar);
       }
       else {
-        jarOutputStream.close();
+        jarWriter.close();
       }
     }
+    LOG.info("Archive '" + jar.getPresentableDestination() + "' built in " + (System.currentTimeMillis() - start) + "ms: " +
+             jarWriter.getReusedEntriesCount() + " of " + jarWriter.getEntriesCount() + " entries copied from the previous archive");
   }
 
-  private static JarOutputStream createJarOutputStream(File jarFile, @Nullable Manifest manifest) throws IOException {
-    final BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream(jarFile));
-    if (manifest != null) {
-      return new JarOutputStream(outputStream, manifest);
+  /**
+   * @return previous version of the archive if it was left in place, only archives which aren't nested into other archives are kept
+   */
+  @Nullable
+  private File getPreviousJarFile(JarInfo jar) {
+    final DestinationInfo destination = jar.getDestination();
+    if (destination instanceof ExplodedDestinationInfo && myPreviousJarPaths.contains(destination.getOutputFilePath())) {
+      final File file = new File(FileUtil.toSystemDependentName(destination.getOutputFilePath()));
+      if (file.isFile()) {
+        return file;
+      }
     }
-    return new JarOutputStream(outputStream);
+    return null;
   }
 
   @Nullable
@@ -279,54 +390,43 @@ public class JarsBuilder {
     }
   }
 
-  private static void extractFileAndAddToJar(final JarOutputStream jarOutputStream, final JarBasedArtifactRootDescriptor root,
-                                             final String relativeOutputPath, final Set<String> writtenPaths)
+  private static void extractFileAndAddToJar(final JarWriter jarWriter, final JarBasedArtifactRootDescriptor root,
+                                             final String relativeOutputPath)
     throws IOException {
     final long timestamp = FileSystemUtil.lastModified(root.getRootFile());
     root.processEntries(new JarBasedArtifactRootDescriptor.EntryProcessor() {
       @Override
       public void process(@Nullable InputStream inputStream, @NotNull String relativePath, ZipEntry entry) throws IOException {
-        String pathInJar = addParentDirectories(jarOutputStream, writtenPaths, JpsArtifactPathUtil
-          .appendToPath(relativeOutputPath, relativePath));
+        String pathInJar = addParentDirectories(jarWriter, JpsArtifactPathUtil.appendToPath(relativeOutputPath, relativePath));
 
         if (inputStream == null) {
-          addDirectoryEntry(jarOutputStream, pathInJar + "/", writtenPaths);
+          jarWriter.addDirectory(pathInJar + "/");
         }
-        else if (writtenPaths.add(pathInJar)) {
-          ZipEntry newEntry = new ZipEntry(pathInJar);
-          newEntry.setTime(timestamp);
-          if (entry.getMethod() == ZipEntry.STORED) {
-            newEntry.setMethod(ZipEntry.STORED);
-            newEntry.setSize(entry.getSize());
-            newEntry.setCrc(entry.getCrc());
-          }
-          jarOutputStream.putNextEntry(newEntry);
-          FileUtil.copy(inputStream, jarOutputStream);
-          jarOutputStream.closeEntry();
+        else {
+          jarWriter.addEntry(pathInJar, inputStream, entry, timestamp);
         }
       }
     });
 
   }
 
-  private void addFileToJar(final @NotNull JarOutputStream jarOutputStream, final @NotNull File jarFile, @NotNull File file,
-                            SourceFileFilter filter, @NotNull String relativePath, String targetJarPath,
-                            final @NotNull Set<String> writtenPaths, List<String> packedFilePaths, final int rootIndex) throws IOException {
+  private void addFileToJar(final @NotNull JarWriter jarWriter, final @NotNull File jarFile, @NotNull File file,
+                            SourceFileFilter filter, @NotNull String relativePath, List<String> packedFilePaths,
+                            List<ArtifactOutputToSourceMapping.SourcePathAndRootIndex> packedSources, final int rootIndex) throws IOException {
     if (!file.exists() || FileUtil.isAncestor(file, jarFile, false)) {
       return;
     }
 
-    relativePath = addParentDirectories(jarOutputStream, writtenPaths, relativePath);
-    addFileOrDirRecursively(jarOutputStream, file, filter, relativePath, targetJarPath, writtenPaths, packedFilePaths, rootIndex);
+    relativePath = addParentDirectories(jarWriter, relativePath);
+    addFileOrDirRecursively(jarWriter, file, filter, relativePath, packedFilePaths, packedSources, rootIndex);
   }
 
-  private void addFileOrDirRecursively(@NotNull ZipOutputStream jarOutputStream,
+  private void addFileOrDirRecursively(@NotNull JarWriter jarWriter,
                                        @NotNull File file,
                                        SourceFileFilter filter,
                                        @NotNull String relativePath,
-                                       String targetJarPath,
-                                       @NotNull Set<String> writtenItemRelativePaths,
                                        List<String> packedFilePaths,
+                                       List<ArtifactOutputToSourceMapping.SourcePathAndRootIndex> packedSources,
                                        int rootIndex) throws IOException {
     final String filePath = FileUtil.toSystemIndependentName(file.getAbsolutePath());
     if (!filter.accept(filePath) || !filter.shouldBeCopied(filePath, myContext.getProjectDescriptor())) {
@@ -336,21 +436,20 @@ public class JarsBuilder {
     if (file.isDirectory()) {
       final String directoryPath = relativePath.length() == 0 ? "" : relativePath + "/";
       if (!directoryPath.isEmpty()) {
-        addDirectoryEntry(jarOutputStream, directoryPath, writtenItemRelativePaths);
+        jarWriter.addDirectory(directoryPath);
       }
       final File[] children = file.listFiles();
       if (children != null) {
         for (File child : children) {
-          addFileOrDirRecursively(jarOutputStream, child, filter, directoryPath + child.getName(), targetJarPath, writtenItemRelativePaths,
-                                  packedFilePaths, rootIndex);
+          addFileOrDirRecursively(jarWriter, child, filter, directoryPath + child.getName(), packedFilePaths, packedSources, rootIndex);
         }
       }
       return;
     }
 
-    final boolean added = ZipUtil.addFileToZip(jarOutputStream, file, relativePath, writtenItemRelativePaths, null);
+    final boolean added = jarWriter.addFile(file, relativePath);
     if (rootIndex != -1) {
-      myOutSrcMapping.appendData(targetJarPath, Collections.singletonList(new ArtifactOutputToSourceMapping.SourcePathAndRootIndex(filePath, rootIndex)));
+      packedSources.add(new ArtifactOutputToSourceMapping.SourcePathAndRootIndex(filePath, rootIndex));
       if (added) {
         packedFilePaths.add(filePath);
       }
@@ -358,7 +457,7 @@ public class JarsBuilder {
   }
 
 
-  private static String addParentDirectories(JarOutputStream jarOutputStream, Set<String> writtenPaths, String relativePath) throws IOException {
+  private static String addParentDirectories(JarWriter jarWriter, String relativePath) throws IOException {
     while (StringUtil.startsWithChar(relativePath, '/')) {
       relativePath = relativePath.substring(1);
     }
@@ -366,22 +465,147 @@ public class JarsBuilder {
     while (i != -1) {
       String prefix = relativePath.substring(0, i+1);
       if (prefix.length() > 1) {
-        addDirectoryEntry(jarOutputStream, prefix, writtenPaths);
+        jarWriter.addDirectory(prefix);
       }
       i = relativePath.indexOf('/', i + 1);
     }
     return relativePath;
   }
 
-  private static void addDirectoryEntry(final ZipOutputStream output, @NonNls final String relativePath, Set<String> writtenPaths) throws IOException {
-    if (!writtenPaths.add(relativePath)) return;
+  /**
+   * Writes entries of a single archive. If the previous version of the archive is available, data of entries which have the same size
+   * and crc-32 as before is copied from it in compressed form, so only changed entries are compressed again.
+   */
+  private static class JarWriter {
+    private final JBZipFile myZipFile;
+    @Nullable private final JBZipFile myPreviousZipFile;
+    private final Set<String> myWrittenPaths = new THashSet<String>();
+    private int myReusedEntriesCount;
+
+    private JarWriter(@NotNull File jarFile, @Nullable File previousJarFile) throws IOException {
+      myZipFile = new JBZipFile(jarFile);
+      myPreviousZipFile = previousJarFile != null ? openPreviousJar(previousJarFile) : null;
+    }
+
+    @Nullable
+    private static JBZipFile openPreviousJar(@NotNull File file) {
+      try {
+        return new JBZipFile(file, "UTF-8", true);
+      }
+      catch (IOException e) {
+        LOG.info("Cannot read previous version of " + file.getPath() + ", the archive will be built from scratch: " + e.getMessage());
+        return null;
+      }
+    }
+
+    public boolean isEmpty() {
+      return myWrittenPaths.isEmpty();
+    }
+
+    public int getEntriesCount() {
+      return myWrittenPaths.size();
+    }
+
+    public int getReusedEntriesCount() {
+      return myReusedEntriesCount;
+    }
+
+    public void addManifest(@NotNull Manifest manifest) throws IOException {
+      myWrittenPaths.add(JarFile.MANIFEST_NAME);
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      manifest.write(output);
+      final JBZipEntry entry = myZipFile.getOrCreateEntry(JarFile.MANIFEST_NAME);
+      entry.setMethod(ZipEntry.DEFLATED);
+      entry.setData(output.toByteArray(), System.currentTimeMillis());
+    }
+
+    public void addDirectory(@NonNls String relativePath) throws IOException {
+      if (!myWrittenPaths.add(relativePath)) return;
+
+      final JBZipEntry entry = myZipFile.getOrCreateEntry(relativePath);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setData(ArrayUtil.EMPTY_BYTE_ARRAY, System.currentTimeMillis());
+    }
+
+    public boolean addFile(@NotNull File file, @NotNull String relativePath) throws IOException {
+      if (!myWrittenPaths.add(relativePath)) return false;
+
+      final JBZipEntry entry = myZipFile.getOrCreateEntry(relativePath);
+      final long size = file.length();
+      final long timestamp = file.lastModified();
+      if (size == 0) {
+        entry.setMethod(ZipEntry.STORED);
+        entry.setData(ArrayUtil.EMPTY_BYTE_ARRAY, timestamp);
+        return true;
+      }
+
+      final JBZipEntry previous = findPreviousEntry(relativePath, size);
+      if (previous != null && previous.getCrc() == computeCrc(file)) {
+        entry.setDataFrom(previous, timestamp);
+        myReusedEntriesCount++;
+        return true;
+      }
+
+      entry.setMethod(ZipEntry.DEFLATED);
+      final InputStream input = new FileInputStream(file);
+      try {
+        entry.setData(input, timestamp);
+      }
+      finally {
+        input.close();
+      }
+      return true;
+    }
+
+    public void addEntry(@NotNull String relativePath, @NotNull InputStream input, @NotNull ZipEntry sourceEntry, long timestamp)
+      throws IOException {
+      if (!myWrittenPaths.add(relativePath)) return;
+
+      final JBZipEntry entry = myZipFile.getOrCreateEntry(relativePath);
+      final JBZipEntry previous = findPreviousEntry(relativePath, sourceEntry.getSize());
+      if (previous != null && previous.getCrc() == sourceEntry.getCrc()) {
+        entry.setDataFrom(previous, timestamp);
+        myReusedEntriesCount++;
+        return;
+      }
+
+      entry.setMethod(sourceEntry.getMethod() == ZipEntry.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED);
+      entry.setData(input, timestamp);
+    }
+
+    @Nullable
+    private JBZipEntry findPreviousEntry(@NotNull String relativePath, long size) {
+      if (myPreviousZipFile == null || size < 0) return null;
+      final JBZipEntry entry = myPreviousZipFile.getEntry(relativePath);
+      return entry != null && !entry.isDirectory() && entry.getSize() == size ? entry : null;
+    }
+
+    private static long computeCrc(@NotNull File file) throws IOException {
+      final CRC32 crc = new CRC32();
+      final InputStream input = new FileInputStream(file);
+      try {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+          crc.update(buffer, 0, read);
+        }
+      }
+      finally {
+        input.close();
+      }
+      return crc.getValue();
+    }
 
-    ZipEntry e = new ZipEntry(relativePath);
-    e.setMethod(ZipEntry.STORED);
-    e.setSize(0);
-    e.setCrc(0);
-    output.putNextEntry(e);
-    output.closeEntry();
+    public void close() throws IOException {
+      try {
+        myZipFile.close();
+      }
+      finally {
+        if (myPreviousZipFile != null) {
+          myPreviousZipFile.close();
+        }
+      }
+    }
   }
 
   private class JarsGraph implements GraphGenerator.SemiGraph<JarInfo> {
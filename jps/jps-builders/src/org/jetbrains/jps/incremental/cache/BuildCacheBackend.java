@@ -0,0 +1,33 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Content-addressed storage of build outputs shared between builds (and possibly between machines).
+ * Keys are hashes of everything the output depends on, so entries are never updated or invalidated.
+ * Implementations must be thread-safe.
+ */
+public interface BuildCacheBackend {
+  @Nullable
+  byte[] get(@NotNull String key) throws IOException;
+
+  void put(@NotNull String key, @NotNull byte[] data) throws IOException;
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.GlobalOptions;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Keeps cache entries as files in a local (possibly network-mounted) directory.
+ * Entries are written to a temp file first and then renamed, so concurrent builds never see partially written entries.
+ *
+ * @see GlobalOptions#BUILD_CACHE_DIR_OPTION
+ */
+public class LocalDirectoryBuildCacheBackend implements BuildCacheBackend {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.cache.LocalDirectoryBuildCacheBackend");
+  private final File myRoot;
+
+  public LocalDirectoryBuildCacheBackend(@NotNull File root) {
+    myRoot = root;
+  }
+
+  /**
+   * @return backend configured for the build process, or null if build cache is not enabled
+   */
+  @Nullable
+  public static BuildCacheBackend createConfigured() {
+    final String path = System.getProperty(GlobalOptions.BUILD_CACHE_DIR_OPTION);
+    if (path == null || path.trim().isEmpty()) {
+      return null;
+    }
+    return new LocalDirectoryBuildCacheBackend(new File(path.trim()));
+  }
+
+  @Nullable
+  public byte[] get(@NotNull String key) throws IOException {
+    final File file = getEntryFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+    return FileUtil.loadFileBytes(file);
+  }
+
+  public void put(@NotNull String key, @NotNull byte[] data) throws IOException {
+    final File file = getEntryFile(key);
+    if (file.exists()) {
+      return;
+    }
+    final File dir = file.getParentFile();
+    FileUtil.createDirectory(dir);
+    final File temp = FileUtil.createTempFile(dir, key, ".tmp", true, false);
+    try {
+      FileUtil.writeToFile(temp, data);
+      if (!temp.renameTo(file) && !file.exists()) {
+        LOG.info("Cannot store build cache entry " + file);
+      }
+    }
+    finally {
+      FileUtil.delete(temp);
+    }
+  }
+
+  private File getEntryFile(String key) {
+    return new File(new File(myRoot, key.substring(0, Math.min(2, key.length()))), key);
+  }
+}
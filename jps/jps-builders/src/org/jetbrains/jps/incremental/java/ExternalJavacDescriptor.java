@@ -16,7 +16,6 @@
 package org.jetbrains.jps.incremental.java;
 
 import com.intellij.execution.process.BaseOSProcessHandler;
-import org.jetbrains.jps.incremental.GlobalContextKey;
 import org.jetbrains.jps.javac.JavacServerClient;
 
 /**
@@ -24,12 +23,15 @@ import org.jetbrains.jps.javac.JavacServerClient;
  *         Date: 1/24/12
  */
 public class ExternalJavacDescriptor {
-  public static final GlobalContextKey<ExternalJavacDescriptor> KEY = GlobalContextKey.create("_external_javac_descriptor_");
-
   public final BaseOSProcessHandler process;
   public final JavacServerClient client;
+  // the following fields are guarded by the pool
+  final JavacServerPool.ServerKey key;
+  int activeRequests;
+  int compilationCount;
 
-  public ExternalJavacDescriptor(BaseOSProcessHandler process, JavacServerClient client) {
+  ExternalJavacDescriptor(JavacServerPool.ServerKey key, BaseOSProcessHandler process, JavacServerClient client) {
+    this.key = key;
     this.process = process;
     this.client = client;
   }
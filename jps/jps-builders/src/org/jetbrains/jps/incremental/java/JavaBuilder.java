@@ -15,7 +15,6 @@
  */
 package org.jetbrains.jps.incremental.java;
 
-import com.intellij.execution.process.BaseOSProcessHandler;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.Key;
@@ -61,7 +60,6 @@ import org.jetbrains.jps.service.JpsServiceManager;
 
 import javax.tools.*;
 import java.io.*;
-import java.net.ServerSocket;
 import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -147,6 +145,13 @@ public class JavaBuilder extends ModuleLevelBuilder {
     COMPILER_VERSION_INFO.set(context, new AtomicReference<String>(messageText));
   }
 
+  @Override
+  public void buildFinished(CompileContext context) {
+    JavaBuilderUtil.reportAbiStatistics(context);
+    // release archives opened by the file managers reused between chunks, the build process may wait for the next build
+    JavacMain.closeReusedFileManagers();
+  }
+
   @Override
   public List<String> getCompilableFileExtensions() {
     return Collections.singletonList(JAVA_EXTENSION);
@@ -350,25 +355,51 @@ public class JavaBuilder extends ModuleLevelBuilder {
     if (LOG.isDebugEnabled()) {
       LOG.debug("Compiling chunk [" + chunk.getName() + "] with options: \"" + StringUtil.join(options, " ") + "\"");
     }
+
+    final JavaCompilationCache cache = JavaCompilationCache.getInstance(context, chunk, sourcePath, profile != null && profile.isEnabled());
+    final String cacheKey = cache != null ? cache.computeKey(files, options, getCompilerId(context), classpath, platformCp) : null;
+    final JavaCompilationCache.Recorder recorder;
+    if (cacheKey != null) {
+      if (cache.restore(cacheKey, classesConsumer, diagnosticSink)) {
+        counter.await();
+        return true;
+      }
+      recorder = cache.createRecorder(classesConsumer, diagnosticSink);
+    }
+    else {
+      recorder = null;
+    }
+    final OutputFileConsumer compilerOutputConsumer = recorder != null ? recorder : classesConsumer;
+    final DiagnosticOutputConsumer compilerDiagnosticConsumer = recorder != null ? recorder.getDiagnosticConsumer() : diagnosticSink;
+
     try {
       final boolean rc;
       if (USE_EMBEDDED_JAVAC) {
         final boolean useEclipse = useEclipseCompiler(context);
         rc = JavacMain.compile(
-          options, files, classpath, platformCp, sourcePath, outs, diagnosticSink, classesConsumer, context.getCancelStatus(), useEclipse
+          options, files, classpath, platformCp, sourcePath, outs, compilerDiagnosticConsumer, compilerOutputConsumer, context.getCancelStatus(), useEclipse,
+          true
         );
       }
       else {
-        final JavacServerClient client = ensureJavacServerLaunched(context);
-        final RequestFuture<JavacServerResponseHandler> future = client.sendCompileRequest(
-          options, files, classpath, platformCp, sourcePath, outs, diagnosticSink, classesConsumer
-        );
-        while (!future.waitFor(100L, TimeUnit.MILLISECONDS)) {
-          if (context.getCancelStatus().isCanceled()) {
-            future.cancel(false);
+        final ExternalJavacDescriptor server = acquireJavacServer(context);
+        try {
+          final RequestFuture<JavacServerResponseHandler> future = server.client.sendCompileRequest(
+            options, files, classpath, platformCp, sourcePath, outs, compilerDiagnosticConsumer, compilerOutputConsumer
+          );
+          while (!future.waitFor(100L, TimeUnit.MILLISECONDS)) {
+            if (context.getCancelStatus().isCanceled()) {
+              future.cancel(false);
+            }
           }
+          rc = future.getMessageHandler().isTerminatedSuccessfully();
+        }
+        finally {
+          JavacServerPool.getInstance().release(server);
         }
-        rc = future.getMessageHandler().isTerminatedSuccessfully();
+      }
+      if (recorder != null && rc && recorder.isCacheable() && !Utils.errorsDetected(context) && !context.getCancelStatus().isCanceled()) {
+        cache.store(cacheKey, recorder);
       }
       return rc;
     }
@@ -377,6 +408,13 @@ public class JavaBuilder extends ModuleLevelBuilder {
     }
   }
 
+  private static String getCompilerId(CompileContext context) {
+    if (USE_EMBEDDED_JAVAC) {
+      return (useEclipseCompiler(context) ? JavaCompilers.ECLIPSE_ID : JavaCompilers.JAVAC_ID) + " " + SystemProperties.getJavaVersion();
+    }
+    return "external " + JavaCompilers.JAVAC_ID + " " + getCompilerSdkVersion(context);
+  }
+
   private static boolean useEclipseCompiler(CompileContext context) {
     if (!USE_EMBEDDED_JAVAC) {
       return false;
@@ -405,13 +443,7 @@ public class JavaBuilder extends ModuleLevelBuilder {
     });
   }
 
-  private static synchronized JavacServerClient ensureJavacServerLaunched(CompileContext context) throws Exception {
-    final ExternalJavacDescriptor descriptor = ExternalJavacDescriptor.KEY.get(context);
-    if (descriptor != null) {
-      return descriptor.client;
-    }
-    // start server here
-    final int port = findFreePort();
+  private static ExternalJavacDescriptor acquireJavacServer(CompileContext context) throws Exception {
     final int heapSize = getJavacServerHeapSize(context);
 
     // defaulting to the same jdk that used to run the build process
@@ -427,19 +459,7 @@ public class JavaBuilder extends ModuleLevelBuilder {
       }
     }
 
-    final BaseOSProcessHandler processHandler = JavacServerBootstrap.launchJavacServer(
-      javaHome, heapSize, port, Utils.getSystemRoot(), getCompilationVMOptions(context)
-    );
-    final JavacServerClient client = new JavacServerClient();
-    try {
-      client.connect("127.0.0.1", port);
-    }
-    catch (Throwable ex) {
-      processHandler.destroyProcess();
-      throw new Exception("Failed to connect to external javac process: ", ex);
-    }
-    ExternalJavacDescriptor.KEY.set(context, new ExternalJavacDescriptor(processHandler, client));
-    return client;
+    return JavacServerPool.getInstance().acquire(javaHome, heapSize, getCompilationVMOptions(context));
   }
 
   private static int convertToNumber(String ver) {
@@ -476,31 +496,6 @@ public class JavaBuilder extends ModuleLevelBuilder {
     return 0;
   }
 
-  private static int findFreePort() {
-    try {
-      final ServerSocket serverSocket = new ServerSocket(0);
-      try {
-        return serverSocket.getLocalPort();
-      }
-      finally {
-        //workaround for linux : calling close() immediately after opening socket
-        //may result that socket is not closed
-        synchronized (serverSocket) {
-          try {
-            serverSocket.wait(1);
-          }
-          catch (Throwable ignored) {
-          }
-        }
-        serverSocket.close();
-      }
-    }
-    catch (IOException e) {
-      e.printStackTrace(System.err);
-      return JavacServer.DEFAULT_SERVER_PORT;
-    }
-  }
-
   private static int getJavacServerHeapSize(CompileContext context) {
     final JpsProject project = context.getProjectDescriptor().getProject();
     final JpsJavaCompilerConfiguration config = JpsJavaExtensionService.getInstance().getOrCreateCompilerConfiguration(project);
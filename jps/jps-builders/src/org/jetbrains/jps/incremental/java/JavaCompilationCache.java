@@ -0,0 +1,594 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.java;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.ModuleChunk;
+import org.jetbrains.jps.builders.java.JavaSourceRootDescriptor;
+import org.jetbrains.jps.incremental.*;
+import org.jetbrains.jps.incremental.cache.BuildCacheBackend;
+import org.jetbrains.jps.incremental.cache.LocalDirectoryBuildCacheBackend;
+import org.jetbrains.jps.javac.DiagnosticOutputConsumer;
+import org.jetbrains.jps.javac.OutputFileConsumer;
+import org.jetbrains.jps.javac.OutputFileObject;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content-addressed cache of java compilation results for module chunks.
+ *
+ * The key is a hash of chunk sources (paths relative to source roots plus content), compiler options and identity,
+ * and the content of the compilation classpath, so entries can be shared between machines and branches.
+ * The value contains class files produced by javac before any post-processing.
+ * On cache hit the class files are passed to the same consumer javac output goes to, so instrumentation, [src->output] mapping
+ * and dependency {@link org.jetbrains.jps.builders.java.dependencyView.Mappings} are updated exactly as after real compilation.
+ *
+ * Only the first compilation round of chunks with all sources dirty is cached (e.g. rebuild, first build, changed configuration):
+ * output of compiling part of the sources depends on the previous state of output directories.
+ * Chunks with annotation processing enabled are never cached.
+ * Compiler diagnostics are stored together with class files and reported again on cache hit.
+ */
+class JavaCompilationCache {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.java.JavaCompilationCache");
+  private static final int VERSION = 2;
+  private static final GlobalContextKey<Set<String>> COMPILED_CHUNKS_KEY = GlobalContextKey.create("_compilation_cache_compiled_chunks_");
+  private static final GlobalContextKey<Map<File, String>> DIRECTORY_HASHES_KEY =
+    GlobalContextKey.create("_compilation_cache_directory_hashes_");
+  private static final int MAX_CACHED_JAR_HASHES = 1000;
+  // jar hashes survive between builds of the same build process, least recently used ones are dropped
+  private static final Map<String, JarHash> ourJarHashes = new LinkedHashMap<String, JarHash>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, JarHash> eldest) {
+      return size() > MAX_CACHED_JAR_HASHES;
+    }
+  };
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final BuildCacheBackend myBackend;
+  private final CompileContext myContext;
+  private final ModuleChunk myChunk;
+  private final List<ModuleBuildTarget> myTargets;
+  private final List<File> mySourceRoots = new ArrayList<File>();
+
+  private JavaCompilationCache(BuildCacheBackend backend, CompileContext context, ModuleChunk chunk) {
+    myBackend = backend;
+    myContext = context;
+    myChunk = chunk;
+    myTargets = new ArrayList<ModuleBuildTarget>(chunk.getTargets());
+    Collections.sort(myTargets, new Comparator<ModuleBuildTarget>() {
+      public int compare(ModuleBuildTarget o1, ModuleBuildTarget o2) {
+        return o1.getId().compareTo(o2.getId());
+      }
+    });
+    for (ModuleBuildTarget target : myTargets) {
+      for (JavaSourceRootDescriptor descriptor : context.getProjectDescriptor().getBuildRootIndex().getTargetRoots(target, context)) {
+        mySourceRoots.add(descriptor.root);
+      }
+    }
+  }
+
+  /**
+   * @return cache for the current compilation round of the chunk, or null if its results should not be cached
+   */
+  @Nullable
+  public static JavaCompilationCache getInstance(CompileContext context, ModuleChunk chunk, Collection<File> sourcePath,
+                                                 boolean annotationProcessingEnabled) {
+    final String chunkName = chunk.getName();
+    synchronized (COMPILED_CHUNKS_KEY) {
+      Set<String> compiledChunks = COMPILED_CHUNKS_KEY.get(context);
+      if (compiledChunks == null) {
+        compiledChunks = new THashSet<String>();
+        COMPILED_CHUNKS_KEY.set(context, compiledChunks);
+      }
+      if (!compiledChunks.add(chunkName)) {
+        return null; // not the first round
+      }
+    }
+    if (annotationProcessingEnabled || !sourcePath.isEmpty()) {
+      return null;
+    }
+    for (ModuleBuildTarget target : chunk.getTargets()) {
+      if (target.getOutputDir() == null || !BuildOperations.isTargetFullyDirty(context, target)) {
+        return null;
+      }
+    }
+    final BuildCacheBackend backend = LocalDirectoryBuildCacheBackend.createConfigured();
+    return backend == null ? null : new JavaCompilationCache(backend, context, chunk);
+  }
+
+  @Nullable
+  public String computeKey(Collection<File> files, List<String> options, String compilerId,
+                           Collection<File> classpath, Collection<File> platformClasspath) {
+    try {
+      final MessageDigest digest = createDigest();
+      update(digest, "version:" + VERSION);
+      update(digest, "compiler:" + compilerId);
+      for (String option : options) {
+        update(digest, "option:" + option);
+      }
+      for (ModuleBuildTarget target : myTargets) {
+        update(digest, "target:" + target.getId());
+      }
+
+      final List<String> sources = new ArrayList<String>(files.size());
+      final Map<String, File> sourceFiles = new THashMap<String, File>();
+      for (File file : files) {
+        final String relative = getRelativeSourcePath(file);
+        if (relative == null) {
+          return null;
+        }
+        sources.add(relative);
+        sourceFiles.put(relative, file);
+      }
+      Collections.sort(sources);
+      for (String source : sources) {
+        update(digest, "source:" + source);
+        updateWithContent(digest, sourceFiles.get(source));
+      }
+
+      for (File file : classpath) {
+        update(digest, "cp:" + getClasspathEntryHash(file));
+      }
+      for (File file : platformClasspath) {
+        update(digest, "platform:" + getClasspathEntryHash(file));
+      }
+      return toHex(digest.digest());
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return null;
+    }
+  }
+
+  /**
+   * Passes cached class files to the consumer and reports cached compiler diagnostics
+   * @return false if there is no such entry in cache
+   */
+  public boolean restore(String key, OutputFileConsumer consumer, DiagnosticOutputConsumer diagnosticConsumer) {
+    final List<OutputFileObject> outputs = new ArrayList<OutputFileObject>();
+    final List<Diagnostic<JavaFileObject>> diagnostics = new ArrayList<Diagnostic<JavaFileObject>>();
+    try {
+      final byte[] data = myBackend.get(key);
+      if (data == null || !readEntry(data, outputs, diagnostics)) {
+        return false;
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read build cache entry " + key, e);
+      return false;
+    }
+    LOG.info("Restored " + outputs.size() + " classes of " + myChunk.getName() + " from build cache");
+    for (Diagnostic<JavaFileObject> diagnostic : diagnostics) {
+      diagnosticConsumer.report(diagnostic);
+    }
+    for (OutputFileObject output : outputs) {
+      consumer.save(output);
+    }
+    return true;
+  }
+
+  public Recorder createRecorder(OutputFileConsumer delegate, DiagnosticOutputConsumer diagnosticDelegate) {
+    return new Recorder(delegate, diagnosticDelegate);
+  }
+
+  public void store(String key, Recorder recorder) {
+    try {
+      final byte[] data = writeEntry(recorder.getOutputs(), recorder.getDiagnostics());
+      if (data != null) {
+        myBackend.put(key, data);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot store build cache entry " + key, e);
+    }
+  }
+
+  @Nullable
+  private byte[] writeEntry(List<OutputFileObject> outputs, List<Diagnostic<? extends JavaFileObject>> diagnostics) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+    try {
+      out.writeInt(VERSION);
+      out.writeInt(outputs.size());
+      for (OutputFileObject output : outputs) {
+        final File outputRoot = output.getOutputRoot();
+        final int targetIndex = outputRoot == null ? -1 : indexOfTargetWithOutput(outputRoot);
+        final File sourceFile = output.getSourceFile();
+        final String sourcePath = sourceFile == null ? null : getRelativeSourcePath(sourceFile);
+        final BinaryContent content = output.getContent();
+        if (targetIndex < 0 || sourcePath == null || content == null) {
+          return null;
+        }
+        out.writeInt(targetIndex);
+        out.writeUTF(FileUtil.toSystemIndependentName(FileUtil.getRelativePath(outputRoot, output.getFile())));
+        out.writeUTF(StringUtil.notNullize(output.getClassName()));
+        out.writeUTF(sourcePath);
+        out.writeInt(content.getLength());
+        out.write(content.getBuffer(), content.getOffset(), content.getLength());
+      }
+      out.writeInt(diagnostics.size());
+      for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+        final JavaFileObject source = diagnostic.getSource();
+        final File sourceFile = source == null ? null : Utils.convertToFile(source.toUri());
+        final String sourcePath = sourceFile == null ? "" : getRelativeSourcePath(sourceFile);
+        if (sourcePath == null) {
+          return null;
+        }
+        out.writeUTF(diagnostic.getKind().name());
+        out.writeUTF(StringUtil.notNullize(diagnostic.getMessage(Locale.US)));
+        out.writeUTF(sourcePath);
+        out.writeLong(diagnostic.getStartPosition());
+        out.writeLong(diagnostic.getEndPosition());
+        out.writeLong(diagnostic.getPosition());
+        out.writeLong(diagnostic.getLineNumber());
+        out.writeLong(diagnostic.getColumnNumber());
+      }
+    }
+    finally {
+      out.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  private boolean readEntry(byte[] data, List<OutputFileObject> outputs, List<Diagnostic<JavaFileObject>> diagnostics) throws IOException {
+    final DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
+    try {
+      if (in.readInt() != VERSION) {
+        return false;
+      }
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final File outputRoot = myTargets.get(in.readInt()).getOutputDir();
+        final String relativePath = in.readUTF();
+        final String className = in.readUTF();
+        final File sourceFile = getSourceFile(in.readUTF());
+        final byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        if (outputRoot == null || sourceFile == null) {
+          return false;
+        }
+        outputs.add(new OutputFileObject(null, outputRoot, relativePath, new File(outputRoot, relativePath), JavaFileObject.Kind.CLASS,
+                                         className.isEmpty() ? null : className, sourceFile.toURI(), new BinaryContent(content)));
+      }
+      final int diagnosticsCount = in.readInt();
+      for (int i = 0; i < diagnosticsCount; i++) {
+        final Diagnostic.Kind kind = Diagnostic.Kind.valueOf(in.readUTF());
+        final String message = in.readUTF();
+        final String sourcePath = in.readUTF();
+        final File sourceFile = sourcePath.isEmpty() ? null : getSourceFile(sourcePath);
+        if (!sourcePath.isEmpty() && sourceFile == null) {
+          return false;
+        }
+        diagnostics.add(new CachedDiagnostic(kind, message, sourceFile, in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                                             in.readLong()));
+      }
+      return true;
+    }
+    catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage());
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new IOException(e.getMessage());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private int indexOfTargetWithOutput(File outputRoot) {
+    for (int i = 0; i < myTargets.size(); i++) {
+      final File outputDir = myTargets.get(i).getOutputDir();
+      if (outputDir != null && FileUtil.filesEqual(outputDir, outputRoot)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // source path is stored as root index and path relative to the root, so it does not depend on project location
+  @Nullable
+  private String getRelativeSourcePath(File file) {
+    for (int i = 0; i < mySourceRoots.size(); i++) {
+      final File root = mySourceRoots.get(i);
+      if (FileUtil.isAncestor(root, file, true)) {
+        return i + ":" + FileUtil.toSystemIndependentName(FileUtil.getRelativePath(root, file));
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private File getSourceFile(String relativePath) {
+    final int colon = relativePath.indexOf(':');
+    if (colon <= 0) {
+      return null;
+    }
+    final int rootIndex = Integer.parseInt(relativePath.substring(0, colon));
+    if (rootIndex >= mySourceRoots.size()) {
+      return null;
+    }
+    return new File(mySourceRoots.get(rootIndex), FileUtil.toSystemDependentName(relativePath.substring(colon + 1)));
+  }
+
+  private String getClasspathEntryHash(File file) throws IOException {
+    if (file.isDirectory()) {
+      boolean isChunkOutput = false;
+      for (ModuleBuildTarget target : myTargets) {
+        isChunkOutput |= FileUtil.filesEqual(file, target.getOutputDir());
+      }
+      if (isChunkOutput) {
+        return computeDirectoryHash(file); // may be changed by other builders of this chunk
+      }
+      // output directories of dependencies are not modified after their chunks are built
+      synchronized (DIRECTORY_HASHES_KEY) {
+        final Map<File, String> hashes = DIRECTORY_HASHES_KEY.get(myContext);
+        final String hash = hashes == null ? null : hashes.get(file);
+        if (hash != null) {
+          return hash;
+        }
+      }
+      final String hash = computeDirectoryHash(file);
+      synchronized (DIRECTORY_HASHES_KEY) {
+        Map<File, String> hashes = DIRECTORY_HASHES_KEY.get(myContext);
+        if (hashes == null) {
+          hashes = new THashMap<File, String>(FileUtil.FILE_HASHING_STRATEGY);
+          DIRECTORY_HASHES_KEY.set(myContext, hashes);
+        }
+        hashes.put(file, hash);
+      }
+      return hash;
+    }
+    if (!file.isFile()) {
+      return "none";
+    }
+    final String path = FileUtil.toSystemIndependentName(file.getAbsolutePath());
+    final long length = file.length();
+    final long timestamp = file.lastModified();
+    synchronized (ourJarHashes) {
+      final JarHash cached = ourJarHashes.get(path);
+      if (cached != null && cached.length == length && cached.timestamp == timestamp) {
+        return cached.hash;
+      }
+    }
+    final MessageDigest digest = createDigest();
+    updateWithContent(digest, file);
+    final String hash = toHex(digest.digest());
+    synchronized (ourJarHashes) {
+      ourJarHashes.put(path, new JarHash(length, timestamp, hash));
+    }
+    return hash;
+  }
+
+  private static String computeDirectoryHash(File dir) throws IOException {
+    final MessageDigest digest = createDigest();
+    updateWithDirectory(digest, dir, "");
+    return toHex(digest.digest());
+  }
+
+  private static void updateWithDirectory(MessageDigest digest, File dir, String relativePath) throws IOException {
+    final File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      final String childPath = relativePath + "/" + child.getName();
+      if (child.isDirectory()) {
+        updateWithDirectory(digest, child, childPath);
+      }
+      else {
+        update(digest, childPath);
+        updateWithContent(digest, child);
+      }
+    }
+  }
+
+  private static MessageDigest createDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  private static void update(MessageDigest digest, String text) throws IOException {
+    digest.update(text.getBytes("UTF-8"));
+    digest.update((byte)0);
+  }
+
+  private static void updateWithContent(MessageDigest digest, File file) throws IOException {
+    final InputStream in = new FileInputStream(file);
+    try {
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    finally {
+      in.close();
+    }
+    digest.update((byte)0);
+  }
+
+  private static String toHex(byte[] bytes) {
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+  private static class JarHash {
+    final long length;
+    final long timestamp;
+    final String hash;
+
+    JarHash(long length, long timestamp, String hash) {
+      this.length = length;
+      this.timestamp = timestamp;
+      this.hash = hash;
+    }
+  }
+
+  private static class CachedDiagnostic implements Diagnostic<JavaFileObject> {
+    private final Kind myKind;
+    private final String myMessage;
+    @Nullable private final JavaFileObject mySource;
+    private final long myStartPosition;
+    private final long myEndPosition;
+    private final long myPosition;
+    private final long myLineNumber;
+    private final long myColumnNumber;
+
+    CachedDiagnostic(Kind kind, String message, @Nullable File sourceFile, long startPosition, long endPosition, long position,
+                     long lineNumber, long columnNumber) {
+      myKind = kind;
+      myMessage = message;
+      mySource = sourceFile == null ? null : new SimpleJavaFileObject(sourceFile.toURI(), JavaFileObject.Kind.SOURCE) {};
+      myStartPosition = startPosition;
+      myEndPosition = endPosition;
+      myPosition = position;
+      myLineNumber = lineNumber;
+      myColumnNumber = columnNumber;
+    }
+
+    public Kind getKind() {
+      return myKind;
+    }
+
+    public JavaFileObject getSource() {
+      return mySource;
+    }
+
+    public long getPosition() {
+      return myPosition;
+    }
+
+    public long getStartPosition() {
+      return myStartPosition;
+    }
+
+    public long getEndPosition() {
+      return myEndPosition;
+    }
+
+    public long getLineNumber() {
+      return myLineNumber;
+    }
+
+    public long getColumnNumber() {
+      return myColumnNumber;
+    }
+
+    public String getCode() {
+      return null;
+    }
+
+    public String getMessage(Locale locale) {
+      return myMessage;
+    }
+  }
+
+  /**
+   * Remembers class files as they are produced by compiler, before post-processors change them, and compiler diagnostics
+   */
+  static class Recorder implements OutputFileConsumer {
+    private final OutputFileConsumer myDelegate;
+    private final DiagnosticOutputConsumer myDiagnosticDelegate;
+    private final List<OutputFileObject> myOutputs = new ArrayList<OutputFileObject>();
+    private final List<Diagnostic<? extends JavaFileObject>> myDiagnostics = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+    private volatile boolean myHasOtherOutputs;
+
+    private Recorder(OutputFileConsumer delegate, DiagnosticOutputConsumer diagnosticDelegate) {
+      myDelegate = delegate;
+      myDiagnosticDelegate = diagnosticDelegate;
+    }
+
+    public void save(@NotNull OutputFileObject fileObject) {
+      final BinaryContent content = fileObject.getContent();
+      if (fileObject.getKind() == JavaFileObject.Kind.CLASS && content != null) {
+        final OutputFileObject copy = new OutputFileObject(
+          null, fileObject.getOutputRoot(), fileObject.getRelativePath(), fileObject.getFile(), fileObject.getKind(),
+          fileObject.getClassName(), fileObject.getSourceUri(), new BinaryContent(content.toByteArray())
+        );
+        synchronized (myOutputs) {
+          myOutputs.add(copy);
+        }
+      }
+      else {
+        myHasOtherOutputs = true;
+      }
+      myDelegate.save(fileObject);
+    }
+
+    public DiagnosticOutputConsumer getDiagnosticConsumer() {
+      return new DiagnosticOutputConsumer() {
+        public void outputLineAvailable(String line) {
+          // free-form compiler output can not be reported the same way again
+          myHasOtherOutputs = true;
+          myDiagnosticDelegate.outputLineAvailable(line);
+        }
+
+        public void registerImports(String className, Collection<String> imports, Collection<String> staticImports) {
+          myDiagnosticDelegate.registerImports(className, imports, staticImports);
+        }
+
+        public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+          synchronized (myDiagnostics) {
+            myDiagnostics.add(diagnostic);
+          }
+          myDiagnosticDelegate.report(diagnostic);
+        }
+      };
+    }
+
+    /**
+     * @return false if compiler produced something besides class files and diagnostics, such output is not cached
+     */
+    public boolean isCacheable() {
+      return !myHasOtherOutputs;
+    }
+
+    List<OutputFileObject> getOutputs() {
+      synchronized (myOutputs) {
+        return new ArrayList<OutputFileObject>(myOutputs);
+      }
+    }
+
+    List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+      synchronized (myDiagnostics) {
+        return new ArrayList<Diagnostic<? extends JavaFileObject>>(myDiagnostics);
+      }
+    }
+  }
+}
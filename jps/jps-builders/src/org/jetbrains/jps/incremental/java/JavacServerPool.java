@@ -0,0 +1,303 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.java;
+
+import com.intellij.execution.process.BaseOSProcessHandler;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.api.RequestFuture;
+import org.jetbrains.jps.incremental.Utils;
+import org.jetbrains.jps.javac.JavacServer;
+import org.jetbrains.jps.javac.JavacServerBootstrap;
+import org.jetbrains.jps.javac.JavacServerClient;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * External javac processes shared by all builds performed by the build process.
+ * Servers are kept running between build sessions if the build process itself is kept alive, so following builds
+ * are compiled by a javac whose classes are already loaded and JIT-compiled.
+ * <p/>
+ * Servers are keyed by JDK, heap size and VM options. A server is borrowed for a single compilation with {@link #acquire}
+ * and must be returned with {@link #release}. Chunks compiled concurrently get different servers while the number of servers
+ * for the key is below the limit, otherwise they share the least loaded one (javac server handles requests concurrently).
+ * By default there is a single server per key, as every server is a separate VM with its own heap.
+ * A server is recycled after a number of compilations, so that memory retained by javac in a long living process is freed,
+ * and is dropped as soon as its process terminates or the connection is lost.
+ *
+ * @see GlobalOptions#JAVAC_SERVER_POOL_SIZE_OPTION
+ * @see GlobalOptions#JAVAC_SERVER_MAX_COMPILATIONS_OPTION
+ */
+public class JavacServerPool {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.java.JavacServerPool");
+  private static final int MAX_SERVERS_PER_KEY = Math.max(1, Integer.getInteger(GlobalOptions.JAVAC_SERVER_POOL_SIZE_OPTION, 1));
+  private static final int MAX_COMPILATIONS = Integer.getInteger(GlobalOptions.JAVAC_SERVER_MAX_COMPILATIONS_OPTION, 200);
+  private static final boolean KEEP_SERVERS = Long.getLong(GlobalOptions.BUILD_PROCESS_KEEP_ALIVE_TIMEOUT_OPTION, 0L) > 0L;
+  private static final JavacServerPool ourInstance = new JavacServerPool(MAX_SERVERS_PER_KEY, MAX_COMPILATIONS);
+
+  private final Map<ServerKey, List<ExternalJavacDescriptor>> myServers = new HashMap<ServerKey, List<ExternalJavacDescriptor>>();
+  // guarded by myServers
+  private final Map<ServerKey, Integer> myPendingLaunches = new HashMap<ServerKey, Integer>();
+  private int myGeneration;
+  private final int myMaxServersPerKey;
+  private final int myMaxCompilations;
+
+  JavacServerPool(int maxServersPerKey, int maxCompilations) {
+    myMaxServersPerKey = maxServersPerKey;
+    myMaxCompilations = maxCompilations;
+  }
+
+  public static JavacServerPool getInstance() {
+    return ourInstance;
+  }
+
+  public ExternalJavacDescriptor acquire(String javaHome, int heapSize, List<String> vmOptions) throws Exception {
+    final ServerKey key = new ServerKey(javaHome, heapSize, vmOptions);
+    final List<ExternalJavacDescriptor> dead = new ArrayList<ExternalJavacDescriptor>();
+    final int generation;
+    try {
+      synchronized (myServers) {
+        while (true) {
+          List<ExternalJavacDescriptor> servers = myServers.get(key);
+          if (servers == null) {
+            servers = new ArrayList<ExternalJavacDescriptor>();
+            myServers.put(key, servers);
+          }
+          ExternalJavacDescriptor leastLoaded = null;
+          for (Iterator<ExternalJavacDescriptor> it = servers.iterator(); it.hasNext(); ) {
+            final ExternalJavacDescriptor server = it.next();
+            if (!isAlive(server)) {
+              it.remove();
+              if (server.activeRequests == 0) {
+                dead.add(server);
+              }
+              continue;
+            }
+            if (server.activeRequests == 0) {
+              server.activeRequests++;
+              return server;
+            }
+            if (leastLoaded == null || server.activeRequests < leastLoaded.activeRequests) {
+              leastLoaded = server;
+            }
+          }
+          final int pending = getPendingLaunches(key);
+          if (servers.size() + pending < myMaxServersPerKey) {
+            // reserve the slot, so that concurrent acquires do not launch more servers than allowed
+            myPendingLaunches.put(key, pending + 1);
+            generation = myGeneration;
+            break;
+          }
+          if (leastLoaded != null) {
+            leastLoaded.activeRequests++;
+            return leastLoaded;
+          }
+          // all slots are taken by servers being launched, share one of them once it is up
+          myServers.wait();
+        }
+      }
+    }
+    finally {
+      for (ExternalJavacDescriptor server : dead) {
+        shutdown(server);
+      }
+    }
+
+    // launching outside the lock: other compilations may proceed with already running servers meanwhile
+    ExternalJavacDescriptor server = null;
+    try {
+      server = launch(key);
+    }
+    finally {
+      synchronized (myServers) {
+        final int pending = getPendingLaunches(key) - 1;
+        if (pending > 0) {
+          myPendingLaunches.put(key, pending);
+        }
+        else {
+          myPendingLaunches.remove(key);
+        }
+        if (server != null) {
+          server.activeRequests++;
+          if (generation == myGeneration) {
+            List<ExternalJavacDescriptor> servers = myServers.get(key);
+            if (servers == null) {
+              servers = new ArrayList<ExternalJavacDescriptor>();
+              myServers.put(key, servers);
+            }
+            servers.add(server);
+          }
+          // otherwise the pool was shut down while the server was launching: it only serves this compilation
+          // and is shut down by release()
+        }
+        myServers.notifyAll();
+      }
+    }
+    return server;
+  }
+
+  public void release(ExternalJavacDescriptor server) {
+    boolean shutdown = false;
+    synchronized (myServers) {
+      server.activeRequests--;
+      server.compilationCount++;
+      final List<ExternalJavacDescriptor> servers = myServers.get(server.key);
+      final boolean pooled = servers != null && servers.contains(server);
+      final boolean expired = myMaxCompilations > 0 && server.compilationCount >= myMaxCompilations;
+      if (expired || !pooled || !isAlive(server)) {
+        if (pooled) {
+          servers.remove(server);
+          // a waiting acquire may launch a replacement now
+          myServers.notifyAll();
+        }
+        if (server.activeRequests == 0) {
+          if (expired) {
+            LOG.info("Recycling javac server after " + server.compilationCount + " compilations");
+          }
+          shutdown = true;
+        }
+      }
+    }
+    if (shutdown) {
+      shutdown(server);
+    }
+  }
+
+  /**
+   * Called when a build is finished. Servers are only kept if the build process is going to wait for the next build.
+   */
+  public void buildFinished() {
+    if (!KEEP_SERVERS) {
+      shutdownAll();
+    }
+  }
+
+  /**
+   * Shuts down all running servers. Servers being launched at the moment are not added to the pool
+   * and are shut down as soon as the compilation they were launched for is finished.
+   */
+  public void shutdownAll() {
+    final List<ExternalJavacDescriptor> servers = new ArrayList<ExternalJavacDescriptor>();
+    synchronized (myServers) {
+      myGeneration++;
+      for (List<ExternalJavacDescriptor> list : myServers.values()) {
+        servers.addAll(list);
+      }
+      myServers.clear();
+      myServers.notifyAll();
+    }
+    for (ExternalJavacDescriptor server : servers) {
+      shutdown(server);
+    }
+  }
+
+  private int getPendingLaunches(ServerKey key) {
+    final Integer pending = myPendingLaunches.get(key);
+    return pending != null ? pending : 0;
+  }
+
+  protected boolean isAlive(ExternalJavacDescriptor server) {
+    return !server.process.isProcessTerminated() && server.client.isConnected();
+  }
+
+  protected ExternalJavacDescriptor launch(ServerKey key) throws Exception {
+    final int port = findFreePort();
+    final BaseOSProcessHandler processHandler = JavacServerBootstrap.launchJavacServer(
+      key.myJavaHome, key.myHeapSize, port, Utils.getSystemRoot(), key.myVmOptions
+    );
+    final JavacServerClient client = new JavacServerClient();
+    try {
+      client.connect("127.0.0.1", port);
+    }
+    catch (Throwable ex) {
+      processHandler.destroyProcess();
+      throw new Exception("Failed to connect to external javac process: ", ex);
+    }
+    return new ExternalJavacDescriptor(key, processHandler, client);
+  }
+
+  protected void shutdown(ExternalJavacDescriptor server) {
+    try {
+      if (server.client.isConnected()) {
+        final RequestFuture future = server.client.sendShutdownRequest();
+        future.waitFor(500L, TimeUnit.MILLISECONDS);
+      }
+    }
+    catch (Throwable e) {
+      LOG.info(e);
+    }
+    finally {
+      // ensure process is not running
+      server.process.destroyProcess();
+    }
+  }
+
+  private static int findFreePort() {
+    try {
+      final ServerSocket serverSocket = new ServerSocket(0);
+      try {
+        return serverSocket.getLocalPort();
+      }
+      finally {
+        //workaround for linux : calling close() immediately after opening socket
+        //may result that socket is not closed
+        synchronized (serverSocket) {
+          try {
+            serverSocket.wait(1);
+          }
+          catch (Throwable ignored) {
+          }
+        }
+        serverSocket.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to find a free port for javac server, using default port " + JavacServer.DEFAULT_SERVER_PORT, e);
+      return JavacServer.DEFAULT_SERVER_PORT;
+    }
+  }
+
+  static final class ServerKey {
+    private final String myJavaHome;
+    private final int myHeapSize;
+    private final List<String> myVmOptions;
+
+    private ServerKey(String javaHome, int heapSize, List<String> vmOptions) {
+      myJavaHome = javaHome;
+      myHeapSize = heapSize;
+      myVmOptions = new ArrayList<String>(vmOptions);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ServerKey)) return false;
+      final ServerKey key = (ServerKey)o;
+      return myHeapSize == key.myHeapSize && myJavaHome.equals(key.myJavaHome) && myVmOptions.equals(key.myVmOptions);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = myJavaHome.hashCode();
+      result = 31 * result + myHeapSize;
+      result = 31 * result + myVmOptions.hashCode();
+      return result;
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.resources;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.service.SharedThreadPool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies resource files to the output on several threads.
+ * A file is not copied if the output file has the same size and timestamp as the source; copied files get the timestamp of the source.
+ * Data is transferred between file channels, so the OS may copy it without passing it through java buffers.
+ * Optionally output files are created as hard links to sources (requires Java 7 runtime and the same file system);
+ * if linking fails once, the rest of the files are copied.
+ *
+ * @see GlobalOptions#RESOURCES_COPY_THREADS_OPTION
+ * @see GlobalOptions#RESOURCES_HARD_LINKS_OPTION
+ */
+class ResourceCopier {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.resources.ResourceCopier");
+  private static final int COPY_THREADS =
+    Math.max(1, Integer.getInteger(GlobalOptions.RESOURCES_COPY_THREADS_OPTION, Math.min(4, Runtime.getRuntime().availableProcessors())));
+
+  private final CompileContext myContext;
+  private final BoundedTaskExecutor myExecutor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), COPY_THREADS);
+  private final Map<File, Future<Boolean>> myTasks = new LinkedHashMap<File, Future<Boolean>>();
+  private final Set<File> myCopied = new HashSet<File>();
+  private final AtomicInteger myCopiedCount = new AtomicInteger();
+  private final AtomicInteger myLinkedCount = new AtomicInteger();
+  private final AtomicInteger mySkippedCount = new AtomicInteger();
+  @Nullable private final HardLinker myLinker;
+  private volatile boolean myLinkingFailed;
+  private volatile boolean myCopyFailed;
+
+  ResourceCopier(CompileContext context) {
+    myContext = context;
+    myLinker = Boolean.parseBoolean(System.getProperty(GlobalOptions.RESOURCES_HARD_LINKS_OPTION, "false")) ? HardLinker.getInstance() : null;
+    myLinkingFailed = myLinker == null;
+  }
+
+  public void submit(final File source, final File target) {
+    myTasks.put(source, myExecutor.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        if (myContext.getCancelStatus().isCanceled() || myCopyFailed) {
+          return Boolean.FALSE;
+        }
+        try {
+          copy(source, target);
+        }
+        catch (IOException e) {
+          myCopyFailed = true;
+          throw e;
+        }
+        return Boolean.TRUE;
+      }
+    }));
+  }
+
+  /**
+   * @return true if some of the files submitted so far failed to be copied, files submitted after that are not copied
+   */
+  public boolean hasFailed() {
+    return myCopyFailed;
+  }
+
+  /**
+   * @return true if the output of the source is up to date after {@link #waitForAll()}
+   */
+  public boolean isCopied(File source) {
+    return myCopied.contains(source);
+  }
+
+  /**
+   * Waits until all submitted files are copied
+   * @return sources which failed to be copied, mapped to the errors
+   */
+  public Map<File, Throwable> waitForAll() {
+    final Map<File, Throwable> errors = new LinkedHashMap<File, Throwable>();
+    for (Map.Entry<File, Future<Boolean>> entry : myTasks.entrySet()) {
+      try {
+        if (entry.getValue().get().booleanValue()) {
+          myCopied.add(entry.getKey());
+        }
+      }
+      catch (InterruptedException e) {
+        errors.put(entry.getKey(), e);
+      }
+      catch (ExecutionException e) {
+        errors.put(entry.getKey(), e.getCause());
+      }
+    }
+    if (!myTasks.isEmpty() && LOG.isDebugEnabled()) {
+      LOG.debug("Resources: " + myCopiedCount.get() + " copied, " + myLinkedCount.get() + " linked, " +
+                mySkippedCount.get() + " up to date, " + errors.size() + " failed");
+    }
+    myTasks.clear();
+    return errors;
+  }
+
+  private void copy(File source, File target) throws IOException {
+    final long timestamp = source.lastModified();
+    final long targetTimestamp = target.lastModified();
+    if (targetTimestamp > 0L && targetTimestamp == timestamp && target.length() == source.length()) {
+      mySkippedCount.incrementAndGet();
+      return;
+    }
+    // the target may be a hard link to the source created by previous build, writing to it would destroy the source
+    if (targetTimestamp > 0L) {
+      FileUtil.delete(target);
+    }
+    FileUtil.createParentDirs(target);
+    if (!myLinkingFailed) {
+      if (myLinker.link(source, target)) {
+        myLinkedCount.incrementAndGet();
+        return;
+      }
+      myLinkingFailed = true;
+      LOG.info("Failed to create hard link " + target.getPath() + ", resources will be copied");
+    }
+    transferContent(source, target);
+    //noinspection ResultOfMethodCallIgnored
+    target.setLastModified(timestamp);
+    myCopiedCount.incrementAndGet();
+  }
+
+  private static void transferContent(File source, File target) throws IOException {
+    final FileInputStream in = new FileInputStream(source);
+    try {
+      final FileOutputStream out = new FileOutputStream(target);
+      try {
+        final FileChannel inChannel = in.getChannel();
+        final FileChannel outChannel = out.getChannel();
+        final long size = inChannel.size();
+        long position = 0L;
+        while (position < size) {
+          final long transferred = inChannel.transferTo(position, size - position, outChannel);
+          if (transferred <= 0L) {
+            break;
+          }
+          position += transferred;
+        }
+      }
+      finally {
+        out.close();
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static class HardLinker {
+    private static HardLinker ourInstance;
+    private static boolean ourInitialized;
+    private final Method myToPath;
+    private final Method myCreateLink;
+
+    private HardLinker(Method toPath, Method createLink) {
+      myToPath = toPath;
+      myCreateLink = createLink;
+    }
+
+    @Nullable
+    public static synchronized HardLinker getInstance() {
+      if (!ourInitialized) {
+        ourInstance = create();
+        ourInitialized = true;
+      }
+      return ourInstance;
+    }
+
+    @Nullable
+    private static HardLinker create() {
+      try {
+        final Class<?> pathClass = Class.forName("java.nio.file.Path");
+        final Method toPath = File.class.getMethod("toPath");
+        final Method createLink = Class.forName("java.nio.file.Files").getMethod("createLink", pathClass, pathClass);
+        return new HardLinker(toPath, createLink);
+      }
+      catch (Exception e) {
+        LOG.info("Hard links are not supported by the runtime: " + e.getMessage());
+        return null;
+      }
+    }
+
+    public boolean link(File source, File link) {
+      try {
+        myCreateLink.invoke(null, myToPath.invoke(link), myToPath.invoke(source));
+        return true;
+      }
+      catch (InvocationTargetException e) {
+        LOG.debug(e.getCause());
+        return false;
+      }
+      catch (Exception e) {
+        LOG.debug(e);
+        return false;
+      }
+    }
+  }
+}
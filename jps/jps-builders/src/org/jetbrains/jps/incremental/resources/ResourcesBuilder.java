@@ -18,6 +18,7 @@ package org.jetbrains.jps.incremental.resources;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.builders.BuildOutputConsumer;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
 import org.jetbrains.jps.builders.FileProcessor;
@@ -67,6 +68,8 @@ public class ResourcesBuilder extends TargetBuilder<ResourceRootDescriptor, Reso
       return;
     }
 
+    final ResourceCopier copier = new ResourceCopier(context);
+    final Map<File, String> sourceToOutput = new LinkedHashMap<File, String>();
     try {
       holder.processDirtyFiles(new FileProcessor<ResourceRootDescriptor, ResourcesTarget>() {
         private final Map<ResourceRootDescriptor, Boolean> mySkippedRoots = new HashMap<ResourceRootDescriptor, Boolean>();
@@ -80,22 +83,44 @@ public class ResourcesBuilder extends TargetBuilder<ResourceRootDescriptor, Reso
           if (isSkipped.booleanValue()) {
             return true;
           }
-          try {
-            copyResource(context, sourceRoot, file, outputConsumer);
+          final File targetFile = getTargetFile(sourceRoot, file);
+          if (targetFile != null) {
+            if (sourceToOutput.isEmpty()) {
+              context.processMessage(new ProgressMessage("Copying resources... [" + target.getModule().getName() + "]"));
+            }
+            copier.submit(file, targetFile);
+            sourceToOutput.put(file, targetFile.getPath());
           }
-          catch (IOException e) {
-            LOG.info(e);
-            context.processMessage(
-              new CompilerMessage(
-                "resources", BuildMessage.Kind.ERROR, e.getMessage(), FileUtil.toSystemIndependentName(file.getPath())
-              )
-            );
-            return false;
-          }
-          return !context.getCancelStatus().isCanceled();
+          // stop at the first file which can't be copied, the error is reported below
+          return !copier.hasFailed() && !context.getCancelStatus().isCanceled();
         }
       });
 
+      // outputs are registered here, so the output consumer is accessed from the builder thread only
+      final Map<File, Throwable> errors = copier.waitForAll();
+      for (Map.Entry<File, String> entry : sourceToOutput.entrySet()) {
+        final File file = entry.getKey();
+        final Throwable error = errors.get(file);
+        if (error != null) {
+          LOG.info(error);
+          context.processMessage(
+            new CompilerMessage(
+              "resources", BuildMessage.Kind.ERROR, error.getMessage(), FileUtil.toSystemIndependentName(file.getPath())
+            )
+          );
+          continue;
+        }
+        if (!copier.isCopied(file)) {
+          continue; // skipped because the build is canceled or another file failed to be copied
+        }
+        try {
+          outputConsumer.registerOutputFile(new File(entry.getValue()), Collections.singletonList(file.getPath()));
+        }
+        catch (Exception e) {
+          context.processMessage(new CompilerMessage(BUILDER_NAME, e));
+        }
+      }
+
       context.checkCanceled();
 
       context.processMessage(new ProgressMessage(""));
@@ -116,10 +141,11 @@ public class ResourcesBuilder extends TargetBuilder<ResourceRootDescriptor, Reso
     return true;
   }
 
-  private static void copyResource(CompileContext context, ResourceRootDescriptor rd, File file, BuildOutputConsumer outputConsumer) throws IOException {
+  @Nullable
+  private static File getTargetFile(ResourceRootDescriptor rd, File file) {
     final File outputRoot = rd.getTarget().getOutputDir();
     if (outputRoot == null) {
-      return;
+      return null;
     }
     final String sourceRootPath = FileUtil.toSystemIndependentName(rd.getRootFile().getAbsolutePath());
     final String relativePath = FileUtil.getRelativePath(sourceRootPath, FileUtil.toSystemIndependentName(file.getPath()), '/');
@@ -131,18 +157,7 @@ public class ResourcesBuilder extends TargetBuilder<ResourceRootDescriptor, Reso
       targetPath.append('/').append(prefix.replace('.', '/'));
     }
     targetPath.append('/').append(relativePath);
-
-    context.processMessage(new ProgressMessage("Copying resources... [" + rd.getTarget().getModule().getName() + "]"));
-
-    final String outputPath = targetPath.toString();
-    final File targetFile = new File(outputPath);
-    FileUtil.copyContent(file, targetFile);
-    try {
-      outputConsumer.registerOutputFile(targetFile, Collections.singletonList(file.getPath()));
-    }
-    catch (Exception e) {
-      context.processMessage(new CompilerMessage(BUILDER_NAME, e));
-    }
+    return new File(targetPath.toString());
   }
 
   @NotNull
@@ -17,6 +17,7 @@ package org.jetbrains.jps.javac;
 
 import com.intellij.openapi.util.SystemInfo;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.api.CanceledStatus;
 import org.jetbrains.jps.builders.java.JavaSourceTransformer;
 import org.jetbrains.jps.cmdline.ClasspathBootstrap;
@@ -41,6 +42,11 @@ public class JavacMain {
     /*javac options*/  "-verbose", "-proc:only", "-implicit:class", "-implicit:none",
     /*eclipse options*/"-noExit"
   ));
+  private static final int MAX_IDLE_FILE_MANAGERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+  // file managers left by compilations with reuseFileManager set, keyed by compiler options: options like -encoding
+  // are passed to the file manager and stay set in it
+  private static final Map<List<String>, List<StandardJavaFileManager>> ourIdleFileManagers = new HashMap<List<String>, List<StandardJavaFileManager>>();
+  private static int ourIdleFileManagersCount; // guarded by ourIdleFileManagers
 
   public static boolean compile(Collection<String> options,
                                 final Collection<File> sources,
@@ -51,6 +57,25 @@ public class JavacMain {
                                 final DiagnosticOutputConsumer outConsumer,
                                 final OutputFileConsumer outputSink,
                                 CanceledStatus canceledStatus, boolean useEclipseCompiler) {
+    return compile(options, sources, classpath, platformClasspath, sourcePath, outputDirToRoots, outConsumer, outputSink, canceledStatus,
+                   useEclipseCompiler, false);
+  }
+
+  /**
+   * @param reuseFileManager if true, the file manager is taken from the ones left by previous compilations with the same options
+   *                         and is kept for the following ones, so that classpath archives are not opened and indexed again.
+   *                         Each call still compiles its sources separately with its own classpath.
+   *                         The caller must call {@link #closeReusedFileManagers()} when no more compilations are expected.
+   */
+  public static boolean compile(Collection<String> options,
+                                final Collection<File> sources,
+                                Collection<File> classpath,
+                                Collection<File> platformClasspath,
+                                Collection<File> sourcePath,
+                                Map<File, Set<File>> outputDirToRoots,
+                                final DiagnosticOutputConsumer outConsumer,
+                                final OutputFileConsumer outputSink,
+                                CanceledStatus canceledStatus, boolean useEclipseCompiler, boolean reuseFileManager) {
     JavaCompiler compiler = null;
     if (useEclipseCompiler) {
       for (JavaCompiler javaCompiler : ServiceLoader.load(JavaCompiler.class)) {
@@ -82,7 +107,9 @@ public class JavacMain {
     
     final List<JavaSourceTransformer> transformers = getSourceTransformers();
 
-    final JavacFileManager fileManager = new JavacFileManager(new ContextImpl(compiler, outConsumer, outputSink, canceledStatus, nowUsingJavac), transformers);
+    final List<String> reuseKey = reuseFileManager && nowUsingJavac ? new ArrayList<String>(options) : null;
+    final ContextImpl context = new ContextImpl(compiler, outConsumer, outputSink, canceledStatus, nowUsingJavac, reuseKey);
+    final JavacFileManager fileManager = new JavacFileManager(context, transformers);
 
     fileManager.handleOption("-bootclasspath", Collections.singleton("").iterator()); // this will clear cached stuff
     fileManager.handleOption("-extdirs", Collections.singleton("").iterator()); // this will clear cached stuff
@@ -95,6 +122,21 @@ public class JavacMain {
       return false;
     }
 
+    if (context.isReused()) {
+      try {
+        // a reused file manager keeps locations of the previous compilation, restore the defaults for the ones not set below
+        if (classpath.isEmpty()) {
+          fileManager.setLocation(StandardLocation.CLASS_PATH, null);
+        }
+        if (platformClasspath.isEmpty()) {
+          fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, null);
+        }
+      }
+      catch (IOException e) {
+        fileManager.getContext().reportMessage(Diagnostic.Kind.ERROR, e.getMessage());
+        return false;
+      }
+    }
     if (!classpath.isEmpty()) {
       try {
         fileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
@@ -161,11 +203,69 @@ public class JavacMain {
       outConsumer.report(new PlainMessageDiagnostic(Diagnostic.Kind.OTHER, "Compilation was canceled"));
     }
     finally {
-      fileManager.close();
+      if (reuseKey != null && context.getStandardFileManager() instanceof ReusableFileManager) {
+        releaseFileManager(reuseKey, context.getStandardFileManager());
+      }
+      else {
+        fileManager.close();
+      }
     }
     return false;
   }
 
+  /**
+   * Closes file managers kept by compilations with {@code reuseFileManager} set, so that opened archives are released.
+   */
+  public static void closeReusedFileManagers() {
+    final List<StandardJavaFileManager> managers = new ArrayList<StandardJavaFileManager>();
+    synchronized (ourIdleFileManagers) {
+      for (List<StandardJavaFileManager> list : ourIdleFileManagers.values()) {
+        managers.addAll(list);
+      }
+      ourIdleFileManagers.clear();
+      ourIdleFileManagersCount = 0;
+    }
+    for (StandardJavaFileManager manager : managers) {
+      try {
+        manager.close();
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+
+  @Nullable
+  private static StandardJavaFileManager takeIdleFileManager(List<String> options) {
+    synchronized (ourIdleFileManagers) {
+      final List<StandardJavaFileManager> managers = ourIdleFileManagers.get(options);
+      if (managers == null || managers.isEmpty()) {
+        return null;
+      }
+      ourIdleFileManagersCount--;
+      return managers.remove(managers.size() - 1);
+    }
+  }
+
+  private static void releaseFileManager(List<String> options, StandardJavaFileManager manager) {
+    synchronized (ourIdleFileManagers) {
+      if (ourIdleFileManagersCount < MAX_IDLE_FILE_MANAGERS) {
+        List<StandardJavaFileManager> managers = ourIdleFileManagers.get(options);
+        if (managers == null) {
+          managers = new ArrayList<StandardJavaFileManager>();
+          ourIdleFileManagers.put(options, managers);
+        }
+        managers.add(manager);
+        ourIdleFileManagersCount++;
+        return;
+      }
+    }
+    try {
+      manager.close();
+    }
+    catch (IOException ignored) {
+    }
+  }
+
   private static List<JavaSourceTransformer> getSourceTransformers() {
     final Class<JavaSourceTransformer> transformerClass = JavaSourceTransformer.class;
     final ServiceLoader<JavaSourceTransformer> loader = ServiceLoader.load(transformerClass, transformerClass.getClassLoader());
@@ -223,16 +323,21 @@ public class JavacMain {
     private final DiagnosticOutputConsumer myOutConsumer;
     private final OutputFileConsumer myOutputFileSink;
     private final CanceledStatus myCanceledStatus;
+    private final boolean myReused;
 
     public ContextImpl(@NotNull JavaCompiler compiler,
                        @NotNull DiagnosticOutputConsumer outConsumer,
                        @NotNull OutputFileConsumer sink,
-                       CanceledStatus canceledStatus, boolean canUseOptimizedmanager) {
+                       CanceledStatus canceledStatus, boolean canUseOptimizedmanager, @Nullable List<String> reuseKey) {
       myOutConsumer = outConsumer;
       myOutputFileSink = sink;
       myCanceledStatus = canceledStatus;
-      StandardJavaFileManager stdManager = null;
-      if (canUseOptimizedmanager) {
+      StandardJavaFileManager stdManager = reuseKey != null && canUseOptimizedmanager ? takeIdleFileManager(reuseKey) : null;
+      myReused = stdManager != null;
+      if (stdManager != null) {
+        ((ReusableFileManager)stdManager).resetCaches();
+      }
+      else if (canUseOptimizedmanager) {
         final Class<StandardJavaFileManager> optimizedManagerClass = ClasspathBootstrap.getOptimizedFileManagerClass();
         if (optimizedManagerClass != null) {
           try {
@@ -253,6 +358,10 @@ public class JavacMain {
       }
     }
 
+    public boolean isReused() {
+      return myReused;
+    }
+
     public boolean isCanceled() {
       return myCanceledStatus.isCanceled();
     }
@@ -39,13 +39,14 @@ import java.util.concurrent.atomic.AtomicReference;
  * @author nik
  * @noinspection UnusedDeclaration
  */
-class OptimizedFileManager extends DefaultFileManager {
+class OptimizedFileManager extends DefaultFileManager implements ReusableFileManager {
   private boolean myUseZipFileIndex;
   private final Map<File, Archive> myArchives;
   private final Map<File, Boolean> myIsFile = new HashMap<File, Boolean>();
   private final Map<InputFileObject, SoftReference<CharBuffer>> myContentCache = new HashMap<InputFileObject, SoftReference<CharBuffer>>();
   private final Map<File, File[]> myDirectoryCache = new HashMap<File, File[]>();
   public static final File[] NULL_FILE_ARRAY = new File[0];
+  private long myLastResetStamp = System.currentTimeMillis();
 
   public OptimizedFileManager() throws Throwable {
     super(new Context(), true, null);
@@ -126,6 +127,28 @@ class OptimizedFileManager extends DefaultFileManager {
     return results.toList();
   }
 
+  @Override
+  public void resetCaches() {
+    myIsFile.clear();
+    myDirectoryCache.clear();
+    myContentCache.clear();
+    final long stamp = System.currentTimeMillis();
+    for (Iterator<Map.Entry<File, Archive>> it = myArchives.entrySet().iterator(); it.hasNext(); ) {
+      final Map.Entry<File, Archive> entry = it.next();
+      final File file = entry.getKey();
+      if (!file.isFile() || file.lastModified() >= myLastResetStamp) {
+        // the archive might have been rewritten after it was opened
+        it.remove();
+        try {
+          entry.getValue().close();
+        }
+        catch (IOException ignored) {
+        }
+      }
+    }
+    myLastResetStamp = stamp;
+  }
+
   private boolean isFile(File root) {
     Boolean cachedIsFile = myIsFile.get(root);
     if (cachedIsFile == null) {
@@ -39,12 +39,13 @@ import java.util.*;
  *
  * @noinspection UnusedDeclaration
  */
-class OptimizedFileManager17 extends com.sun.tools.javac.file.JavacFileManager {
+class OptimizedFileManager17 extends com.sun.tools.javac.file.JavacFileManager implements ReusableFileManager {
   private boolean myUseZipFileIndex;
   private final Map<File, Archive> myArchives;
   private final Map<File, Boolean> myIsFile = new HashMap<File, Boolean>();
   private final Map<File, File[]> myDirectoryCache = new HashMap<File, File[]>();
   public static final File[] NULL_FILE_ARRAY = new File[0];
+  private long myLastResetStamp = System.currentTimeMillis();
 
   public OptimizedFileManager17() throws Throwable {
     super(new Context(), true, null);
@@ -192,6 +193,27 @@ class OptimizedFileManager17 extends com.sun.tools.javac.file.JavacFileManager {
     return cached == NULL_FILE_ARRAY ? null : cached;
   }
 
+  @Override
+  public void resetCaches() {
+    myIsFile.clear();
+    myDirectoryCache.clear();
+    final long stamp = System.currentTimeMillis();
+    for (Iterator<Map.Entry<File, Archive>> it = myArchives.entrySet().iterator(); it.hasNext(); ) {
+      final Map.Entry<File, Archive> entry = it.next();
+      final File file = entry.getKey();
+      if (!file.isFile() || file.lastModified() >= myLastResetStamp) {
+        // the archive might have been rewritten after it was opened
+        it.remove();
+        try {
+          entry.getValue().close();
+        }
+        catch (IOException ignored) {
+        }
+      }
+    }
+    myLastResetStamp = stamp;
+  }
+
   private boolean isFile(File root) {
     Boolean cachedIsFile = myIsFile.get(root);
     if (cachedIsFile == null) {
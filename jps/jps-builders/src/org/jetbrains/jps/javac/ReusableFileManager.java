@@ -0,0 +1,30 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.javac;
+
+/**
+ * A file manager which may be used for several compilations one after another, see {@link JavacMain#compile}.
+ * Opened archives are kept between compilations, so that library jars shared by the modules are not opened and indexed
+ * again for every module chunk.
+ */
+interface ReusableFileManager {
+  /**
+   * Called before the file manager is used for the next compilation. Drops everything which may be outdated by the
+   * previous compilations: cached directory listings (output directories of compiled modules are on the classpath of
+   * the next ones), cached sources and archives which were modified since the previous call.
+   */
+  void resetCaches();
+}
@@ -52,4 +52,27 @@ public class MarkDirtyTest extends IncrementalTestCase {
     JpsModuleRootModificationUtil.addDependency(util, lib);
     doTestBuild(1).assertSuccessful();
   }
+
+  public void testNoRecompileDependentOnPrivateChange() {
+    doTestWithDependentModule();
+  }
+
+  public void testNoRecompileDependentOnMethodBodyChange() {
+    doTestWithDependentModule();
+  }
+
+  public void testRecompileDependentOnSignatureChange() {
+    doTestWithDependentModule();
+  }
+
+  public void testRecompileDependentOnConstantChange() {
+    doTestWithDependentModule();
+  }
+
+  private void doTestWithDependentModule() {
+    JpsModule main = addModule("main", "src");
+    JpsModule dep = addModule("dep", "dep/src");
+    JpsModuleRootModificationUtil.addDependency(main, dep);
+    doTestBuild(1).assertSuccessful();
+  }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.builders.java;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.PathUtil;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.builders.BuildResult;
+import org.jetbrains.jps.builders.CompileScopeTestBuilder;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+import org.jetbrains.jps.model.java.JpsJavaExtensionService;
+import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.util.JpsPathUtil;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class JavaCompilationCacheTest extends JpsBuildTestCase {
+  private File myCacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCacheDir = FileUtil.createTempDirectory("build-cache", null);
+    System.setProperty(GlobalOptions.BUILD_CACHE_DIR_OPTION, myCacheDir.getAbsolutePath());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      System.clearProperty(GlobalOptions.BUILD_CACHE_DIR_OPTION);
+      FileUtil.delete(myCacheDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testClassesRestoredFromCache() throws Exception {
+    final String file = createFile("src/A.java", "public class A { void foo() {} }");
+    final JpsModule module = addModule("m", PathUtil.getParentPath(file));
+    rebuildAll();
+    final List<File> fooEntries = getCacheEntries();
+    assertEquals(1, fooEntries.size());
+
+    change(file, "public class A { void bar() {} }");
+    rebuildAll();
+    final List<File> entries = getCacheEntries();
+    entries.removeAll(fooEntries);
+    assertEquals(1, entries.size());
+
+    // make the entry of the current sources hold the classes compiled before to see they are taken from cache
+    FileUtil.copy(fooEntries.get(0), entries.get(0));
+    rebuildAll();
+    final String outputPath = JpsPathUtil.urlToPath(JpsJavaExtensionService.getInstance().getOutputUrl(module, false));
+    final String content = new String(FileUtil.loadFileBytes(new File(outputPath, "A.class")), "ISO-8859-1");
+    assertTrue(content.contains("foo"));
+    assertFalse(content.contains("bar"));
+  }
+
+  public void testWarningsReplayedFromCache() {
+    final String file = createFile("src/A.java", "import java.util.*;\n" +
+                                                 "public class A { List<String> list() { return new ArrayList(); } }");
+    addModule("m", PathUtil.getParentPath(file));
+
+    final BuildResult first = doBuild(CompileScopeTestBuilder.rebuild().all());
+    first.assertSuccessful();
+    assertTrue(hasUncheckedWarning(first));
+    assertEquals(1, getCacheEntries().size());
+
+    final BuildResult second = doBuild(CompileScopeTestBuilder.rebuild().all());
+    second.assertSuccessful();
+    assertTrue(hasUncheckedWarning(second));
+    assertEquals(1, getCacheEntries().size());
+  }
+
+  private static boolean hasUncheckedWarning(BuildResult result) {
+    for (BuildMessage message : result.getInfoMessages()) {
+      if (message.getMessageText().contains("unchecked")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private List<File> getCacheEntries() {
+    return FileUtil.findFilesByMask(Pattern.compile("[0-9a-fA-F]+"), myCacheDir);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.builders.java;
+
+import com.intellij.util.PathUtil;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.model.module.JpsModule;
+
+public class ModuleDependencyVisibilityTest extends JpsBuildTestCase {
+  public void testReferenceToIndependentModuleFails() {
+    String a = createFile("a/A.java", "public class A { B b; }");
+    String b = createFile("b/B.java", "public class B {}");
+    addModule("a", PathUtil.getParentPath(a));
+    addModule("b", PathUtil.getParentPath(b));
+    makeAll().assertFailed();
+  }
+
+  public void testReferenceToDependencyModuleCompiles() {
+    String a = createFile("a/A.java", "public class A { B b; }");
+    String b = createFile("b/B.java", "public class B {}");
+    JpsModule moduleA = addModule("a", PathUtil.getParentPath(a));
+    JpsModule moduleB = addModule("b", PathUtil.getParentPath(b));
+    moduleA.getDependenciesList().addModuleDependency(moduleB);
+    makeAll().assertSuccessful();
+  }
+
+  public void testDependentModulesSeeClassesCompiledEarlierInTheSameBuild() {
+    String a = createFile("a/A.java", "public class A { B b; }");
+    String b = createFile("b/B.java", "public class B { C c; }");
+    String c = createFile("c/C.java", "public class C {}");
+    JpsModule moduleA = addModule("a", PathUtil.getParentPath(a));
+    JpsModule moduleB = addModule("b", PathUtil.getParentPath(b));
+    JpsModule moduleC = addModule("c", PathUtil.getParentPath(c));
+    moduleA.getDependenciesList().addModuleDependency(moduleB);
+    moduleB.getDependenciesList().addModuleDependency(moduleC);
+    makeAll().assertSuccessful();
+
+    change(c, "public class C { public void foo() {} }");
+    change(b, "public class B { C c; D d; void bar() { c.foo(); } }");
+    createFile("c/D.java", "public class D {}");
+    change(a, "public class A { B b; D d; }");
+    makeAll().assertFailed();
+    moduleA.getDependenciesList().addModuleDependency(moduleC);
+    makeAll().assertSuccessful();
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.builders.java.dependencyView;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.UsefulTestCase;
+import com.intellij.util.io.EnumeratorIntegerDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.TIntHashSet;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class IntIntPersistentMultiMapletTest extends UsefulTestCase {
+  private File myDir;
+  private File myFile;
+  private IntIntPersistentMultiMaplet myMaplet;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("maplet", null);
+    myFile = new File(myDir, "maplet");
+    myMaplet = new IntIntPersistentMultiMaplet(myFile, EnumeratorIntegerDescriptor.INSTANCE);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myMaplet.close();
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testRoundTrip() throws Exception {
+    myMaplet.put(1, set(300, 5, 70000));
+    myMaplet.put(1, 5);
+    myMaplet.put(1, 6);
+    myMaplet.put(2, set(1));
+    assertSet(myMaplet.get(1), 5, 6, 300, 70000);
+
+    myMaplet.removeFrom(1, 300);
+    myMaplet.replace(2, set(2, 3));
+    reopen();
+    assertSet(myMaplet.get(1), 5, 6, 70000);
+    assertSet(myMaplet.get(2), 2, 3);
+    assertNull(myMaplet.get(3));
+
+    myMaplet.removeAll(2, set(2, 3));
+    reopen();
+    assertNull(myMaplet.get(2));
+  }
+
+  public void testManyBlocksAreCompactedOnGet() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      myMaplet.put(1, set(10, 20));
+    }
+    myMaplet.put(2, set(10));
+    myMaplet.put(2, set(20));
+    assertEquals(11, getStoredBlockCount(1));
+    assertEquals(2, getStoredBlockCount(2));
+
+    assertSet(myMaplet.get(1), 10, 20);
+    assertSet(myMaplet.get(2), 10, 20);
+    assertEquals(1, getStoredBlockCount(1));
+    assertEquals(2, getStoredBlockCount(2));
+  }
+
+  private int getStoredBlockCount(int key) throws Exception {
+    myMaplet.close();
+    final PersistentHashMap<Integer, TIntHashSet> map =
+      new PersistentHashMap<Integer, TIntHashSet>(myFile, EnumeratorIntegerDescriptor.INSTANCE, new IntIntPersistentMultiMaplet.IntSetExternalizer());
+    try {
+      return ((IntIntPersistentMultiMaplet.StoredIntSet)map.get(key)).getBlockCount();
+    }
+    finally {
+      map.close();
+      myMaplet = new IntIntPersistentMultiMaplet(myFile, EnumeratorIntegerDescriptor.INSTANCE);
+    }
+  }
+
+  private void reopen() throws Exception {
+    myMaplet.close();
+    myMaplet = new IntIntPersistentMultiMaplet(myFile, EnumeratorIntegerDescriptor.INSTANCE);
+  }
+
+  private static TIntHashSet set(int... values) {
+    return new TIntHashSet(values);
+  }
+
+  private static void assertSet(TIntHashSet actual, int... expected) {
+    assertNotNull(actual);
+    final int[] values = actual.toArray();
+    Arrays.sort(values);
+    assertEquals(Arrays.toString(expected), Arrays.toString(values));
+  }
+}
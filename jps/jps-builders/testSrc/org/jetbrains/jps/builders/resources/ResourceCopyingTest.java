@@ -15,7 +15,9 @@
  */
 package org.jetbrains.jps.builders.resources;
 
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.PathUtil;
+import org.jetbrains.jps.api.GlobalOptions;
 import org.jetbrains.jps.builders.JpsBuildTestCase;
 import org.jetbrains.jps.model.JpsSimpleElement;
 import org.jetbrains.jps.model.java.JavaSourceRootProperties;
@@ -25,6 +27,9 @@ import org.jetbrains.jps.model.module.JpsModule;
 import org.jetbrains.jps.model.module.JpsModuleSourceRoot;
 import org.jetbrains.jps.model.module.JpsTypedModuleSourceRoot;
 
+import java.io.File;
+import java.io.IOException;
+
 import static com.intellij.util.io.TestFileSystemItem.fs;
 
 /**
@@ -53,4 +58,45 @@ public class ResourceCopyingTest extends JpsBuildTestCase {
     rebuildAll();
     assertOutput(m, fs().dir("xxx").file("a.xml"));
   }
+
+  public void testChangedResourceIsCopiedAgain() {
+    String file = createFile("src/a.xml", "a");
+    JpsModule m = addModule("m", PathUtil.getParentPath(file));
+    rebuildAll();
+    assertOutput(m, fs().file("a.xml", "a"));
+
+    change(file, "b");
+    makeAll().assertSuccessful();
+    assertOutput(m, fs().file("a.xml", "b"));
+  }
+
+  public void testOutputIsNotLinkedByDefault() throws IOException {
+    String file = createFile("src/a.xml", "a");
+    JpsModule m = addModule("m", PathUtil.getParentPath(file));
+    rebuildAll();
+
+    FileUtil.writeToFile(new File(file), "b");
+    assertOutput(m, fs().file("a.xml", "a"));
+  }
+
+  public void testHardLinks() throws IOException {
+    System.setProperty(GlobalOptions.RESOURCES_HARD_LINKS_OPTION, "true");
+    try {
+      String file = createFile("src/a.xml", "a");
+      JpsModule m = addModule("m", PathUtil.getParentPath(file));
+      rebuildAll();
+
+      // the output is the same file as the source, changes made in place are visible through it
+      FileUtil.writeToFile(new File(file), "b");
+      assertOutput(m, fs().file("a.xml", "b"));
+
+      change(file, "c");
+      makeAll().assertSuccessful();
+      assertOutput(m, fs().file("a.xml", "c"));
+      assertEquals("c", FileUtil.loadFile(new File(file)));
+    }
+    finally {
+      System.clearProperty(GlobalOptions.RESOURCES_HARD_LINKS_OPTION);
+    }
+  }
 }
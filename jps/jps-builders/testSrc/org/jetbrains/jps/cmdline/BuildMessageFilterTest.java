@@ -0,0 +1,68 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.cmdline;
+
+import junit.framework.TestCase;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+import org.jetbrains.jps.incremental.messages.CompilerMessage;
+import org.jetbrains.jps.incremental.messages.ProgressMessage;
+
+public class BuildMessageFilterTest extends TestCase {
+  public void testDuplicatesAreDropped() {
+    final BuildMessageFilter filter = new BuildMessageFilter(-1);
+    assertTrue(filter.accept(warning("unchecked call", "A.java", 1)));
+    assertFalse(filter.accept(warning("unchecked call", "A.java", 1)));
+    assertTrue(filter.accept(warning("unchecked call", "A.java", 2)));
+    assertTrue(filter.accept(warning("unchecked call", "B.java", 1)));
+    assertTrue(filter.accept(warning("deprecated", "A.java", 1)));
+    assertTrue(filter.accept(new CompilerMessage("javac", BuildMessage.Kind.INFO, "unchecked call", "A.java", -1L, -1L, -1L, 1L, 1L)));
+    assertFalse(filter.accept(new CompilerMessage("javac", BuildMessage.Kind.INFO, "unchecked call", "A.java", -1L, -1L, -1L, 1L, 1L)));
+  }
+
+  public void testErrorsAreNeverFiltered() {
+    final BuildMessageFilter filter = new BuildMessageFilter(0);
+    for (int i = 0; i < 3; i++) {
+      assertTrue(filter.accept(error("cannot find symbol", "A.java", 1)));
+    }
+    assertFalse(filter.accept(warning("unchecked call", "A.java", 1)));
+    assertTrue(filter.accept(error("cannot find symbol", "A.java", 1)));
+  }
+
+  public void testWarningsOverLimitAreReportedOnce() {
+    final BuildMessageFilter filter = new BuildMessageFilter(2);
+    assertNull(filter.takeDroppedWarningsMessage());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i < 2, filter.accept(warning("unchecked call", "A.java", i)));
+    }
+    assertEquals("3 more warnings were not shown", filter.takeDroppedWarningsMessage());
+    assertNull(filter.takeDroppedWarningsMessage());
+  }
+
+  public void testFrequentProgressMessagesAreDropped() {
+    final BuildMessageFilter filter = new BuildMessageFilter(-1);
+    assertTrue(filter.accept(new ProgressMessage("Compiling A")));
+    assertFalse(filter.accept(new ProgressMessage("Compiling B")));
+    assertTrue(filter.accept(new ProgressMessage("Compiling C", 0.5f)));
+  }
+
+  private static CompilerMessage warning(String text, String path, long line) {
+    return new CompilerMessage("javac", BuildMessage.Kind.WARNING, text, path, -1L, -1L, -1L, line, 1L);
+  }
+
+  private static CompilerMessage error(String text, String path, long line) {
+    return new CompilerMessage("javac", BuildMessage.Kind.ERROR, text, path, -1L, -1L, -1L, line, 1L);
+  }
+}
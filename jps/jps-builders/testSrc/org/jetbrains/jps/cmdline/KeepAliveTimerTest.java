@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.cmdline;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeepAliveTimerTest extends TestCase {
+  private final AtomicInteger myShutdowns = new AtomicInteger();
+  private final CountDownLatch myShutdownLatch = new CountDownLatch(1);
+  private KeepAliveTimer myTimer;
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      if (myTimer != null) {
+        myTimer.dispose();
+      }
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testShutdownAfterIdleTimeout() throws Exception {
+    createTimer(50);
+    assertTrue(myTimer.sessionStarted());
+    myTimer.sessionFinished();
+    assertTrue(myShutdownLatch.await(10, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    assertEquals(1, myShutdowns.get());
+  }
+
+  public void testNoShutdownWhileSessionRuns() throws Exception {
+    createTimer(50);
+    assertTrue(myTimer.sessionStarted());
+    assertFalse(myShutdownLatch.await(300, TimeUnit.MILLISECONDS));
+  }
+
+  public void testNextSessionCancelsShutdown() throws Exception {
+    createTimer(300);
+    assertTrue(myTimer.sessionStarted());
+    myTimer.sessionFinished();
+    assertTrue(myTimer.sessionStarted());
+    assertFalse(myShutdownLatch.await(600, TimeUnit.MILLISECONDS));
+
+    myTimer.sessionFinished();
+    assertTrue(myShutdownLatch.await(10, TimeUnit.SECONDS));
+    assertEquals(1, myShutdowns.get());
+  }
+
+  public void testNoSessionAfterShutdown() throws Exception {
+    createTimer(10);
+    myTimer.sessionFinished();
+    assertTrue(myShutdownLatch.await(10, TimeUnit.SECONDS));
+    assertFalse(myTimer.sessionStarted());
+
+    myTimer.sessionFinished();
+    Thread.sleep(100);
+    assertEquals(1, myShutdowns.get());
+  }
+
+  private void createTimer(long timeout) {
+    myTimer = new KeepAliveTimer(timeout, new Runnable() {
+      @Override
+      public void run() {
+        myShutdowns.incrementAndGet();
+        myShutdownLatch.countDown();
+      }
+    });
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.jps.api.CanceledStatus;
+import org.jetbrains.jps.builders.BuildRootDescriptor;
+import org.jetbrains.jps.builders.BuildTarget;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.builders.logging.BuildLoggingManager;
+import org.jetbrains.jps.cmdline.ProjectDescriptor;
+
+import java.io.File;
+import java.util.*;
+
+import static org.jetbrains.jps.builders.CompileScopeTestBuilder.make;
+
+public class ParallelFSStateInitTest extends JpsBuildTestCase {
+  private static final int MODULES_COUNT = 12;
+
+  public void testParallelInitMarksSameFilesAsSequential() throws Exception {
+    for (int i = 0; i < MODULES_COUNT; i++) {
+      for (int j = 0; j < 3; j++) {
+        createFile("m" + i + "/src/p" + i + "/C" + j + ".java", "package p" + i + "; public class C" + j + " {}");
+      }
+      addModule("m" + i, getAbsolutePath("m" + i + "/src"));
+    }
+    rebuildAll();
+
+    for (int i = 0; i < MODULES_COUNT; i++) {
+      if (i % 2 == 0) {
+        change(getAbsolutePath("m" + i + "/src/p" + i + "/C0.java"));
+      }
+      if (i % 3 == 0) {
+        delete(getAbsolutePath("m" + i + "/src/p" + i + "/C1.java"));
+      }
+      if (i % 4 == 0) {
+        createFile("m" + i + "/src/p" + i + "/D.java", "package p" + i + "; public class D {}");
+      }
+    }
+
+    final Map<String, Set<String>> sequential = collectDirtyState(false);
+    final Map<String, Set<String>> parallel = collectDirtyState(true);
+    assertEquals(sequential, parallel);
+    assertFalse(parallel.isEmpty());
+  }
+
+  /**
+   * @return files to recompile and deleted paths of every target having them
+   */
+  private Map<String, Set<String>> collectDirtyState(boolean initInParallel) throws Exception {
+    final ProjectDescriptor pd = createProjectDescriptor(BuildLoggingManager.DEFAULT);
+    try {
+      final CompileScope scope = make().all().build();
+      final CompileContextImpl context = new CompileContextImpl(scope, pd, true, false, MessageHandler.DEAF,
+                                                                Collections.<String, String>emptyMap(), CanceledStatus.NULL);
+      final List<? extends BuildTarget<?>> targets = pd.getBuildTargetIndex().getAllTargets();
+      if (initInParallel) {
+        BuildOperations.initFSStateInParallel(context);
+        for (BuildTarget<?> target : targets) {
+          assertTrue(target.getId(), pd.fsState.isInitialScanPerformed(target));
+        }
+      }
+
+      final Map<String, Set<String>> result = new TreeMap<String, Set<String>>();
+      for (BuildTarget<?> target : targets) {
+        BuildOperations.ensureFSStateInitialized(context, target);
+        final Set<String> paths = new TreeSet<String>();
+        final Map<BuildRootDescriptor, Set<File>> toRecompile = pd.fsState.getSourcesToRecompile(context, target);
+        for (Set<File> files : toRecompile.values()) {
+          for (File file : files) {
+            paths.add(FileUtil.toSystemIndependentName(file.getPath()));
+          }
+        }
+        for (String deleted : pd.fsState.getAndClearDeletedPaths(target)) {
+          paths.add("deleted: " + FileUtil.toSystemIndependentName(deleted));
+        }
+        if (!paths.isEmpty()) {
+          result.put(target.getTargetType().getTypeId() + ":" + target.getId(), paths);
+        }
+      }
+      return result;
+    }
+    finally {
+      pd.release();
+    }
+  }
+}
@@ -25,6 +25,7 @@ import org.jetbrains.jps.util.JpsPathUtil;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Enumeration;
@@ -33,6 +34,7 @@ import java.util.jar.JarFile;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import static com.intellij.util.io.TestFileSystemBuilder.fs;
@@ -256,6 +258,42 @@ public class ArtifactBuilderTest extends ArtifactBuilderTestCase {
                            .file("TestRunner.class"));
   }
 
+  public void testRebuildArchiveWithChangedEntry() throws IOException {
+    final String file = createFile("dir/a.txt", "aaa");
+    createFile("dir/b.txt", "bbb");
+    final JpsArtifact a = addArtifact("a", root().archive("a.jar").parentDirCopy(file).extractedDir(getJUnitJarPath(), "/junit/textui/"));
+    buildAll();
+
+    change(file, "xxx");
+    buildAll();
+    assertOutput(a, fs().archive("a.jar")
+                           .file("a.txt", "xxx")
+                           .file("b.txt", "bbb")
+                           .file("ResultPrinter.class")
+                           .file("TestRunner.class"));
+
+    // entries copied from the previous archive and compressed again must both have valid local headers
+    final ZipInputStream stream = new ZipInputStream(new FileInputStream(new File(a.getOutputPath(), "a.jar")));
+    try {
+      int count = 0;
+      ZipEntry entry;
+      while ((entry = stream.getNextEntry()) != null) {
+        final byte[] content = FileUtil.loadBytes(stream);
+        if (!entry.isDirectory()) {
+          final CRC32 crc = new CRC32();
+          crc.update(content);
+          assertEquals(entry.getName(), crc.getValue(), entry.getCrc());
+          assertEquals(entry.getName(), content.length, entry.getSize());
+          count++;
+        }
+      }
+      assertEquals(4, count);
+    }
+    finally {
+      stream.close();
+    }
+  }
+
   public void testSelfIncludingArtifact() {
     final JpsArtifact a = addArtifact("a", root());
     LayoutElementTestUtil.addArtifactToLayout(a, a);
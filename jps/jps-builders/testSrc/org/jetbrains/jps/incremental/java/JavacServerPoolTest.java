@@ -0,0 +1,216 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.java;
+
+import com.intellij.openapi.util.Ref;
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JavacServerPoolTest extends TestCase {
+  private static final List<String> NO_OPTIONS = Collections.emptyList();
+
+  public void testSingleServerIsShared() throws Exception {
+    final TestPool pool = new TestPool(1, 0);
+    final ExternalJavacDescriptor first = pool.acquire("jdk", 128, NO_OPTIONS);
+    final ExternalJavacDescriptor second = pool.acquire("jdk", 128, NO_OPTIONS);
+    assertSame(first, second);
+    assertEquals(1, pool.myLaunched.size());
+
+    pool.release(first);
+    pool.release(second);
+    assertSame(first, pool.acquire("jdk", 128, NO_OPTIONS));
+    assertEquals(1, pool.myLaunched.size());
+    assertTrue(pool.myShutdown.isEmpty());
+  }
+
+  public void testConcurrentCompilationsGetDifferentServersUpToLimit() throws Exception {
+    final TestPool pool = new TestPool(2, 0);
+    final ExternalJavacDescriptor first = pool.acquire("jdk", 128, NO_OPTIONS);
+    final ExternalJavacDescriptor second = pool.acquire("jdk", 128, NO_OPTIONS);
+    assertNotSame(first, second);
+
+    pool.release(first);
+    final ExternalJavacDescriptor third = pool.acquire("jdk", 128, NO_OPTIONS);
+    assertSame(first, third);
+    final ExternalJavacDescriptor fourth = pool.acquire("jdk", 128, NO_OPTIONS);
+    assertTrue(fourth == first || fourth == second);
+    assertEquals(2, pool.myLaunched.size());
+  }
+
+  public void testDifferentSettingsGetDifferentServers() throws Exception {
+    final TestPool pool = new TestPool(1, 0);
+    final ExternalJavacDescriptor server = pool.acquire("jdk", 128, NO_OPTIONS);
+    assertNotSame(server, pool.acquire("jdk2", 128, NO_OPTIONS));
+    assertNotSame(server, pool.acquire("jdk", 256, NO_OPTIONS));
+    assertNotSame(server, pool.acquire("jdk", 128, Collections.singletonList("-ea")));
+    assertEquals(4, pool.myLaunched.size());
+  }
+
+  public void testServerRecycledAfterMaxCompilations() throws Exception {
+    final TestPool pool = new TestPool(1, 2);
+    final ExternalJavacDescriptor server = pool.acquire("jdk", 128, NO_OPTIONS);
+    pool.release(server);
+    assertSame(server, pool.acquire("jdk", 128, NO_OPTIONS));
+    pool.release(server);
+    assertEquals(Collections.singletonList(server), pool.myShutdown);
+
+    assertNotSame(server, pool.acquire("jdk", 128, NO_OPTIONS));
+    assertEquals(2, pool.myLaunched.size());
+  }
+
+  public void testBusyServerIsShutDownWhenReleased() throws Exception {
+    final TestPool pool = new TestPool(1, 1);
+    final ExternalJavacDescriptor server = pool.acquire("jdk", 128, NO_OPTIONS);
+    assertSame(server, pool.acquire("jdk", 128, NO_OPTIONS));
+
+    pool.release(server);
+    assertTrue(pool.myShutdown.isEmpty());
+    pool.release(server);
+    assertEquals(Collections.singletonList(server), pool.myShutdown);
+  }
+
+  public void testDeadServerIsReplaced() throws Exception {
+    final TestPool pool = new TestPool(1, 0);
+    final ExternalJavacDescriptor server = pool.acquire("jdk", 128, NO_OPTIONS);
+    pool.release(server);
+    pool.myDead.add(server);
+
+    final ExternalJavacDescriptor replacement = pool.acquire("jdk", 128, NO_OPTIONS);
+    assertNotSame(server, replacement);
+    assertEquals(Collections.singletonList(server), pool.myShutdown);
+  }
+
+  public void testShutdownAll() throws Exception {
+    final TestPool pool = new TestPool(1, 0);
+    final ExternalJavacDescriptor first = pool.acquire("jdk", 128, NO_OPTIONS);
+    final ExternalJavacDescriptor second = pool.acquire("jdk2", 128, NO_OPTIONS);
+    pool.shutdownAll();
+    assertEquals(new HashSet<ExternalJavacDescriptor>(Arrays.asList(first, second)),
+                 new HashSet<ExternalJavacDescriptor>(pool.myShutdown));
+    assertNotSame(first, pool.acquire("jdk", 128, NO_OPTIONS));
+  }
+
+  public void testConcurrentAcquiresDoNotLaunchMoreServersThanAllowed() throws Exception {
+    final TestPool pool = new TestPool(2, 0);
+    pool.myLaunchDelay = 50;
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<ExternalJavacDescriptor> acquired = Collections.synchronizedList(new ArrayList<ExternalJavacDescriptor>());
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      final Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int j = 0; j < 5; j++) {
+              final ExternalJavacDescriptor server = pool.acquire("jdk", 128, NO_OPTIONS);
+              acquired.add(server);
+              pool.release(server);
+            }
+          }
+          catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join(10000);
+      assertFalse(thread.isAlive());
+    }
+    assertEquals(Collections.<Throwable>emptyList(), errors);
+    assertEquals(40, acquired.size());
+    assertEquals(2, pool.myLaunched.size());
+    assertTrue(new HashSet<ExternalJavacDescriptor>(pool.myLaunched).containsAll(acquired));
+    assertTrue(pool.myShutdown.isEmpty());
+  }
+
+  public void testServerLaunchedDuringShutdownIsNotPooled() throws Exception {
+    final TestPool pool = new TestPool(1, 0);
+    pool.myLaunchStarted = new CountDownLatch(1);
+    pool.myLaunchGate = new CountDownLatch(1);
+    final Ref<ExternalJavacDescriptor> acquired = new Ref<ExternalJavacDescriptor>();
+    final Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          acquired.set(pool.acquire("jdk", 128, NO_OPTIONS));
+        }
+        catch (Exception ignored) {
+        }
+      }
+    };
+    thread.start();
+    assertTrue(pool.myLaunchStarted.await(10, TimeUnit.SECONDS));
+    pool.shutdownAll();
+    pool.myLaunchGate.countDown();
+    thread.join(10000);
+
+    final ExternalJavacDescriptor server = acquired.get();
+    assertNotNull(server);
+    assertTrue(pool.myShutdown.isEmpty());
+    final ExternalJavacDescriptor next = pool.acquire("jdk", 128, NO_OPTIONS);
+    assertNotSame(server, next);
+    assertEquals(2, pool.myLaunched.size());
+
+    pool.release(server);
+    assertEquals(Collections.singletonList(server), pool.myShutdown);
+  }
+
+  private static class TestPool extends JavacServerPool {
+    private final List<ExternalJavacDescriptor> myLaunched = Collections.synchronizedList(new ArrayList<ExternalJavacDescriptor>());
+    private final List<ExternalJavacDescriptor> myShutdown = Collections.synchronizedList(new ArrayList<ExternalJavacDescriptor>());
+    private final Set<ExternalJavacDescriptor> myDead = Collections.synchronizedSet(new HashSet<ExternalJavacDescriptor>());
+    private long myLaunchDelay;
+    private CountDownLatch myLaunchStarted;
+    private CountDownLatch myLaunchGate;
+
+    private TestPool(int maxServersPerKey, int maxCompilations) {
+      super(maxServersPerKey, maxCompilations);
+    }
+
+    @Override
+    protected boolean isAlive(ExternalJavacDescriptor server) {
+      return !myDead.contains(server);
+    }
+
+    @Override
+    protected ExternalJavacDescriptor launch(ServerKey key) throws Exception {
+      if (myLaunchStarted != null) {
+        myLaunchStarted.countDown();
+        myLaunchGate.await();
+      }
+      if (myLaunchDelay > 0) {
+        Thread.sleep(myLaunchDelay);
+      }
+      final ExternalJavacDescriptor server = new ExternalJavacDescriptor(key, null, null);
+      myLaunched.add(server);
+      return server;
+    }
+
+    @Override
+    protected void shutdown(ExternalJavacDescriptor server) {
+      myShutdown.add(server);
+    }
+  }
+}
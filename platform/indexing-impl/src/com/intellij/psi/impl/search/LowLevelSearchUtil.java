@@ -30,7 +30,9 @@ import com.intellij.psi.impl.source.tree.TreeElement;
 import com.intellij.psi.search.TextOccurenceProcessor;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.text.CharArrayUtil;
+import com.intellij.util.text.MultiStringSearcher;
 import com.intellij.util.text.StringSearcher;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -176,6 +178,81 @@ public class LowLevelSearchUtil {
     return true;
   }
 
+  /**
+   * Does the same as {@link #processElementsContainingWordInElement} for each of the multi searcher's searchers in turn,
+   * but the text of the scope is scanned only once for all the words.
+   * @param processors processors for the searchers, in the same order; null processor means the searcher's word is not needed
+   */
+  //@RequiresReadAction
+  public static boolean processElementsContainingWordsInElement(@NotNull TextOccurenceProcessor[] processors,
+                                                                @NotNull PsiElement scope,
+                                                                @NotNull MultiStringSearcher multiSearcher,
+                                                                final boolean processInjectedPsi,
+                                                                @Nullable final ProgressIndicator progress) {
+    if (progress != null) progress.checkCanceled();
+
+    final StringSearcher[] searchers = multiSearcher.getSearchers();
+    PsiFile file = scope.getContainingFile();
+    final CharSequence buffer = file.getViewProvider().getContents();
+    TextRange range = scope.getTextRange();
+    if (range == null) {
+      throw new AssertionError("Element " + scope + " of class " + scope.getClass() + " has null range");
+    }
+    final int scopeStart = range.getStartOffset();
+    final int endOffset = Math.min(range.getEndOffset(), buffer.length());
+    final char[] bufferArray = CharArrayUtil.fromSequenceWithoutCopying(buffer);
+
+    final TIntArrayList[] occurrences = new TIntArrayList[searchers.length];
+    multiSearcher.scan(buffer, bufferArray, scopeStart, endOffset, new MultiStringSearcher.OccurrenceConsumer() {
+      int myCount;
+
+      @Override
+      public boolean consume(int searcherIndex, int startOffset) {
+        if (progress != null && (++myCount & 0xff) == 0) progress.checkCanceled();
+        if (processors[searcherIndex] == null) return true;
+        if (!isWordAt(buffer, bufferArray, startOffset, scopeStart, endOffset, searchers[searcherIndex])) return true;
+        if (occurrences[searcherIndex] == null) {
+          occurrences[searcherIndex] = new TIntArrayList();
+        }
+        occurrences[searcherIndex].add(startOffset);
+        return true;
+      }
+    });
+
+    for (int i = 0; i < searchers.length; i++) {
+      final TIntArrayList offsets = occurrences[i];
+      if (offsets == null) continue;
+      for (int j = 0; j < offsets.size(); j++) {
+        if (progress != null) progress.checkCanceled();
+        if (!processTreeUp(processors[i], scope, searchers[i], offsets.get(j) - scopeStart, processInjectedPsi, progress)) return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isWordAt(@NotNull CharSequence text, @Nullable char[] textArray, int index, int startOffset, int endOffset,
+                                  @NotNull StringSearcher searcher) {
+    if (!searcher.isJavaIdentifier()) {
+      return true;
+    }
+    if (index > startOffset) {
+      char c = textArray != null ? textArray[index - 1]:text.charAt(index - 1);
+      if (Character.isJavaIdentifierPart(c) && c != '$') {
+        if (index < 2 || (textArray != null ? textArray[index - 2]:text.charAt(index - 2)) != '\\') { //escape sequence
+          return false;
+        }
+      }
+    }
+    final int patternLength = searcher.getPattern().length();
+    if (index + patternLength < endOffset) {
+      char c = textArray != null ? textArray[index + patternLength]:text.charAt(index + patternLength);
+      if (Character.isJavaIdentifierPart(c) && c != '$') {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public static int searchWord(@NotNull CharSequence text,
                                int startOffset,
                                int endOffset,
@@ -197,27 +274,9 @@ public class LowLevelSearchUtil {
       //noinspection AssignmentToForLoopParameter
       index = searcher.scan(text, textArray, index, endOffset);
       if (index < 0) return -1;
-      if (!searcher.isJavaIdentifier()) {
+      if (isWordAt(text, textArray, index, startOffset, endOffset, searcher)) {
         return index;
       }
-
-      if (index > startOffset) {
-        char c = textArray != null ? textArray[index - 1]:text.charAt(index - 1);
-        if (Character.isJavaIdentifierPart(c) && c != '$') {
-          if (index < 2 || (textArray != null ? textArray[index - 2]:text.charAt(index - 2)) != '\\') { //escape sequence
-            continue;
-          }
-        }
-      }
-
-      final int patternLength = searcher.getPattern().length();
-      if (index + patternLength < endOffset) {
-        char c = textArray != null ? textArray[index + patternLength]:text.charAt(index + patternLength);
-        if (Character.isJavaIdentifierPart(c) && c != '$') {
-          continue;
-        }
-      }
-      return index;
     }
     return -1;
   }
@@ -38,11 +38,13 @@ import com.intellij.psi.search.*;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.util.CommonProcessors;
 import com.intellij.util.Processor;
+import com.intellij.util.SmartList;
 import com.intellij.util.codeInsight.CommentUtilCore;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
 import com.intellij.util.indexing.FileBasedIndex;
 import com.intellij.util.text.CharArrayUtil;
+import com.intellij.util.text.MultiStringSearcher;
 import com.intellij.util.text.StringSearcher;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
@@ -55,7 +57,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class PsiSearchHelperImpl implements PsiSearchHelper {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.search.PsiSearchHelperImpl");
 
+  private static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
   private final PsiManagerEx myManager;
+  private volatile SearchStatistics myLastSearchStatistics;
 
   @Override
   @NotNull
@@ -212,59 +216,87 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
       });
   }
 
-  private AsyncFuture<Boolean> processPsiFileRootsAsync(@NotNull List<VirtualFile> files,
+  /**
+   * Files are processed on all cores. Instead of splitting the files into fixed chunks up front, each worker takes the next file
+   * when it is done with the previous one, so a few big files don't hold up the rest, and files are never queued
+   * for more than the workers count ahead. A file is parsed and processed under a single read action.
+   * Statistics of the search are available from {@link #getLastSearchStatistics()} when it's finished.
+   */
+  AsyncFuture<Boolean> processPsiFileRootsAsync(@NotNull final List<VirtualFile> files,
                                       @NotNull final Processor<PsiElement> psiRootProcessor,
                                       final ProgressIndicator progress) {
     myManager.startBatchFilesProcessingMode();
-      final AtomicInteger counter = new AtomicInteger(0);
+      final AtomicInteger nextFile = new AtomicInteger(0);
       final AtomicBoolean canceled = new AtomicBoolean(false);
       final AtomicBoolean pceThrown = new AtomicBoolean(false);
 
       final int size = files.size();
+      final int workersCount = Math.max(1, Math.min(size, SEARCH_THREADS));
+      final SearchStatistics statistics = new SearchStatistics(size, workersCount);
+      final List<Integer> workers = new ArrayList<Integer>(workersCount);
+      for (int i = 0; i < workersCount; i++) {
+        workers.add(i);
+      }
       AsyncFuture<Boolean>
-        completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgressAsync(files, progress, false, new Processor<VirtualFile>() {
+        completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgressAsync(workers, progress, false, new Processor<Integer>() {
         @Override
-        public boolean process(final VirtualFile vfile) {
+        public boolean process(Integer worker) {
+          int index;
+          while (!canceled.get() && (index = nextFile.getAndIncrement()) < size) {
+            if (progress != null) progress.checkCanceled();
+            if (processFile(files.get(index))) {
+              statistics.myParsed.incrementAndGet();
+            }
+            final int scanned = statistics.myScanned.incrementAndGet();
+            if (progress != null && progress.isRunning()) {
+              progress.setFraction((double)scanned / size);
+            }
+          }
+          return !canceled.get();
+        }
+
+        /**
+         * @return true if all PSI roots of the file were processed
+         */
+        private boolean processFile(final VirtualFile vfile) {
           final PsiFile file = ApplicationManager.getApplication().runReadAction(new Computable<PsiFile>() {
             @Override
             public PsiFile compute() {
               return vfile.isValid() ? myManager.findFile(vfile) : null;
             }
           });
-          if (file != null && !(file instanceof PsiBinaryFile)) {
-            file.getViewProvider().getContents(); // load contents outside readaction
-            ApplicationManager.getApplication().runReadAction(new Runnable() {
-              @Override
-              public void run() {
-                try {
-                  if (myManager.getProject().isDisposed()) throw new ProcessCanceledException();
-                  List<PsiFile> psiRoots = file.getViewProvider().getAllFiles();
-                  Set<PsiElement> processed = new THashSet<PsiElement>(psiRoots.size() * 2, (float)0.5);
-                  for (PsiElement psiRoot : psiRoots) {
-                    if (progress != null) progress.checkCanceled();
-                    assert psiRoot != null : "One of the roots of file " + file + " is null. All roots: " + psiRoots +
-                                             "; ViewProvider: " + file.getViewProvider() + "; Virtual file: " + file.getViewProvider().getVirtualFile();
-                    if (!processed.add(psiRoot)) continue;
-                    if (!psiRoot.isValid()) continue;
-                    if (!psiRootProcessor.process(psiRoot)) {
-                      canceled.set(true);
-                      return;
-                    }
+          if (file == null || file instanceof PsiBinaryFile) {
+            return false;
+          }
+          file.getViewProvider().getContents(); // load contents outside readaction
+          return ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+            @Override
+            public Boolean compute() {
+              try {
+                if (myManager.getProject().isDisposed()) throw new ProcessCanceledException();
+                List<PsiFile> psiRoots = file.getViewProvider().getAllFiles();
+                Set<PsiElement> processed = new THashSet<PsiElement>(psiRoots.size() * 2, (float)0.5);
+                for (PsiElement psiRoot : psiRoots) {
+                  if (progress != null) progress.checkCanceled();
+                  assert psiRoot != null : "One of the roots of file " + file + " is null. All roots: " + psiRoots +
+                                           "; ViewProvider: " + file.getViewProvider() + "; Virtual file: " + file.getViewProvider().getVirtualFile();
+                  if (!processed.add(psiRoot)) continue;
+                  if (!psiRoot.isValid()) continue;
+                  if (!psiRootProcessor.process(psiRoot)) {
+                    canceled.set(true);
+                    return false;
                   }
-                  myManager.dropResolveCaches();
-                }
-                catch (ProcessCanceledException e) {
-                  canceled.set(true);
-                  pceThrown.set(true);
                 }
+                myManager.dropResolveCaches();
+                return true;
               }
-            });
-          }
-          if (progress != null && progress.isRunning()) {
-            double fraction = (double)counter.incrementAndGet() / size;
-            progress.setFraction(fraction);
-          }
-          return !canceled.get();
+              catch (ProcessCanceledException e) {
+                canceled.set(true);
+                pceThrown.set(true);
+                return false;
+              }
+            }
+          }).booleanValue();
         }
       });
 
@@ -289,6 +321,11 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
         @Override
         public void run() {
           myManager.finishBatchFilesProcessingMode();
+          statistics.finished(canceled.get());
+          myLastSearchStatistics = statistics;
+          if (LOG.isDebugEnabled()) {
+            LOG.debug(statistics.toString());
+          }
         }
       });
   }
@@ -612,12 +649,24 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
       return AsyncFutureFactory.wrap(true);
     }
 
-    final Map<RequestWithProcessor, StringSearcher> searchers = new HashMap<RequestWithProcessor, StringSearcher>();
+    // requests for the same word share the searcher, all the words of a file are searched in a single pass
+    final Map<RequestWithProcessor, Integer> searcherIndices = new HashMap<RequestWithProcessor, Integer>();
+    final Map<Pair<String, Boolean>, Integer> wordIndices = new HashMap<Pair<String, Boolean>, Integer>();
+    final List<StringSearcher> searcherList = new ArrayList<StringSearcher>();
     final Set<String> allWords = new TreeSet<String>();
     for (RequestWithProcessor singleRequest : candidateFiles.values()) {
-      searchers.put(singleRequest, new StringSearcher(singleRequest.request.word, singleRequest.request.caseSensitive, true));
+      final Pair<String, Boolean> key = Pair.create(singleRequest.request.word, singleRequest.request.caseSensitive);
+      Integer index = wordIndices.get(key);
+      if (index == null) {
+        index = searcherList.size();
+        wordIndices.put(key, index);
+        searcherList.add(new StringSearcher(singleRequest.request.word, singleRequest.request.caseSensitive, true));
+      }
+      searcherIndices.put(singleRequest, index);
       allWords.add(singleRequest.request.word);
     }
+    final StringSearcher[] searchers = searcherList.toArray(new StringSearcher[searcherList.size()]);
+    final MultiStringSearcher multiSearcher = searchers.length > 1 ? new MultiStringSearcher(searchers) : null;
 
     if (progress != null) {
       progress.setText(PsiBundle.message("psi.search.for.word.progress", getPresentableWordsDescription(allWords)));
@@ -628,8 +677,12 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
         @Override
         public boolean process(PsiElement psiRoot) {
           final VirtualFile vfile = psiRoot.getContainingFile().getVirtualFile();
-          for (final RequestWithProcessor singleRequest : candidateFiles.get(vfile)) {
-            StringSearcher searcher = searchers.get(singleRequest);
+          final Collection<RequestWithProcessor> requests = candidateFiles.get(vfile);
+          if (multiSearcher != null && requests.size() > 1) {
+            return processRequestsInOnePass(psiRoot, requests);
+          }
+          for (final RequestWithProcessor singleRequest : requests) {
+            StringSearcher searcher = searchers[searcherIndices.get(singleRequest)];
             TextOccurenceProcessor adapted = adaptProcessor(singleRequest.request, singleRequest.refProcessor);
             if (!LowLevelSearchUtil.processElementsContainingWordInElement(adapted, psiRoot, searcher, true, progress)) {
               return false;
@@ -637,6 +690,37 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
           }
           return true;
         }
+
+        private boolean processRequestsInOnePass(PsiElement psiRoot, Collection<RequestWithProcessor> requests) {
+          final List<List<TextOccurenceProcessor>> processors = new ArrayList<List<TextOccurenceProcessor>>(searchers.length);
+          for (int i = 0; i < searchers.length; i++) {
+            processors.add(null);
+          }
+          for (final RequestWithProcessor singleRequest : requests) {
+            final int index = searcherIndices.get(singleRequest);
+            List<TextOccurenceProcessor> list = processors.get(index);
+            if (list == null) {
+              list = new SmartList<TextOccurenceProcessor>();
+              processors.set(index, list);
+            }
+            list.add(adaptProcessor(singleRequest.request, singleRequest.refProcessor));
+          }
+          final TextOccurenceProcessor[] combined = new TextOccurenceProcessor[searchers.length];
+          for (int i = 0; i < searchers.length; i++) {
+            final List<TextOccurenceProcessor> list = processors.get(i);
+            if (list == null) continue;
+            combined[i] = list.size() == 1 ? list.get(0) : new TextOccurenceProcessor() {
+              @Override
+              public boolean execute(PsiElement element, int offsetInElement) {
+                for (TextOccurenceProcessor processor : list) {
+                  if (!processor.execute(element, offsetInElement)) return false;
+                }
+                return true;
+              }
+            };
+          }
+          return LowLevelSearchUtil.processElementsContainingWordsInElement(combined, psiRoot, multiSearcher, true, progress);
+        }
       }, progress);
 
     return new FinallyFuture<Boolean>(result, new Runnable() {
@@ -884,4 +968,66 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
     }
     return keys;
   }
+
+  /**
+   * @return statistics of the last finished search for a word in files, or null if there was no such search
+   */
+  @Nullable
+  public SearchStatistics getLastSearchStatistics() {
+    return myLastSearchStatistics;
+  }
+
+  /**
+   * Numbers of files the word was searched in by {@link #processPsiFileRootsAsync}
+   */
+  public static final class SearchStatistics {
+    private final int myMatched;
+    private final int myWorkersCount;
+    private final long myStart = System.currentTimeMillis();
+    private final AtomicInteger myScanned = new AtomicInteger();
+    private final AtomicInteger myParsed = new AtomicInteger();
+    private volatile long myTime = -1;
+    private volatile boolean myCanceled;
+
+    private SearchStatistics(int matched, int workersCount) {
+      myMatched = matched;
+      myWorkersCount = workersCount;
+    }
+
+    private void finished(boolean canceled) {
+      myCanceled = canceled;
+      myTime = System.currentTimeMillis() - myStart;
+    }
+
+    /**
+     * @return number of files containing the word according to the index
+     */
+    public int getMatchedCount() {
+      return myMatched;
+    }
+
+    /**
+     * @return number of files taken for processing
+     */
+    public int getScannedCount() {
+      return myScanned.get();
+    }
+
+    /**
+     * @return number of files whose PSI was built and processed completely
+     */
+    public int getParsedCount() {
+      return myParsed.get();
+    }
+
+    public boolean isCanceled() {
+      return myCanceled;
+    }
+
+    @Override
+    public String toString() {
+      return "Searched in " + getScannedCount() + " of " + myMatched + " files (" + getParsedCount() + " parsed) in " +
+             myTime + " ms using " + myWorkersCount + " threads" + (myCanceled ? ", canceled" : "");
+    }
+  }
 }
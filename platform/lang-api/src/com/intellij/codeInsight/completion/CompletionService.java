@@ -17,6 +17,7 @@ package com.intellij.codeInsight.completion;
 
 import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.util.Key;
 import com.intellij.psi.Weigher;
@@ -34,6 +35,11 @@ import java.util.List;
  * @author peter
  */
 public abstract class CompletionService {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.completion.CompletionService");
+  /**
+   * Contributors working longer than this (in ms) are marked as slow in the debug log
+   */
+  private static final int CONTRIBUTOR_TIME_BUDGET = 50;
   public static final Key<CompletionStatistician> STATISTICS_KEY = Key.create("completion");
   /**
    * A "weigher" extension key (see {@link Weigher}) to sort completion items by priority and move the heaviest to the top of the Lookup.
@@ -75,13 +81,20 @@ public abstract class CompletionService {
                                           final Consumer<CompletionResult> consumer) {
     final List<CompletionContributor> contributors = CompletionContributor.forParameters(parameters);
     final boolean dumb = DumbService.getInstance(parameters.getPosition().getProject()).isDumb();
+    final boolean debug = LOG.isDebugEnabled();
 
     for (int i = contributors.indexOf(from) + 1; i < contributors.size(); i++) {
       final CompletionContributor contributor = contributors.get(i);
       if (dumb && !DumbService.isDumbAware(contributor)) continue;
 
       final CompletionResultSet result = createResultSet(parameters, consumer, contributor);
+      final long start = debug ? System.currentTimeMillis() : 0;
       contributor.fillCompletionVariants(parameters, result);
+      if (debug) {
+        // includes the time of the contributors run by this one through CompletionResultSet.runRemainingContributors
+        final long time = System.currentTimeMillis() - start;
+        LOG.debug(contributor.getClass().getName() + ": " + time + " ms" + (time > CONTRIBUTOR_TIME_BUDGET ? " (slow)" : ""));
+      }
       if (result.isStopped()) {
         return;
       }
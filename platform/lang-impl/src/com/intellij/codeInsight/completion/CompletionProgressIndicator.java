@@ -362,7 +362,9 @@ public class CompletionProgressIndicator extends ProgressIndicatorBase implement
 
   private boolean shouldShowLookup() {
     if (isAutopopupCompletion() && myLookup.isCalculating()) {
-      return false;
+      // show the items found so far instead of waiting for the slowest contributor,
+      // but don't pop up the items which would be hidden as meaningless anyway
+      return Registry.is("ide.completion.show.autopopup.while.calculating") && (myLookup.isShown() || hasItemsWorthShowing());
     }
     return true;
   }
@@ -513,17 +515,8 @@ public class CompletionProgressIndicator extends ProgressIndicatorBase implement
 
   private boolean hideAutopopupIfMeaningless() {
     if (!myLookup.isLookupDisposed() && isAutopopupCompletion() && !myLookup.isSelectionTouched() && !myLookup.isCalculating()) {
-      myLookup.refreshUi(true, false);
-      final List<LookupElement> items = myLookup.getItems();
-
-      for (LookupElement item : items) {
-        if (!myLookup.itemPattern(item).equals(item.getLookupString())) {
-          return false;
-        }
-
-        if (item.isValid() && item.isWorthShowingInAutoPopup()) {
-          return false;
-        }
+      if (hasItemsWorthShowing()) {
+        return false;
       }
 
       myLookup.hideLookup(false);
@@ -534,6 +527,20 @@ public class CompletionProgressIndicator extends ProgressIndicatorBase implement
     return false;
   }
 
+  private boolean hasItemsWorthShowing() {
+    myLookup.refreshUi(true, false);
+    for (LookupElement item : myLookup.getItems()) {
+      if (!myLookup.itemPattern(item).equals(item.getLookupString())) {
+        return true;
+      }
+
+      if (item.isValid() && item.isWorthShowingInAutoPopup()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public boolean fillInCommonPrefix(final boolean explicit) {
     if (isInsideIdentifier()) {
       return false;
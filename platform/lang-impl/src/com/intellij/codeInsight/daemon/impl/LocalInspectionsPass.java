@@ -50,6 +50,7 @@ import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.Trinity;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
 import com.intellij.profile.codeInspection.SeverityProvider;
@@ -69,6 +70,7 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 
@@ -83,6 +85,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
   private final TextRange myPriorityRange;
   private final boolean myIgnoreSuppressed;
   private final ConcurrentMap<PsiFile, List<InspectionResult>> result = new ConcurrentHashMap<PsiFile, List<InspectionResult>>();
+  private static final int MIN_ELEMENTS_CHUNK = 500;
   private static final String PRESENTABLE_NAME = DaemonBundle.message("pass.inspection");
   private volatile List<HighlightInfo> myInfos = Collections.emptyList();
   private final String myShortcutText;
@@ -155,11 +158,20 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
       LocalInspectionToolWrapper toolWrapper = inspectionResult.tool;
       if (toolWrapper == null) continue;
       for (ProblemDescriptor descriptor : inspectionResult.foundProblems) {
-        toolWrapper.addProblemDescriptors(Collections.singletonList(descriptor), myIgnoreSuppressed);
+        addBatchProblemDescriptor(toolWrapper, descriptor, myIgnoreSuppressed);
       }
     }
   }
 
+  /**
+   * Reports a problem found by {@link #doInspectInBatch} to the tool
+   */
+  protected void addBatchProblemDescriptor(@NotNull LocalInspectionToolWrapper toolWrapper,
+                                           @NotNull ProblemDescriptor descriptor,
+                                           boolean filterSuppressed) {
+    toolWrapper.addProblemDescriptors(Collections.singletonList(descriptor), filterSuppressed);
+  }
+
   private void addDescriptorsFromInjectedResults(InspectionManagerEx iManager) {
     InjectedLanguageManager ilManager = InjectedLanguageManager.getInstance(myProject);
     PsiDocumentManager documentManager = PsiDocumentManager.getInstance(myProject);
@@ -190,7 +202,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
             }
             ProblemDescriptor patchedDescriptor = iManager.createProblemDescriptor(myFile, hostRange, descriptor.getDescriptionTemplate(),
                                                                                    descriptor.getHighlightType(), true, localFixes);
-            tool.addProblemDescriptors(Collections.singletonList(patchedDescriptor), true);
+            addBatchProblemDescriptor(tool, patchedDescriptor, true);
           }
         }
       }
@@ -358,6 +370,16 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                                                   @NotNull LocalInspectionToolSession session,
                                                                   @NotNull List<PsiElement> elements,
                                                                   @Nullable Set<String> languages) {
+    PsiElementVisitor visitor = buildVisitor(tool, holder, isOnTheFly, session);
+    tool.inspectionStarted(session, isOnTheFly);
+    acceptElements(elements, visitor, languages);
+    return visitor;
+  }
+
+  private static PsiElementVisitor buildVisitor(@NotNull LocalInspectionTool tool,
+                                                @NotNull ProblemsHolder holder,
+                                                boolean isOnTheFly,
+                                                @NotNull LocalInspectionToolSession session) {
     PsiElementVisitor visitor = tool.buildVisitor(holder, isOnTheFly, session);
     //noinspection ConstantConditions
     if(visitor == null) {
@@ -365,9 +387,6 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     }
     assert !(visitor instanceof PsiRecursiveElementVisitor || visitor instanceof PsiRecursiveElementWalkingVisitor)
       : "The visitor returned from LocalInspectionTool.buildVisitor() must not be recursive. "+tool;
-
-    tool.inspectionStarted(session, isOnTheFly);
-    acceptElements(elements, visitor, languages);
     return visitor;
   }
 
@@ -378,6 +397,11 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                            @NotNull final LocalInspectionToolSession session,
                                            @NotNull List<InspectionContext> init,
                                            List<LocalInspectionToolWrapper> wrappers, boolean checkDumbAwareness) {
+    if (Registry.is("daemon.inspections.split.elements") && elements.size() >= 2 * MIN_ELEMENTS_CHUNK) {
+      visitRestElementsInChunks(iManager, isOnTheFly, indicator, elements, session, init);
+      inspectInjectedPsi(elements, isOnTheFly, indicator, iManager, false, checkDumbAwareness, wrappers);
+      return;
+    }
     Processor<InspectionContext> processor =
       new Processor<InspectionContext>() {
         @Override
@@ -402,6 +426,78 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     inspectInjectedPsi(elements, isOnTheFly, indicator, iManager, false, checkDumbAwareness, wrappers);
   }
 
+  /**
+   * Splits the elements into chunks and visits every chunk of every tool as a separate job, so a file inspected by
+   * a few tools still occupies all the cores. Each extra chunk gets its own visitor and holder, the results are added
+   * in the order of the chunks. Tools which are notified when the inspection is started or finished may collect data across
+   * the elements, so they see all the elements with a single visitor as usual.
+   */
+  private void visitRestElementsInChunks(@NotNull final InspectionManagerEx iManager,
+                                         final boolean isOnTheFly,
+                                         @NotNull final ProgressIndicator indicator,
+                                         @NotNull final List<PsiElement> elements,
+                                         @NotNull final LocalInspectionToolSession session,
+                                         @NotNull List<InspectionContext> init) {
+    int chunkSize = Math.max(MIN_ELEMENTS_CHUNK, elements.size() / Runtime.getRuntime().availableProcessors() + 1);
+    final List<ElementsChunk> chunks = new ArrayList<ElementsChunk>();
+    for (InspectionContext context : init) {
+      if (!canSplitElements(context.tool)) {
+        chunks.add(new ElementsChunk(context, 0, elements.size(), context.holder, context.visitor));
+        continue;
+      }
+      chunks.add(new ElementsChunk(context, 0, Math.min(chunkSize, elements.size()), context.holder, context.visitor));
+      for (int start = chunkSize; start < elements.size(); start += chunkSize) {
+        chunks.add(new ElementsChunk(context, start, Math.min(start + chunkSize, elements.size()), null, null));
+      }
+    }
+
+    Processor<ElementsChunk> processor = new Processor<ElementsChunk>() {
+      @Override
+      public boolean process(ElementsChunk chunk) {
+        indicator.checkCanceled();
+        ApplicationManager.getApplication().assertReadAccessAllowed();
+        PsiElementVisitor visitor = chunk.visitor;
+        if (visitor == null) {
+          chunk.holder = new ProblemsHolder(iManager, myFile, isOnTheFly);
+          visitor = buildVisitor(chunk.context.tool.getTool(), chunk.holder, isOnTheFly, session);
+        }
+        acceptElements(elements.subList(chunk.start, chunk.end), visitor, chunk.context.languageIds);
+        return true;
+      }
+    };
+    boolean result = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(chunks, indicator, myFailFastOnAcquireReadAction, processor);
+    if (!result) {
+      throw new ProcessCanceledException();
+    }
+
+    for (ElementsChunk chunk : chunks) {
+      InspectionContext context = chunk.context;
+      if (chunk.holder == context.holder) {
+        advanceProgress(1);
+        context.tool.getTool().inspectionFinished(session, context.holder);
+      }
+      if (chunk.holder.hasResults()) {
+        appendDescriptors(myFile, chunk.holder.getResults(), context.tool);
+      }
+    }
+  }
+
+  static boolean canSplitElements(@NotNull LocalInspectionToolWrapper wrapper) {
+    if (wrapper.runForWholeFile()) return false;
+    try {
+      Class<?> toolClass = wrapper.getTool().getClass();
+      Method started = toolClass.getMethod("inspectionStarted", LocalInspectionToolSession.class, boolean.class);
+      Method finished = toolClass.getMethod("inspectionFinished", LocalInspectionToolSession.class, ProblemsHolder.class);
+      Method finishedWithoutHolder = toolClass.getMethod("inspectionFinished", LocalInspectionToolSession.class);
+      return started.getDeclaringClass() == LocalInspectionTool.class &&
+             finished.getDeclaringClass() == LocalInspectionTool.class &&
+             finishedWithoutHolder.getDeclaringClass() == LocalInspectionTool.class;
+    }
+    catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
   private static void acceptElements(@NotNull List<PsiElement> elements,
                                      @NotNull PsiElementVisitor elementVisitor,
                                      @Nullable Set<String> languages) {
@@ -797,6 +893,23 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     }
   }
   
+  private static class ElementsChunk {
+    private ElementsChunk(InspectionContext context, int start, int end, ProblemsHolder holder, PsiElementVisitor visitor) {
+      this.context = context;
+      this.start = start;
+      this.end = end;
+      this.holder = holder;
+      this.visitor = visitor;
+    }
+
+    final InspectionContext context;
+    final int start;
+    final int end;
+    // created by the job visiting the chunk, unless it's the first chunk visited with the context visitor
+    volatile ProblemsHolder holder;
+    final PsiElementVisitor visitor;
+  }
+
   private static class InspectionContext {
     private InspectionContext(LocalInspectionToolWrapper tool, ProblemsHolder holder, PsiElementVisitor visitor, Set<String> languageIds) {
       this.tool = tool;
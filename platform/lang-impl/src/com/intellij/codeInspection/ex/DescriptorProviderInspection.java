@@ -48,6 +48,7 @@ import java.util.*;
  */
 public abstract class DescriptorProviderInspection extends InspectionTool implements ProblemDescriptionsProcessor {
   private static final Object lock = new Object();
+  private static final Map<String, PrintWriter> ourOutputWriters = new THashMap<String, PrintWriter>();
   private Map<RefEntity, CommonProblemDescriptor[]> myProblemElements;
   private HashMap<String, Set<RefEntity>> myContents = null;
   private HashSet<RefModule> myModulesProblems = null;
@@ -67,7 +68,7 @@ public abstract class DescriptorProviderInspection extends InspectionTool implem
     if (refElement == null) return;
     if (descriptions == null || descriptions.length == 0) return;
     if (filterSuppressed) {
-      if (ourOutputPath == null || !(this instanceof LocalInspectionToolWrapper)) {
+      if (ourOutputPath == null || !isOutputStreamed()) {
         synchronized (lock) {
           Map<RefEntity, CommonProblemDescriptor[]> problemElements = getProblemElements();
           CommonProblemDescriptor[] problems = problemElements.get(refElement);
@@ -98,31 +99,56 @@ public abstract class DescriptorProviderInspection extends InspectionTool implem
     @NonNls final String ext = ".xml";
     final String fileName = ourOutputPath + File.separator + getShortName() + ext;
     final PathMacroManager pathMacroManager = PathMacroManager.getInstance(getContext().getProject());
-    PrintWriter printWriter = null;
+    final CharArrayWriter writer = new CharArrayWriter();
     try {
-      new File(ourOutputPath).mkdirs();
-      final File file = new File(fileName);
-      final CharArrayWriter writer = new CharArrayWriter();
-      if (!file.exists()) {
-        writer.append("<").append(InspectionsBundle.message("inspection.problems")).append(" " + GlobalInspectionContextImpl.LOCAL_TOOL_ATTRIBUTE + "=\"")
-          .append(Boolean.toString(this instanceof LocalInspectionToolWrapper)).append("\">\n");
-      }
       for (Object o : list) {
         final Element element = (Element)o;
         pathMacroManager.collapsePaths(element);
         JDOMUtil.writeElement(element, writer, "\n");
       }
-      printWriter = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
-      printWriter.append("\n");
-      printWriter.append(writer.toString());
+      synchronized (ourOutputWriters) {
+        PrintWriter printWriter = ourOutputWriters.get(fileName);
+        if (printWriter == null) {
+          new File(ourOutputPath).mkdirs();
+          final File file = new File(fileName);
+          final boolean exists = file.exists();
+          printWriter = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+          if (!exists) {
+            printWriter.append("<").append(InspectionsBundle.message("inspection.problems")).append(" " + GlobalInspectionContextImpl.LOCAL_TOOL_ATTRIBUTE + "=\"")
+              .append(Boolean.toString(this instanceof LocalInspectionToolWrapper)).append("\">\n");
+          }
+          ourOutputWriters.put(fileName, printWriter);
+        }
+        printWriter.append("\n");
+        printWriter.append(writer.toString());
+      }
     }
     catch (IOException e) {
       LOG.error(e);
     }
-    finally {
-      if (printWriter != null) {
+  }
+
+  /**
+   * Offline, results of the tools reporting problems file by file are written to the output as they come,
+   * so they are not kept in memory (together with the PSI they refer to) till the end of the inspection
+   */
+  public boolean isOutputStreamed() {
+    return this instanceof LocalInspectionToolWrapper;
+  }
+
+  /**
+   * Flushes results written by {@link #isOutputStreamed() streamed} tools, must be called before the output files are completed
+   */
+  public static void closeOutputWriters() {
+    synchronized (ourOutputWriters) {
+      for (Map.Entry<String, PrintWriter> entry : ourOutputWriters.entrySet()) {
+        final PrintWriter printWriter = entry.getValue();
         printWriter.close();
+        if (printWriter.checkError()) {
+          LOG.error("Failed to write inspection results to " + entry.getKey());
+        }
       }
+      ourOutputWriters.clear();
     }
   }
 
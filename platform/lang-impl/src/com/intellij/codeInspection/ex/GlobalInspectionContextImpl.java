@@ -70,6 +70,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -321,7 +322,12 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
       ApplicationManager.getApplication().runReadAction(new Runnable() {
         @Override
         public void run() {
-          performInspectionsWithProgress(scope, manager);
+          try {
+            performInspectionsWithProgress(scope, manager);
+          }
+          finally {
+            DescriptorProviderInspection.closeOutputWriters();
+          }
           @NonNls final String ext = ".xml";
           final Map<Element, Tools> globalTools = new HashMap<Element, Tools>();
           for (Map.Entry<String,Tools> stringSetEntry : myTools.entrySet()) {
@@ -331,7 +337,7 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
             if (sameTools != null) {
               for (ScopeToolState toolDescr : sameTools.getTools()) {
                 final InspectionTool tool = (InspectionTool)toolDescr.getTool();
-                if (tool instanceof LocalInspectionToolWrapper) {
+                if (tool instanceof DescriptorProviderInspection && ((DescriptorProviderInspection)tool).isOutputStreamed()) {
                   hasProblems = new File(outputPath, toolName + ext).exists();
                 }
                 else {
@@ -589,6 +595,8 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
     }
 
     final Map<String, DescriptorProviderInspection> map = getInspectionWrappersMap(localTools);
+    final InspectionProfile profile = getCurrentProfile();
+    final String profileName = profile == null ? "" : profile.getName();
     scope.accept(new PsiElementVisitor() {
       @Override
       public void visitFile(final PsiFile file) {
@@ -602,8 +610,17 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
         final FileViewProvider viewProvider = psiManager.findViewProvider(virtualFile);
         final com.intellij.openapi.editor.Document document = viewProvider == null ? null : viewProvider.getDocument();
         if (document == null || virtualFile.getFileType().isBinary()) return; //do not inspect binary files
+        final List<LocalInspectionResultsCache.Problem> problems = new ArrayList<LocalInspectionResultsCache.Problem>();
         final LocalInspectionsPass pass = new LocalInspectionsPass(file, document, 0,
-                                                                   file.getTextLength(), LocalInspectionsPass.EMPTY_PRIORITY_RANGE, true);
+                                                                   file.getTextLength(), LocalInspectionsPass.EMPTY_PRIORITY_RANGE, true) {
+          @Override
+          protected void addBatchProblemDescriptor(@NotNull LocalInspectionToolWrapper toolWrapper,
+                                                   @NotNull ProblemDescriptor descriptor,
+                                                   boolean filterSuppressed) {
+            problems.add(new LocalInspectionResultsCache.Problem(toolWrapper.getShortName(), descriptor, filterSuppressed));
+            super.addBatchProblemDescriptor(toolWrapper, descriptor, filterSuppressed);
+          }
+        };
         try {
           final List<LocalInspectionToolWrapper> lTools = new ArrayList<LocalInspectionToolWrapper>();
           for (Tools tool : localTools) {
@@ -612,7 +629,16 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
               lTools.add(enabledTool);
             }
           }
-          pass.doInspectInBatch((InspectionManagerEx)manager, lTools);
+          final LocalInspectionResultsCache cache = ((InspectionManagerEx)manager).getLocalResultsCache();
+          final String toolsKey = LocalInspectionResultsCache.getToolsKey(profileName, lTools);
+          final List<LocalInspectionResultsCache.Problem> cached = cache.getResults(file, toolsKey);
+          if (cached != null) {
+            addCachedProblems(cached, lTools);
+          }
+          else {
+            pass.doInspectInBatch((InspectionManagerEx)manager, lTools);
+            cache.putResults(file, toolsKey, problems);
+          }
 
           JobLauncher.getInstance().invokeConcurrentlyUnderProgress(globalSimpleTools, myProgressIndicator, false, new Processor<Tools>() {
             @Override
@@ -653,6 +679,20 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
     }
   }
 
+  private static void addCachedProblems(@NotNull List<LocalInspectionResultsCache.Problem> problems,
+                                        @NotNull List<LocalInspectionToolWrapper> tools) {
+    final Map<String, LocalInspectionToolWrapper> toolsByName = new THashMap<String, LocalInspectionToolWrapper>();
+    for (LocalInspectionToolWrapper tool : tools) {
+      toolsByName.put(tool.getShortName(), tool);
+    }
+    for (LocalInspectionResultsCache.Problem problem : problems) {
+      final LocalInspectionToolWrapper tool = toolsByName.get(problem.toolShortName);
+      if (tool != null) {
+        tool.addProblemDescriptors(Collections.singletonList(problem.descriptor), problem.filterSuppressed);
+      }
+    }
+  }
+
   private static GlobalInspectionToolWrapper getProblemDescriptionProcessor(@NotNull final GlobalInspectionToolWrapper toolWrapper,
                                                                             final Map<String, DescriptorProviderInspection> wrappersMap) {
 
@@ -12,9 +12,12 @@ import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.IncorrectOperationException;
+import com.intellij.util.ReflectionUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.Method;
+
 /**
  * User: anna
  * Date: 28-Dec-2005
@@ -133,6 +136,17 @@ public class GlobalInspectionToolWrapper extends InspectionToolWrapper<GlobalIns
     return null;
   }
 
+  @Override
+  public boolean isOutputStreamed() {
+    // simple tools check files one by one and report problems right away,
+    // unless they look at the reported problems again when the inspection is finished
+    final GlobalInspectionTool tool = getTool();
+    if (!(tool instanceof GlobalSimpleInspectionTool)) return false;
+    final Method finished = ReflectionUtil.getMethod(tool.getClass(), "inspectionFinished", InspectionManager.class,
+                                                     GlobalInspectionContext.class, ProblemDescriptionsProcessor.class);
+    return finished != null && finished.getDeclaringClass() == GlobalSimpleInspectionTool.class;
+  }
+
   public boolean worksInBatchModeOnly() {
     return getTool().worksInBatchModeOnly();
   }
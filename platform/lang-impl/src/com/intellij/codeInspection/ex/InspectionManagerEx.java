@@ -56,6 +56,7 @@ public class InspectionManagerEx extends InspectionManager {
   private final NotNullLazyValue<ContentManager> myContentManager;
 
   private final Set<GlobalInspectionContextImpl> myRunningContexts = new HashSet<GlobalInspectionContextImpl>();
+  private LocalInspectionResultsCache myLocalResultsCache;
 
   public InspectionManagerEx(Project project) {
     myProject = project;
@@ -197,6 +198,14 @@ public class InspectionManagerEx extends InspectionManager {
     return myRunningContexts;
   }
 
+  @NotNull
+  public synchronized LocalInspectionResultsCache getLocalResultsCache() {
+    if (myLocalResultsCache == null) {
+      myLocalResultsCache = new LocalInspectionResultsCache(myProject);
+    }
+    return myLocalResultsCache;
+  }
+
   public static boolean inspectionResultSuppressed(@NotNull PsiElement place, LocalInspectionTool tool) {
     if (tool instanceof CustomSuppressableInspectionTool) {
       return ((CustomSuppressableInspectionTool)tool).isSuppressedFor(place);
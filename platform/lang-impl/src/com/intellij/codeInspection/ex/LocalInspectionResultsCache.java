@@ -0,0 +1,142 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection.ex;
+
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.profile.Profile;
+import com.intellij.profile.ProfileChangeAdapter;
+import com.intellij.profile.codeInspection.InspectionProfileManager;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.util.containers.ConcurrentSoftValueHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Problems found by local inspections in batch mode ("Inspect Code"), reused when the same file is inspected again by the same tools.
+ * <p/>
+ * Results of a file are valid while the file itself is not modified and there are no changes outside of code blocks in the project,
+ * since local inspections may depend on declarations in other files, but not on code inside their methods.
+ * Any change of inspection profiles drops the whole cache. Results are kept softly and are dropped
+ * if any of the reported elements is no longer valid.
+ */
+public class LocalInspectionResultsCache {
+  private final Project myProject;
+  private final Map<VirtualFile, FileResults> myResults = new ConcurrentSoftValueHashMap<VirtualFile, FileResults>();
+
+  public LocalInspectionResultsCache(@NotNull Project project) {
+    myProject = project;
+    final ProfileChangeAdapter listener = new ProfileChangeAdapter() {
+      @Override
+      public void profileChanged(Profile profile) {
+        myResults.clear();
+      }
+
+      @Override
+      public void profileActivated(Profile oldProfile, Profile profile) {
+        myResults.clear();
+      }
+    };
+    InspectionProfileManager.getInstance().addProfileChangeListener(listener, project);
+    InspectionProjectProfileManager.getInstance(project).addProfilesListener(listener, project);
+  }
+
+  /**
+   * @param toolsKey identifies the profile and the set of tools the file is inspected with
+   * @return problems found in the file before, or null if the file needs to be inspected
+   */
+  @Nullable
+  public List<Problem> getResults(@NotNull PsiFile file, @NotNull String toolsKey) {
+    final VirtualFile virtualFile = file.getVirtualFile();
+    if (virtualFile == null) return null;
+    final FileResults results = myResults.get(virtualFile);
+    if (results == null) return null;
+    if (results.modificationStamp != file.getModificationStamp() ||
+        results.outOfCodeBlockModificationCount != getOutOfCodeBlockModificationCount() ||
+        !results.toolsKey.equals(toolsKey)) {
+      myResults.remove(virtualFile);
+      return null;
+    }
+    for (Problem problem : results.problems) {
+      if (problem.descriptor.getPsiElement() == null) {
+        myResults.remove(virtualFile);
+        return null;
+      }
+    }
+    return results.problems;
+  }
+
+  public void putResults(@NotNull PsiFile file, @NotNull String toolsKey, @NotNull List<Problem> problems) {
+    final VirtualFile virtualFile = file.getVirtualFile();
+    if (virtualFile == null) return;
+    myResults.put(virtualFile, new FileResults(file.getModificationStamp(), getOutOfCodeBlockModificationCount(), toolsKey,
+                                               problems.isEmpty() ? Collections.<Problem>emptyList() : new ArrayList<Problem>(problems)));
+  }
+
+  /**
+   * @return key of the profile and the tools enabled for a file, results put with a different key are not reused
+   */
+  @NotNull
+  public static String getToolsKey(@NotNull String profileName, @NotNull List<LocalInspectionToolWrapper> tools) {
+    final StringBuilder key = new StringBuilder(profileName);
+    for (LocalInspectionToolWrapper tool : tools) {
+      key.append(' ').append(tool.getShortName());
+    }
+    return key.toString();
+  }
+
+  public void clear() {
+    myResults.clear();
+  }
+
+  private long getOutOfCodeBlockModificationCount() {
+    return PsiModificationTracker.SERVICE.getInstance(myProject).getOutOfCodeBlockModificationCount();
+  }
+
+  public static class Problem {
+    public final String toolShortName;
+    public final ProblemDescriptor descriptor;
+    public final boolean filterSuppressed;
+
+    public Problem(@NotNull String toolShortName, @NotNull ProblemDescriptor descriptor, boolean filterSuppressed) {
+      this.toolShortName = toolShortName;
+      this.descriptor = descriptor;
+      this.filterSuppressed = filterSuppressed;
+    }
+  }
+
+  private static class FileResults {
+    private final long modificationStamp;
+    private final long outOfCodeBlockModificationCount;
+    private final String toolsKey;
+    private final List<Problem> problems;
+
+    private FileResults(long modificationStamp, long outOfCodeBlockModificationCount, String toolsKey, List<Problem> problems) {
+      this.modificationStamp = modificationStamp;
+      this.outOfCodeBlockModificationCount = outOfCodeBlockModificationCount;
+      this.toolsKey = toolsKey;
+      this.problems = problems;
+    }
+  }
+}
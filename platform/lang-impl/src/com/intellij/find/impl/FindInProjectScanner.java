@@ -0,0 +1,157 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.impl;
+
+import com.intellij.find.FindManager;
+import com.intellij.find.FindModel;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressWrapper;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Checks candidate files of Find in Path for occurrences on pooled threads, ahead of the thread reporting usages.
+ * The check works on file text loaded right from VFS (or on the document, if it is already loaded, to see unsaved changes),
+ * so documents and PSI are only created for files which really contain the string, and usages of the files checked
+ * first are reported while the rest of the files are still being scanned.
+ * Files are checked in the order they are given, at most {@link #SCAN_AHEAD} files ahead of the file being reported.
+ * Every check gets its own copy of the find model, since searching caches per-file data in the model.
+ * The scanner must not be used under read action: checks take read action on other threads and would wait for a pending write action,
+ * which in turn waits for the read action of the thread waiting for the checks.
+ */
+class FindInProjectScanner {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.find.impl.FindInProjectScanner");
+  private static final int SCAN_AHEAD = 256;
+  private static final BoundedTaskExecutor ourExecutor =
+    new BoundedTaskExecutor(new PooledThreadExecutor(), Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+  private final Project myProject;
+  private final FindModel myFindModel;
+  private final List<PsiFile> myFiles;
+  @Nullable private final ProgressIndicator myProgress;
+  private final List<Future<Boolean>> myFutures;
+  private volatile boolean myCanceled;
+
+  FindInProjectScanner(@NotNull Project project, @NotNull FindModel findModel, @NotNull List<PsiFile> files, @Nullable ProgressIndicator progress) {
+    myProject = project;
+    myFindModel = findModel;
+    myFiles = files;
+    myProgress = progress;
+    myFutures = new ArrayList<Future<Boolean>>(files.size());
+  }
+
+  /**
+   * Waits until the file with the given index is checked
+   * @return false if the file surely contains no occurrences
+   */
+  public boolean mayContainOccurrences(int index) {
+    while (myFutures.size() < Math.min(myFiles.size(), index + SCAN_AHEAD)) {
+      final PsiFile file = myFiles.get(myFutures.size());
+      final FindModel findModel = (FindModel)myFindModel.clone();
+      myFutures.add(ourExecutor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return !myCanceled && checkFile(file, findModel);
+        }
+      }));
+    }
+    final Future<Boolean> future = myFutures.get(index);
+    myFutures.set(index, null);
+    while (true) {
+      if (myProgress != null) {
+        myProgress.checkCanceled();
+      }
+      try {
+        return future.get(10, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException ignored) {
+      }
+      catch (InterruptedException e) {
+        throw new ProcessCanceledException();
+      }
+      catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof ProcessCanceledException) {
+          throw (ProcessCanceledException)cause;
+        }
+        // the file will be searched in the usual way
+        LOG.info(cause);
+        return true;
+      }
+    }
+  }
+
+  public void cancel() {
+    myCanceled = true;
+    for (Future<Boolean> future : myFutures) {
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  private boolean checkFile(final PsiFile psiFile, final FindModel findModel) {
+    final boolean[] result = {true};
+    final Runnable check = new Runnable() {
+      @Override
+      public void run() {
+        result[0] = ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+          @Override
+          public Boolean compute() {
+            return containsOccurrence(psiFile, findModel);
+          }
+        });
+      }
+    };
+    if (myProgress != null) {
+      ProgressManager.getInstance().runProcess(check, ProgressWrapper.wrap(myProgress));
+    }
+    else {
+      check.run();
+    }
+    return result[0];
+  }
+
+  private boolean containsOccurrence(PsiFile psiFile, FindModel findModel) {
+    if (!psiFile.isValid()) return false;
+    final VirtualFile virtualFile = psiFile.getVirtualFile();
+    if (virtualFile == null || !virtualFile.isValid()) return false;
+    final Document document = FileDocumentManager.getInstance().getCachedDocument(virtualFile);
+    final CharSequence text = document != null ? document.getCharsSequence() : LoadTextUtil.loadText(virtualFile);
+    return FindManager.getInstance(myProject).findString(text, 0, findModel, virtualFile).isStringFound();
+  }
+}
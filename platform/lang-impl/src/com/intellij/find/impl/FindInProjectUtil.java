@@ -19,6 +19,7 @@ package com.intellij.find.impl;
 import com.intellij.BundleBase;
 import com.intellij.find.*;
 import com.intellij.find.ngrams.TrigramIndex;
+import com.intellij.find.ngrams.TrigramQueryBuilder;
 import com.intellij.navigation.ItemPresentation;
 import com.intellij.openapi.actionSystem.DataContext;
 import com.intellij.openapi.actionSystem.LangDataKeys;
@@ -47,7 +48,6 @@ import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.util.text.TrigramBuilder;
 import com.intellij.openapi.vfs.*;
 import com.intellij.openapi.vfs.ex.VirtualFileManagerEx;
 import com.intellij.openapi.wm.ToolWindowId;
@@ -66,6 +66,7 @@ import com.intellij.util.PatternUtil;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.indexing.FileBasedIndex;
+import gnu.trove.THashMap;
 import gnu.trove.THashSet;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntIterator;
@@ -205,15 +206,11 @@ public class FindInProjectUtil {
     final Collection<PsiFile> psiFiles = getFilesToSearchIn(findModel, project, psiDirectory);
     try {
       final Set<PsiFile> largeFiles = new THashSet<PsiFile>();
-
-      int i = 0;
-      long totalFilesSize = 0;
-      int count = 0;
-      final boolean[] warningShown = {false};
+      final List<PsiFile> filesToScan = new ArrayList<PsiFile>(psiFiles.size());
+      final Map<PsiFile, Long> fileLengths = new THashMap<PsiFile, Long>(psiFiles.size());
 
       for (final PsiFile psiFile : psiFiles) {
         final VirtualFile virtualFile = psiFile.getVirtualFile();
-        final int index = i++;
         if (virtualFile == null) continue;
 
         long fileLength = getFileLength(virtualFile);
@@ -225,29 +222,53 @@ public class FindInProjectUtil {
           largeFiles.add(psiFile);
           continue;
         }
+        filesToScan.add(psiFile);
+        fileLengths.put(psiFile, fileLength);
+      }
 
-        if (progress != null) {
-          progress.checkCanceled();
-          progress.setFraction((double)index / psiFiles.size());
-          String text = FindBundle.message("find.searching.for.string.in.file.progress",
-                                           findModel.getStringToFind(), virtualFile.getPresentableUrl());
-          progress.setText(text);
-          progress.setText2(FindBundle.message("find.searching.for.string.in.file.occurrences.progress", count));
-        }
+      long totalFilesSize = 0;
+      int count = 0;
+      final boolean[] warningShown = {false};
+
+      // with an empty string every file is an occurrence; under read action files are checked sequentially, see FindInProjectScanner
+      final FindInProjectScanner scanner = findModel.getStringToFind().isEmpty() || ApplicationManager.getApplication().isReadAccessAllowed()
+                                           ? null : new FindInProjectScanner(project, findModel, filesToScan, progress);
+      try {
+        for (int index = 0; index < filesToScan.size(); index++) {
+          final PsiFile psiFile = filesToScan.get(index);
+          if (progress != null) {
+            progress.checkCanceled();
+            progress.setFraction((double)index / filesToScan.size());
+          }
+          if (scanner != null && !scanner.mayContainOccurrences(index)) continue;
+
+          if (progress != null) {
+            final VirtualFile virtualFile = psiFile.getVirtualFile();
+            String text = FindBundle.message("find.searching.for.string.in.file.progress",
+                                             findModel.getStringToFind(), virtualFile == null ? psiFile.getName() : virtualFile.getPresentableUrl());
+            progress.setText(text);
+            progress.setText2(FindBundle.message("find.searching.for.string.in.file.occurrences.progress", count));
+          }
 
-        int countInFile = processUsagesInFile(psiFile, findModel, consumer);
+          int countInFile = processUsagesInFile(psiFile, findModel, consumer);
 
-        count += countInFile;
-        if (countInFile > 0) {
-          totalFilesSize += fileLength;
-          if (totalFilesSize > FILES_SIZE_LIMIT && !warningShown[0]) {
-            warningShown[0] = true;
-            String message = FindBundle.message("find.excessive.total.size.prompt", presentableSize(totalFilesSize),
-                                                ApplicationNamesInfo.getInstance().getProductName());
-            UsageLimitUtil.showAndCancelIfAborted(project, message);
+          count += countInFile;
+          if (countInFile > 0) {
+            totalFilesSize += fileLengths.get(psiFile);
+            if (totalFilesSize > FILES_SIZE_LIMIT && !warningShown[0]) {
+              warningShown[0] = true;
+              String message = FindBundle.message("find.excessive.total.size.prompt", presentableSize(totalFilesSize),
+                                                  ApplicationNamesInfo.getInstance().getProductName());
+              UsageLimitUtil.showAndCancelIfAborted(project, message);
+            }
           }
         }
       }
+      finally {
+        if (scanner != null) {
+          scanner.cancel();
+        }
+      }
 
       if (showWarnings && !largeFiles.isEmpty()) {
         @Language("HTML")
@@ -390,7 +411,9 @@ public class FindInProjectUtil {
       Pair<Boolean, Collection<PsiFile>> fastWords = getFilesForFastWordSearch(findModel, project, psiDirectory, fileMaskRegExp, module, fileIndex);
       final Collection<PsiFile> filesForFastWordSearch = fastWords.getSecond();
 
-      if (fastWords.getFirst() && canOptimizeForFastWordSearch(findModel)) return filesForFastWordSearch;
+      if (fastWords.getFirst() && (canOptimizeForFastWordSearch(findModel) || canOptimizeForTrigramSearch(findModel))) {
+        return filesForFastWordSearch;
+      }
 
       final GlobalSearchScope customScope = toGlobal(project, findModel.getCustomScope());
 
@@ -500,23 +523,26 @@ public class FindInProjectUtil {
 
     String stringToFind = findModel.getStringToFind();
     if (TrigramIndex.ENABLED) {
-      TIntHashSet trigrams = TrigramBuilder.buildTrigram(stringToFind);
-      TIntIterator it = trigrams.iterator();
-      while (it.hasNext()) {
-        keys.add(it.next());
-      }
+      TIntHashSet trigrams = TrigramQueryBuilder.getRequiredTrigrams(findModel);
+      if (trigrams != null) {
+        TIntIterator it = trigrams.iterator();
+        while (it.hasNext()) {
+          keys.add(it.next());
+        }
 
-      if (!keys.isEmpty()) {
-        fast = true;
         List<VirtualFile> hits = new ArrayList<VirtualFile>();
         FileBasedIndex.getInstance().getFilesWithKey(TrigramIndex.INDEX_ID, keys, new CommonProcessors.CollectProcessor<VirtualFile>(hits), scope);
 
         for (VirtualFile hit : hits) {
-          resultFiles.add(pm.findFile(hit));
+          ContainerUtil.addIfNotNull(resultFiles, pm.findFile(hit));
         }
 
         filterMaskedFiles(resultFiles, fileMaskRegExp);
-        if (resultFiles.isEmpty()) return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
+        // words index can only narrow the result further for whole words search, a substring can be a part of any word
+        if (resultFiles.isEmpty() || !findModel.isWholeWordsOnly() || findModel.isRegularExpressions()) {
+          return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
+        }
+        fast = true;
       }
     }
 
@@ -592,6 +618,12 @@ public class FindInProjectUtil {
            && (findModel.getCustomScope() == null || findModel.getCustomScope() instanceof GlobalSearchScope);
   }
 
+  private static boolean canOptimizeForTrigramSearch(@NotNull final FindModel findModel) {
+    return TrigramIndex.ENABLED
+           && (findModel.getCustomScope() == null || findModel.getCustomScope() instanceof GlobalSearchScope)
+           && TrigramQueryBuilder.getRequiredTrigrams(findModel) != null;
+  }
+
   private static int addToUsages(@NotNull Document document, @NotNull Processor<UsageInfo> consumer, @NotNull FindModel findModel,
                                  @NotNull final PsiFile psiFile, int[] offsetRef, int maxUsages) {
     int count = 0;
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import com.intellij.find.FindModel;
+import com.intellij.openapi.util.text.TrigramBuilder;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a find model into a set of trigrams every matching file must contain, see {@link TrigramIndex}.
+ * Files to search in are then the intersection of the files containing each of the trigrams.
+ * <p/>
+ * For a plain text search the trigrams of the whole string are taken. For a regular expression only literal fragments
+ * which are present in every match are used: characters of the top level sequence of the expression, up to the first
+ * construct which is not a plain character (a group, a character class, a quantifier allowing zero occurrences etc).
+ * An expression with a top level alternative, with inline flags other than case insensitivity or with escapes whose
+ * length is not known here (hexadecimal, octal, unicode, control characters, properties and named references) can't be used at all.
+ */
+public class TrigramQueryBuilder {
+  // escapes followed by more than one character
+  private static final String LONG_ESCAPES = "xu0ckpPN";
+
+  private TrigramQueryBuilder() {
+  }
+
+  /**
+   * @return trigrams which every file containing an occurrence must contain, or null if the model can't be narrowed by trigrams
+   */
+  @Nullable
+  public static TIntHashSet getRequiredTrigrams(@NotNull FindModel findModel) {
+    final String stringToFind = findModel.getStringToFind();
+    final TIntHashSet result;
+    if (findModel.isRegularExpressions()) {
+      result = new TIntHashSet();
+      final List<String> fragments = getRequiredLiterals(stringToFind);
+      if (fragments == null) return null;
+      for (String fragment : fragments) {
+        result.addAll(TrigramBuilder.buildTrigram(fragment).toArray());
+      }
+    }
+    else {
+      result = TrigramBuilder.buildTrigram(stringToFind);
+    }
+    return result.isEmpty() ? null : result;
+  }
+
+  /**
+   * @return literal strings every match of the regular expression contains, or null if the expression may match without any of them
+   */
+  @Nullable
+  static List<String> getRequiredLiterals(@NotNull String regexp) {
+    final List<String> result = new ArrayList<String>();
+    final StringBuilder current = new StringBuilder();
+    int depth = 0;
+    int i = 0;
+    final int length = regexp.length();
+    while (i < length) {
+      final char c = regexp.charAt(i);
+      if (c == '\\' && i + 1 < length && regexp.charAt(i + 1) == 'Q') {
+        final int end = regexp.indexOf("\\E", i + 2);
+        if (depth == 0) {
+          current.append(end < 0 ? regexp.substring(i + 2) : regexp.substring(i + 2, end));
+        }
+        i = end < 0 ? length : end + 2;
+        continue;
+      }
+      if (c == '\\' && i + 1 < length && LONG_ESCAPES.indexOf(regexp.charAt(i + 1)) >= 0) {
+        return null;
+      }
+      if (c == '(' && !isSupportedFlagGroup(regexp, i)) {
+        return null;
+      }
+      if (depth > 0) {
+        // contents of groups are skipped, but an alternative inside doesn't affect the top level sequence
+        if (c == '\\') {
+          i += 2;
+          continue;
+        }
+        if (c == '[') {
+          i = skipCharacterClass(regexp, i);
+          continue;
+        }
+        if (c == '(') depth++;
+        else if (c == ')') {
+          depth--;
+          if (depth == 0) {
+            i = skipQuantifier(regexp, i + 1);
+            continue;
+          }
+        }
+        i++;
+        continue;
+      }
+
+      if (c == '|') {
+        return null;
+      }
+      if (c == '(') {
+        flush(result, current);
+        depth++;
+        i++;
+        continue;
+      }
+      if (c == '[') {
+        flush(result, current);
+        i = skipQuantifier(regexp, skipCharacterClass(regexp, i));
+        continue;
+      }
+      if (c == '\\' && i + 1 < length) {
+        final char next = regexp.charAt(i + 1);
+        if (Character.isLetterOrDigit(next)) {
+          // character class, back reference, boundary or a special character
+          flush(result, current);
+          i = skipQuantifier(regexp, i + 2);
+          continue;
+        }
+        i = appendLiteral(regexp, i + 2, next, result, current);
+        continue;
+      }
+      if (c == '.' || c == '^' || c == '$') {
+        flush(result, current);
+        i = skipQuantifier(regexp, i + 1);
+        continue;
+      }
+      if (c == '*' || c == '+' || c == '?' || c == '{') {
+        // quantifier without an atom, the expression is malformed
+        return null;
+      }
+      i = appendLiteral(regexp, i + 1, c, result, current);
+    }
+    if (depth > 0) return null;
+    flush(result, current);
+    return result;
+  }
+
+  /**
+   * Inline flags change the way the rest of the expression matches, only case insensitivity doesn't matter for the trigram index
+   * @return false if the group at the index sets flags other than case insensitivity
+   */
+  private static boolean isSupportedFlagGroup(String regexp, int start) {
+    if (!regexp.startsWith("(?", start)) return true;
+    int i = start + 2;
+    while (i < regexp.length() && (Character.isLetter(regexp.charAt(i)) || regexp.charAt(i) == '-')) {
+      i++;
+    }
+    if (i == start + 2 || i >= regexp.length() || (regexp.charAt(i) != ')' && regexp.charAt(i) != ':')) {
+      return true; // not a flag group: non-capturing, look-around or named group
+    }
+    return regexp.substring(start + 2, i).equals("i");
+  }
+
+  /**
+   * Appends the literal character taking into account the quantifier following it
+   * @return index after the quantifier
+   */
+  private static int appendLiteral(String regexp, int next, char c, List<String> result, StringBuilder current) {
+    if (next >= regexp.length()) {
+      current.append(c);
+      return next;
+    }
+    final char q = regexp.charAt(next);
+    if (q == '*' || q == '?' || q == '{') {
+      // the character may be absent (or the number of repetitions is not known here)
+      flush(result, current);
+      return skipQuantifier(regexp, next);
+    }
+    if (q == '+') {
+      current.append(c);
+      flush(result, current);
+      return skipQuantifier(regexp, next);
+    }
+    current.append(c);
+    return next;
+  }
+
+  private static void flush(List<String> result, StringBuilder current) {
+    if (current.length() > 0) {
+      result.add(current.toString());
+      current.setLength(0);
+    }
+  }
+
+  private static int skipCharacterClass(String regexp, int start) {
+    int i = start + 1;
+    if (i < regexp.length() && regexp.charAt(i) == '^') i++;
+    if (i < regexp.length() && regexp.charAt(i) == ']') i++;
+    int depth = 1;
+    while (i < regexp.length()) {
+      final char c = regexp.charAt(i);
+      if (c == '\\') {
+        i += 2;
+        continue;
+      }
+      if (c == '[') depth++;
+      else if (c == ']' && --depth == 0) return i + 1;
+      i++;
+    }
+    return regexp.length();
+  }
+
+  private static int skipQuantifier(String regexp, int i) {
+    if (i >= regexp.length()) return i;
+    final char c = regexp.charAt(i);
+    if (c == '*' || c == '+' || c == '?') {
+      i++;
+    }
+    else if (c == '{') {
+      final int end = regexp.indexOf('}', i);
+      i = end < 0 ? regexp.length() : end + 1;
+    }
+    else {
+      return i;
+    }
+    // reluctant and possessive quantifiers
+    if (i < regexp.length() && (regexp.charAt(i) == '?' || regexp.charAt(i) == '+')) i++;
+    return i;
+  }
+}
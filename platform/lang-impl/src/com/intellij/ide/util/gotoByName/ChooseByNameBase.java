@@ -48,6 +48,7 @@ import com.intellij.openapi.wm.WindowManager;
 import com.intellij.openapi.wm.ex.WindowManagerEx;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.codeStyle.MinusculeMatcher;
+import com.intellij.psi.codeStyle.NameCandidatesIndex;
 import com.intellij.psi.codeStyle.NameUtil;
 import com.intellij.psi.statistics.StatisticsInfo;
 import com.intellij.psi.statistics.StatisticsManager;
@@ -122,6 +123,7 @@ public abstract class ChooseByNameBase {
   private ActionCallback myPostponedOkAction;
 
   private final String[][] myNames = new String[2][];
+  private final NameCandidatesIndex[] myNamesIndex = new NameCandidatesIndex[2];
   private volatile CalcElementsThread myCalcElementsThread;
   private static int VISIBLE_LIST_SIZE_LIMIT = 10;
   private int myListSizeIncreasing = 30;
@@ -153,7 +155,10 @@ public abstract class ChooseByNameBase {
   public void setDisposed(boolean disposedFlag) {
     myDisposedFlag = disposedFlag;
     if (disposedFlag) {
-      myNames[0] = myNames[1] = null;
+      synchronized (this) {
+        myNames[0] = myNames[1] = null;
+        myNamesIndex[0] = myNamesIndex[1] = null;
+      }
     }
   }
 
@@ -818,6 +823,20 @@ public abstract class ChooseByNameBase {
     return checkboxState ? myNames[1] : myNames[0];
   }
 
+  /**
+   * Index of the names returned by {@link #getNames(boolean)}, built once and used for every pattern typed in the popup
+   */
+  @NotNull
+  public synchronized NameCandidatesIndex getNamesIndex(boolean checkboxState) {
+    int index = checkboxState ? 1 : 0;
+    NameCandidatesIndex namesIndex = myNamesIndex[index];
+    if (namesIndex == null) {
+      namesIndex = new NameCandidatesIndex(getNames(checkboxState));
+      myNamesIndex[index] = namesIndex;
+    }
+    return namesIndex;
+  }
+
 
   @NotNull
   protected Set<Object> filter(@NotNull Set<Object> elements) {
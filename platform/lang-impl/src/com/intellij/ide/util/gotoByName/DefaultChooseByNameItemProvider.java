@@ -26,6 +26,7 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.codeStyle.MinusculeMatcher;
 import com.intellij.psi.codeStyle.NameUtil;
 import com.intellij.psi.util.proximity.PsiProximityComparator;
+import com.intellij.util.CommonProcessors;
 import com.intellij.util.Function;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
@@ -66,10 +67,11 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
                     namePattern.equals("@") && model instanceof GotoClassModel2;    // TODO[yole]: remove implicit dependency
     if (empty && !base.canShowListForEmptyPattern()) return true;
 
-    Set<String> names = new THashSet<String>(Arrays.asList(base.getNames(everywhere)));
+    boolean middleMatch = base.isSearchInAnyPlace() && !namePattern.trim().isEmpty();
+    String middleMatchPattern = middleMatch ? "*" + namePattern + (namePattern.charAt(namePattern.length() - 1) == ' ' ? "" : "*") : null;
+    Set<String> names = getCandidateNames(base, everywhere, middleMatch ? middleMatchPattern : namePattern);
 
-    if (base.isSearchInAnyPlace() && !namePattern.trim().isEmpty()) {
-      String middleMatchPattern = "*" + namePattern + (namePattern.charAt(namePattern.length() - 1) == ' ' ? "" : "*");
+    if (middleMatch) {
 
       // consume elements matching by prefix case-sensitively
       Integer elementsConsumed = consumeElements(base, everywhere, indicator, consumer, namePattern, qualifierPattern, names,
@@ -103,6 +105,22 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
     }
   }
 
+  /**
+   * @return names which may match the pattern, the broadest of the patterns to be matched
+   */
+  @NotNull
+  private static Set<String> getCandidateNames(@NotNull ChooseByNameBase base, boolean everywhere, @NotNull String pattern) {
+    if (base.getModel() instanceof CustomMatcherModel) {
+      return new THashSet<String>(Arrays.asList(base.getNames(everywhere)));
+    }
+    if (StringUtil.startsWithChar(pattern, '@') && base.getModel() instanceof GotoClassModel2) {
+      pattern = pattern.substring(1);
+    }
+    final Set<String> names = new THashSet<String>();
+    base.getNamesIndex(everywhere).processCandidates(pattern, new CommonProcessors.CollectProcessor<String>(names));
+    return names;
+  }
+
   /**
    * @return null if consumer returned false, number of consumed elements otherwise.
    */
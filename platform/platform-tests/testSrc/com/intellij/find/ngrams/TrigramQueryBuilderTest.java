@@ -0,0 +1,95 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TrigramQueryBuilderTest extends TestCase {
+  public void testPlainLiteral() {
+    assertLiterals("getInstance", "getInstance");
+  }
+
+  public void testEscapedCharacters() {
+    assertLiterals("foo\\.bar\\(", "foo.bar(");
+    assertLiterals("\\Qa.b*c\\Ed", "a.b*cd");
+  }
+
+  public void testSpecialConstructsSplitLiterals() {
+    assertLiterals("foo.*bar", "foo", "bar");
+    assertLiterals("foo\\s+bar", "foo", "bar");
+    assertLiterals("^import [a-z.]+Util;$", "import ", "Util;");
+  }
+
+  public void testQuantifiers() {
+    assertLiterals("colou?r", "colo", "r");
+    assertLiterals("ab+c", "ab", "c");
+    assertLiterals("abc{2,3}d", "ab", "d");
+    assertLiterals("abc*?d", "ab", "d");
+  }
+
+  public void testGroupsAreSkipped() {
+    assertLiterals("new (Foo|Bar)\\(\\)", "new ", "()");
+    assertLiterals("(?i)select", "select");
+  }
+
+  public void testEscapesOfUnknownLength() {
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo\\x41bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo\\x{1F600}bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo\\u0041bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo\\0101bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo\\cAbar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("(?<name>x)foo\\k<name>bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo\\p{Lu}bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo\\P{Lu}bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo\\N{LATIN SMALL LETTER A}bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("(foo\\x41)bar"));
+  }
+
+  public void testFlagGroups() {
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("(?x)foo bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo(?s)bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("(?ix)foo bar"));
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("(?x:foo bar)baz"));
+    assertLiterals("(?i)foo bar", "foo bar");
+    assertLiterals("(?i:foo)bar", "bar");
+    assertLiterals("(?:foo)bar", "bar");
+    assertLiterals("(?=foo)bar", "bar");
+    assertLiterals("(?<name>foo)bar", "bar");
+  }
+
+  public void testQuotationInGroup() {
+    assertLiterals("(\\Q)\\E)bar", "bar");
+  }
+
+  public void testTopLevelAlternative() {
+    assertNull(TrigramQueryBuilder.getRequiredLiterals("foo|bar"));
+  }
+
+  public void testNothingRequired() {
+    assertLiterals(".*");
+    assertLiterals("\\w+");
+  }
+
+  private static void assertLiterals(String regexp, String... expected) {
+    final List<String> literals = TrigramQueryBuilder.getRequiredLiterals(regexp);
+    assertNotNull(literals);
+    assertEquals(expected.length == 0 ? Collections.<String>emptyList() : Arrays.asList(expected), literals);
+  }
+}
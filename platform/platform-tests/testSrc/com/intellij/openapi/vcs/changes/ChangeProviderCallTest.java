@@ -0,0 +1,138 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.committed.MockAbstractVcs;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightPlatformTestCase;
+
+import java.util.List;
+
+public class ChangeProviderCallTest extends LightPlatformTestCase {
+  private MockAbstractVcs myVcs;
+  private EmptyProgressIndicator myRefreshIndicator;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myVcs = new MockAbstractVcs(getProject());
+    myRefreshIndicator = new EmptyProgressIndicator();
+  }
+
+  public void testReportedFilesAreReplayed() throws Exception {
+    final ChangeProviderCall call = createCall(new TestChangeProvider() {
+      @Override
+      void getChanges(ChangelistBuilder builder, ProgressIndicator progress) {
+        builder.processUnversionedFile(getSourceRoot());
+        builder.processIgnoredFile(getSourceRoot());
+      }
+    });
+    call.run();
+
+    assertFalse(call.isCanceled());
+    assertNull(call.getException());
+    assertNull(call.getError());
+    final RecordingChangelistBuilder target = new RecordingChangelistBuilder(false);
+    call.getBuilder().replay(target);
+    assertEquals(2, target.size());
+  }
+
+  public void testNotCalledWhenRefreshIsCanceled() throws Exception {
+    final TestChangeProvider provider = new TestChangeProvider() {
+      @Override
+      void getChanges(ChangelistBuilder builder, ProgressIndicator progress) {
+        fail("provider should not be called");
+      }
+    };
+    final ChangeProviderCall call = createCall(provider);
+    myRefreshIndicator.cancel();
+    call.run();
+
+    assertTrue(call.isCanceled());
+    assertNull(call.getError());
+  }
+
+  public void testRefreshCancellationIsForwardedToProvider() throws Exception {
+    final ChangeProviderCall call = createCall(new TestChangeProvider() {
+      @Override
+      void getChanges(ChangelistBuilder builder, ProgressIndicator progress) {
+        builder.processUnversionedFile(getSourceRoot());
+        myRefreshIndicator.cancel();
+        progress.checkCanceled();
+        builder.processIgnoredFile(getSourceRoot());
+      }
+    });
+    call.run();
+
+    assertTrue(call.isCanceled());
+    assertNull(call.getError());
+    assertEquals(1, call.getBuilder().size());
+  }
+
+  public void testCallCancellationDoesNotCancelRefresh() throws Exception {
+    final ChangeProviderCall call = createCall(new TestChangeProvider() {
+      @Override
+      void getChanges(ChangelistBuilder builder, ProgressIndicator progress) {
+      }
+    });
+    call.cancel();
+
+    assertTrue(call.isCanceled());
+    assertFalse(myRefreshIndicator.isCanceled());
+  }
+
+  public void testVcsExceptionIsKept() throws Exception {
+    final VcsException exception = new VcsException("connection problem");
+    final ChangeProviderCall call = createCall(new TestChangeProvider() {
+      @Override
+      void getChanges(ChangelistBuilder builder, ProgressIndicator progress) throws VcsException {
+        throw exception;
+      }
+    });
+    call.run();
+
+    assertSame(exception, call.getException());
+    assertNull(call.getError());
+  }
+
+  private ChangeProviderCall createCall(final ChangeProvider provider) {
+    myVcs.setChangeProvider(provider);
+    // test providers do not use the gate
+    return new ChangeProviderCall(myVcs, new VcsDirtyScopeImpl(myVcs, getProject()), null, myRefreshIndicator);
+  }
+
+  private abstract static class TestChangeProvider implements ChangeProvider {
+    @Override
+    public void getChanges(VcsDirtyScope dirtyScope, ChangelistBuilder builder, ProgressIndicator progress, ChangeListManagerGate addGate)
+      throws VcsException {
+      getChanges(builder, progress);
+    }
+
+    abstract void getChanges(ChangelistBuilder builder, ProgressIndicator progress) throws VcsException;
+
+    @Override
+    public boolean isModifiedDocumentTrackingRequired() {
+      return false;
+    }
+
+    @Override
+    public void doCleanup(List<VirtualFile> files) {
+    }
+  }
+}
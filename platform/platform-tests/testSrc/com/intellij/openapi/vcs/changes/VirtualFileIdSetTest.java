@@ -0,0 +1,131 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.ThrowableComputable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightPlatformTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class VirtualFileIdSetTest extends LightPlatformTestCase {
+  public void testEqualsComparesIds() throws Exception {
+    final VirtualFile a = createFile("a.txt");
+    final VirtualFile b = createFile("b.txt");
+
+    final VirtualFileIdSet set1 = new VirtualFileIdSet();
+    set1.add(a);
+    set1.add(b);
+    final VirtualFileIdSet set2 = new VirtualFileIdSet();
+    set2.add(b);
+    set2.add(a);
+
+    assertEquals(set1, set2);
+    assertEquals(set1.hashCode(), set2.hashCode());
+    assertEquals(new VirtualFileIdSet(set1), set1);
+
+    set2.remove(a);
+    assertFalse(set1.equals(set2));
+  }
+
+  public void testEqualToOtherSetsOfSameFiles() throws Exception {
+    final VirtualFile a = createFile("a.txt");
+    final VirtualFile dir = createDirectory("dir");
+
+    final VirtualFileIdSet set = new VirtualFileIdSet();
+    set.add(a);
+    set.add(dir);
+    final HashSet<VirtualFile> hashSet = new HashSet<VirtualFile>(Arrays.asList(a, dir));
+
+    assertEquals(hashSet, set);
+    assertEquals(set, hashSet);
+    assertEquals(hashSet.hashCode(), set.hashCode());
+  }
+
+  public void testDroppedFilesAreKeptUntilRemoved() throws Exception {
+    final VirtualFile a = createFile("a.txt");
+    final VirtualFile dir = createDirectory("dir");
+
+    final VirtualFileIdSet set = new VirtualFileIdSet();
+    set.add(a);
+    set.add(dir);
+    assertEquals(1, set.getNumDirs());
+
+    delete(dir);
+    // iteration does not modify the set, size and number of directories match iteration
+    assertEquals(Arrays.asList(a), new ArrayList<VirtualFile>(set));
+    assertEquals(1, set.size());
+    assertEquals(0, set.getNumDirs());
+
+    assertEquals(1, set.removeDropped());
+    assertEquals(1, set.size());
+    assertEquals(0, set.getNumDirs());
+    assertTrue(set.contains(a));
+    assertEquals(0, set.removeDropped());
+  }
+
+  public void testEqualityMatchesIteration() throws Exception {
+    final VirtualFile a = createFile("a.txt");
+    final VirtualFile b = createFile("b.txt");
+
+    final VirtualFileIdSet set1 = new VirtualFileIdSet();
+    set1.add(a);
+    set1.add(b);
+    final VirtualFileIdSet set2 = new VirtualFileIdSet();
+    set2.add(a);
+
+    delete(b);
+    assertEquals(set2, set1);
+    assertEquals(set2.hashCode(), set1.hashCode());
+    assertEquals(new HashSet<VirtualFile>(Arrays.asList(a)), set1);
+
+    delete(a);
+    assertTrue(set1.isEmpty());
+    assertEquals(0, set1.size());
+  }
+
+  private VirtualFile createFile(final String name) throws IOException {
+    return ApplicationManager.getApplication().runWriteAction(new ThrowableComputable<VirtualFile, IOException>() {
+      @Override
+      public VirtualFile compute() throws IOException {
+        return getSourceRoot().createChildData(VirtualFileIdSetTest.class, getTestName(true) + "_" + name);
+      }
+    });
+  }
+
+  private VirtualFile createDirectory(final String name) throws IOException {
+    return ApplicationManager.getApplication().runWriteAction(new ThrowableComputable<VirtualFile, IOException>() {
+      @Override
+      public VirtualFile compute() throws IOException {
+        return getSourceRoot().createChildDirectory(VirtualFileIdSetTest.class, getTestName(true) + "_" + name);
+      }
+    });
+  }
+
+  private static void delete(final VirtualFile file) throws IOException {
+    ApplicationManager.getApplication().runWriteAction(new ThrowableComputable<Object, IOException>() {
+      @Override
+      public Object compute() throws IOException {
+        file.delete(VirtualFileIdSetTest.class);
+        return null;
+      }
+    });
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.history;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.annotate.VcsAnnotation;
+import com.intellij.openapi.vcs.annotate.VcsLineAnnotationData;
+import com.intellij.openapi.vcs.annotate.VcsUsualLineAnnotationData;
+import com.intellij.openapi.vcs.changes.committed.MockAbstractVcs;
+import com.intellij.testFramework.LightPlatformTestCase;
+
+import java.io.File;
+
+public class VcsAnnotationDiskCacheTest extends LightPlatformTestCase {
+  private File myDir;
+  private MockAbstractVcs myVcs;
+  private VcsAnnotationDiskCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("annotations", null);
+    myVcs = new MockAbstractVcs(getProject());
+    myCache = openCache(Long.MAX_VALUE);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myCache.close();
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testRoundTrip() throws Exception {
+    final FilePath path = path("A.java");
+    myCache.put(path, myVcs.getKeyInstanceMethod(), revision(3), annotation(path, 3, 1, 2, 0, 1));
+
+    final VcsAnnotation restored = myCache.get(path, myVcs, revision(3));
+    assertNotNull(restored);
+    assertEquals(revision(3), restored.getFirstRevision());
+    final VcsLineAnnotationData data = restored.getBasicAnnotation();
+    assertEquals(4, data.getNumLines());
+    assertEquals(revision(1), data.getRevision(0));
+    assertEquals(revision(2), data.getRevision(1));
+    assertNull(data.getRevision(2));
+    assertEquals(revision(1), data.getRevision(3));
+
+    assertNull(myCache.get(path, myVcs, revision(2)));
+    assertNull(myCache.get(path("B.java"), myVcs, revision(3)));
+  }
+
+  public void testAnnotationWithAdditionalDataIsNotPersisted() throws Exception {
+    final FilePath path = path("A.java");
+    final VcsAnnotation annotation = annotation(path, 1, 1);
+    annotation.addAnnotation("merge", new VcsUsualLineAnnotationData(1));
+    myCache.put(path, myVcs.getKeyInstanceMethod(), revision(1), annotation);
+
+    assertNull(myCache.get(path, myVcs, revision(1)));
+  }
+
+  public void testClearRemovesEntriesOfVcs() throws Exception {
+    final FilePath path = path("A.java");
+    myCache.put(path, myVcs.getKeyInstanceMethod(), revision(1), annotation(path, 1, 1));
+    myCache.clear(new MockAbstractVcs(getProject(), "other").getKeyInstanceMethod());
+    assertNotNull(myCache.get(path, myVcs, revision(1)));
+
+    myCache.clear(myVcs.getKeyInstanceMethod());
+    assertNull(myCache.get(path, myVcs, revision(1)));
+  }
+
+  public void testSurvivesReopening() throws Exception {
+    final FilePath path = path("A.java");
+    myCache.put(path, myVcs.getKeyInstanceMethod(), revision(1), annotation(path, 1, 1));
+    myCache.close();
+
+    myCache = openCache(Long.MAX_VALUE);
+    assertNotNull(myCache.get(path, myVcs, revision(1)));
+  }
+
+  public void testDroppedOnOpenWhenOverLimit() throws Exception {
+    final FilePath path = path("A.java");
+    myCache.put(path, myVcs.getKeyInstanceMethod(), revision(1), annotation(path, 1, 1));
+    myCache.close();
+
+    myCache = openCache(1);
+    assertNull(myCache.get(path, myVcs, revision(1)));
+  }
+
+  public void testDroppedWhenGrowsOverLimit() throws Exception {
+    myCache.close();
+    myCache = openCache(1);
+    final FilePath first = path("A0.java");
+    for (int i = 0; i < 100; i++) {
+      final FilePath path = path("A" + i + ".java");
+      myCache.put(path, myVcs.getKeyInstanceMethod(), revision(1), annotation(path, 1, 1, 1, 1));
+    }
+    assertNull(myCache.get(first, myVcs, revision(1)));
+
+    final FilePath next = path("B.java");
+    myCache.put(next, myVcs.getKeyInstanceMethod(), revision(1), annotation(next, 1, 1));
+    assertNotNull(myCache.get(next, myVcs, revision(1)));
+  }
+
+  private VcsAnnotationDiskCache openCache(final long maxSize) {
+    return new VcsAnnotationDiskCache(new File(myDir, "annotations"), maxSize);
+  }
+
+  private FilePath path(final String name) {
+    return new FilePathImpl(new File(myDir, name), false);
+  }
+
+  private static VcsRevisionNumber revision(final int number) {
+    return new VcsRevisionNumber.Int(number);
+  }
+
+  /**
+   * @param lines revision of every line, 0 for not annotated line
+   */
+  private static VcsAnnotation annotation(final FilePath path, final int firstRevision, final int... lines) {
+    final VcsUsualLineAnnotationData data = new VcsUsualLineAnnotationData(lines.length);
+    for (int i = 0; i < lines.length; i++) {
+      if (lines[i] > 0) {
+        data.put(i, revision(lines[i]));
+      }
+    }
+    return new VcsAnnotation(path, data, revision(firstRevision));
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.codeStyle;
+
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Narrows a big list of names to those which may match a {@link MinusculeMatcher} pattern, without running the matcher on every name.
+ * <p/>
+ * Every ASCII letter or digit of a pattern is matched by the same character (in any case) of the name, in the same order,
+ * and unless the pattern starts with a wildcard, the first character of the pattern matches the first character of the name.
+ * So the names are kept sorted by the first character, with a bit mask of the ASCII letters and digits they contain:
+ * candidates are taken from the range of names starting with the right character, filtered by the mask
+ * and then checked to contain the letters and digits of the pattern as a subsequence.
+ * <p/>
+ * Candidates are a superset of the matching names, they still need to be checked by the matcher.
+ * The index is immutable and can be used from several threads.
+ */
+public class NameCandidatesIndex {
+  private static final Comparator<String> FIRST_CHAR_ORDER = new Comparator<String>() {
+    @Override
+    public int compare(String o1, String o2) {
+      final int c1 = o1.isEmpty() ? -1 : fold(o1.charAt(0));
+      final int c2 = o2.isEmpty() ? -1 : fold(o2.charAt(0));
+      if (c1 != c2) return c1 < c2 ? -1 : 1;
+      return o1.compareToIgnoreCase(o2);
+    }
+  };
+
+  private final String[] myNames;
+  private final long[] myMasks;
+
+  /**
+   * @param names names to index, null elements are skipped
+   */
+  public NameCandidatesIndex(@NotNull String[] names) {
+    myNames = skipNulls(names);
+    Arrays.sort(myNames, FIRST_CHAR_ORDER);
+    myMasks = new long[myNames.length];
+    for (int i = 0; i < myNames.length; i++) {
+      myMasks[i] = getMask(myNames[i]);
+    }
+  }
+
+  public int size() {
+    return myNames.length;
+  }
+
+  /**
+   * Feeds the names which may match the pattern to the processor, in the order of their first characters
+   * @return false if the processor stopped the processing
+   */
+  public boolean processCandidates(@NotNull String pattern, @NotNull Processor<String> processor) {
+    final char[] required = getRequiredChars(pattern);
+    final long requiredMask = getMask(new String(required));
+
+    int from = 0;
+    int to = myNames.length;
+    if (required.length > 0 && fold(pattern.charAt(0)) == required[0]) {
+      from = findFirst(required[0]);
+      to = findFirst((char)(required[0] + 1));
+    }
+
+    for (int i = from; i < to; i++) {
+      if ((myMasks[i] & requiredMask) != requiredMask) continue;
+      final String name = myNames[i];
+      if (!containsSubsequence(name, required)) continue;
+      if (!processor.process(name)) return false;
+    }
+    return true;
+  }
+
+  private static String[] skipNulls(String[] names) {
+    int count = 0;
+    for (String name : names) {
+      if (name != null) count++;
+    }
+    if (count == names.length) return names.clone();
+
+    final String[] result = new String[count];
+    int i = 0;
+    for (String name : names) {
+      if (name != null) result[i++] = name;
+    }
+    return result;
+  }
+
+  /**
+   * @return index of the first name whose folded first character is not less than the given one
+   */
+  private int findFirst(char c) {
+    int low = 0;
+    int high = myNames.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      final String name = myNames[mid];
+      if (name.isEmpty() || fold(name.charAt(0)) < c) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static boolean containsSubsequence(String name, char[] required) {
+    int j = 0;
+    for (int i = 0; i < name.length() && j < required.length; i++) {
+      if (fold(name.charAt(i)) == required[j]) j++;
+    }
+    return j == required.length;
+  }
+
+  /**
+   * @return lower-cased ASCII letters and digits of the pattern, other characters may be matched in a different way
+   */
+  private static char[] getRequiredChars(String pattern) {
+    final StringBuilder result = new StringBuilder(pattern.length());
+    for (int i = 0; i < pattern.length(); i++) {
+      final char c = fold(pattern.charAt(i));
+      if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+        result.append(c);
+      }
+    }
+    final char[] chars = new char[result.length()];
+    result.getChars(0, chars.length, chars, 0);
+    return chars;
+  }
+
+  private static long getMask(String s) {
+    long mask = 0;
+    for (int i = 0; i < s.length(); i++) {
+      final char c = fold(s.charAt(i));
+      if (c >= 'a' && c <= 'z') {
+        mask |= 1L << (c - 'a');
+      }
+      else if (c >= '0' && c <= '9') {
+        mask |= 1L << (26 + c - '0');
+      }
+    }
+    return mask;
+  }
+
+  private static char fold(char c) {
+    return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+  }
+}
@@ -383,6 +383,10 @@ public class JBZipEntry implements Cloneable {
     }
   }
 
+  private InputStream getRawInputStream() throws IOException {
+    return new BoundedInputStream(calcDataOffset(), getCompressedSize());
+  }
+
   /**
    * Returns the extra field data for the entry, or null if none.
    *
@@ -449,6 +453,29 @@ public class JBZipEntry implements Cloneable {
     setData(bytes, time);
   }
 
+  /**
+   * Writes data of the entry reading it from the stream, so big entries don't need to be loaded into memory.
+   */
+  public void setData(InputStream stream, long timestamp) throws IOException {
+    time = timestamp;
+    myFile.getOutputStream().putNextEntryContent(this, stream);
+  }
+
+  /**
+   * Writes data of the entry by copying compressed data of another entry (usually from another archive) as is,
+   * without decompressing and compressing it again.
+   */
+  public void setDataFrom(JBZipEntry source, long timestamp) throws IOException {
+    time = timestamp;
+    final InputStream stream = source.getRawInputStream();
+    try {
+      myFile.getOutputStream().putNextEntryRawContent(this, source, stream);
+    }
+    finally {
+      stream.close();
+    }
+  }
+
   public byte[] getData() throws IOException {
     if (size == -1) throw new IOException("no data");
 
@@ -92,6 +92,7 @@ public class JBZipFile {
    * The actual data source.
    */
   final RandomAccessFile archive;
+  private final boolean myReadOnly;
 
   private JBZipOutputStream myOutputStream;
   private long currentcfdfoffset = 0;
@@ -139,13 +140,27 @@ public class JBZipFile {
    * @throws IOException if an error occurs while reading the file.
    */
   public JBZipFile(File f, String encoding) throws IOException {
+    this(f, encoding, false);
+  }
+
+  /**
+   * Opens the given file, assuming the specified
+   * encoding for file names.
+   *
+   * @param f        the archive.
+   * @param encoding the encoding to use for file names
+   * @param readOnly if true the archive is opened for reading only and can't be modified
+   * @throws IOException if an error occurs while reading the file.
+   */
+  public JBZipFile(File f, String encoding, boolean readOnly) throws IOException {
     this.encoding = encoding;
-    archive = new RandomAccessFile(f, "rw");
+    myReadOnly = readOnly;
+    archive = new RandomAccessFile(f, readOnly ? "r" : "rw");
     try {
       if (archive.length() > 0) {
         populateFromCentralDirectory();
       }
-      else {
+      else if (!readOnly) {
         getOutputStream(); // Ensure we'll write central directory when closed even if no single entry created.
       }
     }
@@ -450,6 +465,9 @@ public class JBZipFile {
   }
 
   JBZipOutputStream getOutputStream() throws IOException {
+    if (myReadOnly) {
+      throw new IOException("Archive is opened for reading only");
+    }
     if (myOutputStream == null) {
       myOutputStream = new JBZipOutputStream(this, currentcfdfoffset);
     }
@@ -21,8 +21,11 @@ package com.intellij.util.io.zip;
 
 
 import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.io.FileUtil;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
@@ -93,6 +96,7 @@ class JBZipOutputStream {
   public JBZipOutputStream(JBZipFile file, long currentCDOffset) throws IOException {
     myFile = file;
     raf = myFile.archive;
+    encoding = file.getEncoding(); // names must be written the same way they are read by JBZipFile
     written = currentCDOffset;
     raf.seek(currentCDOffset);
   }
@@ -200,6 +204,11 @@ class JBZipOutputStream {
    */
   protected static final byte[] EOCD_SIG = ZipLong.getBytes(0X06054B50L);
 
+  /**
+   * offset of crc-32, compressed size and uncompressed size fields in the local file header
+   */
+  private static final int LFH_CRC_OFFSET = 14;
+
   /**
    * Writes the local file header entry
    *
@@ -401,6 +410,7 @@ class JBZipOutputStream {
     final byte[] outputBytes;
     final int outputBytesLength;
     if (entry.getMethod() == ZipEntry.DEFLATED) {
+      def.reset();
       def.setLevel(level);
       final BufferExposingByteArrayOutputStream compressedBytesStream = new BufferExposingByteArrayOutputStream();
       final DeflaterOutputStream stream = new DeflaterOutputStream(compressedBytesStream, def);
@@ -422,4 +432,90 @@ class JBZipOutputStream {
     writeLocalFileHeader(entry);
     writeOut(outputBytes, 0, outputBytesLength);
   }
+
+  /**
+   * Writes a deflated entry in a single pass over the stream: sizes and crc-32 are written to the local file header afterwards.
+   */
+  public void putNextEntryContent(final JBZipEntry entry, InputStream content) throws IOException {
+    if (entry.getMethod() == -1) {
+      entry.setMethod(method);
+    }
+    if (entry.getMethod() != ZipEntry.DEFLATED) {
+      // stored entry data can't be written before its crc is known, see writeLocalFileHeader
+      putNextEntryBytes(entry, FileUtil.loadBytes(content));
+      return;
+    }
+    if (entry.getTime() == -1) {
+      entry.setTime(System.currentTimeMillis());
+    }
+
+    entry.setCrc(0);
+    entry.setCompressedSize(0);
+    entry.setSize(0);
+    writeLocalFileHeader(entry);
+    final long dataOffset = written;
+
+    crc.reset();
+    def.reset();
+    def.setLevel(level);
+    final DeflaterOutputStream stream = new DeflaterOutputStream(new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        writeOut(new byte[]{(byte)b});
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        writeOut(b, off, len);
+      }
+    }, def);
+    final byte[] buffer = new byte[8192];
+    long size = 0;
+    int read;
+    while ((read = content.read(buffer)) > 0) {
+      crc.update(buffer, 0, read);
+      stream.write(buffer, 0, read);
+      size += read;
+    }
+    stream.finish();
+
+    entry.setSize(size);
+    entry.setCrc(crc.getValue());
+    entry.setCompressedSize(written - dataOffset);
+    patchLocalFileHeader(entry);
+  }
+
+  /**
+   * Writes an entry with the compressed data read from the stream as is, method, sizes and crc-32 are taken from the source entry.
+   */
+  public void putNextEntryRawContent(JBZipEntry entry, JBZipEntry source, InputStream rawContent) throws IOException {
+    entry.setMethod(source.getMethod());
+    entry.setCrc(source.getCrc());
+    entry.setSize(source.getSize());
+    entry.setCompressedSize(source.getCompressedSize());
+    if (entry.getTime() == -1) {
+      entry.setTime(source.getTime());
+    }
+    writeLocalFileHeader(entry);
+
+    final byte[] buffer = new byte[8192];
+    long remaining = source.getCompressedSize();
+    while (remaining > 0) {
+      final int read = rawContent.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+      if (read <= 0) {
+        throw new ZipException("Unexpected end of data of entry " + source.getName());
+      }
+      writeOut(buffer, 0, read);
+      remaining -= read;
+    }
+  }
+
+  private void patchLocalFileHeader(JBZipEntry entry) throws IOException {
+    flushBuffer();
+    raf.seek(entry.getHeaderOffset() + LFH_CRC_OFFSET);
+    raf.write(ZipLong.getBytes(entry.getCrc()));
+    raf.write(ZipLong.getBytes(entry.getCompressedSize()));
+    raf.write(ZipLong.getBytes(entry.getSize()));
+    raf.seek(written);
+  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.ArrayUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Finds occurrences of several patterns in a single pass over the text (Aho-Corasick automaton).
+ * Patterns are the patterns of the given {@link StringSearcher}s, their case sensitivity is respected;
+ * overlapping occurrences are all reported, the same way repeated {@link StringSearcher#scan} calls would find them.
+ * Only forward search is supported. The searcher is immutable and can be used from several threads.
+ */
+public class MultiStringSearcher {
+  private final StringSearcher[] mySearchers;
+
+  // transitions of node i are myLabels[i] (sorted) -> myTargets[i]
+  private char[][] myLabels;
+  private int[][] myTargets;
+  private int[] myFailure;
+  // searchers whose (lower-cased) pattern ends in the node, including those reachable by failure links
+  private int[][] myOutputs;
+  private int myNodeCount;
+
+  public interface OccurrenceConsumer {
+    /**
+     * @param searcherIndex index of the searcher whose pattern is found
+     * @param startOffset offset of the occurrence start in the text
+     * @return false to stop the search
+     */
+    boolean consume(int searcherIndex, int startOffset);
+  }
+
+  public MultiStringSearcher(@NotNull StringSearcher... searchers) {
+    mySearchers = searchers;
+    myLabels = new char[16][];
+    myTargets = new int[16][];
+    myOutputs = new int[16][];
+    myNodeCount = 1;
+    myLabels[0] = ArrayUtil.EMPTY_CHAR_ARRAY;
+    myTargets[0] = ArrayUtil.EMPTY_INT_ARRAY;
+    myOutputs[0] = ArrayUtil.EMPTY_INT_ARRAY;
+
+    for (int i = 0; i < searchers.length; i++) {
+      if (!searchers[i].isForwardDirection()) {
+        throw new IllegalArgumentException("Only forward searchers are supported: " + searchers[i].getPattern());
+      }
+      final String pattern = searchers[i].getPattern();
+      int node = 0;
+      for (int j = 0; j < pattern.length(); j++) {
+        final char c = StringUtil.toLowerCase(pattern.charAt(j));
+        int next = findTransition(node, c);
+        if (next < 0) {
+          next = addNode();
+          addTransition(node, c, next);
+        }
+        node = next;
+      }
+      myOutputs[node] = ArrayUtil.append(myOutputs[node], i);
+    }
+    buildFailureLinks();
+  }
+
+  @NotNull
+  public StringSearcher[] getSearchers() {
+    return mySearchers;
+  }
+
+  /**
+   * Reports occurrences in the order of their end offsets
+   * @return false if the consumer stopped the search
+   */
+  public boolean scan(@NotNull CharSequence text, @Nullable char[] textArray, int start, int end, @NotNull OccurrenceConsumer consumer) {
+    int node = 0;
+    for (int offset = start; offset < end; offset++) {
+      final char c = StringUtil.toLowerCase(textArray != null ? textArray[offset] : text.charAt(offset));
+      int next = findTransition(node, c);
+      while (next < 0 && node != 0) {
+        node = myFailure[node];
+        next = findTransition(node, c);
+      }
+      node = next < 0 ? 0 : next;
+      for (int searcherIndex : myOutputs[node]) {
+        final StringSearcher searcher = mySearchers[searcherIndex];
+        final int matchStart = offset + 1 - searcher.getPatternLength();
+        if (matchStart < start) continue;
+        if (searcher.isCaseSensitive() && !matchesExactly(text, textArray, matchStart, searcher.getPattern())) continue;
+        if (!consumer.consume(searcherIndex, matchStart)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean matchesExactly(CharSequence text, @Nullable char[] textArray, int start, String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      final char c = textArray != null ? textArray[start + i] : text.charAt(start + i);
+      if (c != pattern.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private int findTransition(int node, char c) {
+    final int index = Arrays.binarySearch(myLabels[node], c);
+    return index < 0 ? -1 : myTargets[node][index];
+  }
+
+  private int addNode() {
+    if (myNodeCount == myLabels.length) {
+      final int newLength = myNodeCount * 2;
+      myLabels = Arrays.copyOf(myLabels, newLength);
+      myTargets = Arrays.copyOf(myTargets, newLength);
+      myOutputs = Arrays.copyOf(myOutputs, newLength);
+    }
+    myLabels[myNodeCount] = ArrayUtil.EMPTY_CHAR_ARRAY;
+    myTargets[myNodeCount] = ArrayUtil.EMPTY_INT_ARRAY;
+    myOutputs[myNodeCount] = ArrayUtil.EMPTY_INT_ARRAY;
+    return myNodeCount++;
+  }
+
+  private void addTransition(int node, char c, int target) {
+    final char[] labels = myLabels[node];
+    final int[] targets = myTargets[node];
+    final int index = -Arrays.binarySearch(labels, c) - 1;
+    final char[] newLabels = new char[labels.length + 1];
+    final int[] newTargets = new int[targets.length + 1];
+    System.arraycopy(labels, 0, newLabels, 0, index);
+    System.arraycopy(targets, 0, newTargets, 0, index);
+    newLabels[index] = c;
+    newTargets[index] = target;
+    System.arraycopy(labels, index, newLabels, index + 1, labels.length - index);
+    System.arraycopy(targets, index, newTargets, index + 1, targets.length - index);
+    myLabels[node] = newLabels;
+    myTargets[node] = newTargets;
+  }
+
+  private void buildFailureLinks() {
+    myFailure = new int[myNodeCount];
+    // breadth first, so failure targets (shorter suffixes) are processed before the nodes referring to them
+    final int[] queue = new int[myNodeCount];
+    int head = 0;
+    int tail = 0;
+    for (int child : myTargets[0]) {
+      myFailure[child] = 0;
+      queue[tail++] = child;
+    }
+    while (head < tail) {
+      final int node = queue[head++];
+      final char[] labels = myLabels[node];
+      final int[] targets = myTargets[node];
+      for (int i = 0; i < labels.length; i++) {
+        final int child = targets[i];
+        int failure = myFailure[node];
+        int next = findTransition(failure, labels[i]);
+        while (next < 0 && failure != 0) {
+          failure = myFailure[failure];
+          next = findTransition(failure, labels[i]);
+        }
+        myFailure[child] = next < 0 || next == child ? 0 : next;
+        if (myOutputs[myFailure[child]].length > 0) {
+          myOutputs[child] = ArrayUtil.mergeArrays(myOutputs[child], myOutputs[myFailure[child]]);
+        }
+        queue[tail++] = child;
+      }
+    }
+  }
+}
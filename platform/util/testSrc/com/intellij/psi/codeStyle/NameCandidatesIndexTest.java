@@ -0,0 +1,80 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.codeStyle;
+
+import com.intellij.util.CommonProcessors;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class NameCandidatesIndexTest extends TestCase {
+  private static final String[] NAMES = {
+    "ArrayList", "AbstractList", "arrayCopy", "ActionManager", "ByteArrayOutputStream", "HashMap", "hashCode",
+    "IOUtil", "Base64", "", null, "\u00C4pfelBaum", "_private", "StringUtil", "StringBuilder", "Utf8Util"
+  };
+
+  public void testPrefixRange() {
+    assertCandidates("arrc", "arrayCopy");
+    assertCandidates("AL", "AbstractList", "ArrayList");
+    assertCandidates("hash", "hashCode", "HashMap");
+  }
+
+  public void testWildcardStart() {
+    assertCandidates("*array", "arrayCopy", "ArrayList", "ByteArrayOutputStream");
+    assertCandidates(" util", "IOUtil", "StringUtil", "Utf8Util");
+  }
+
+  public void testDigits() {
+    assertCandidates("b64", "Base64");
+    assertCandidates("*8", "Utf8Util");
+  }
+
+  public void testEmptyPattern() {
+    assertEquals(NAMES.length - 1, collect("").size());
+    assertEquals(NAMES.length - 1, collect("*").size());
+  }
+
+  public void testNullNamesAreSkipped() {
+    final NameCandidatesIndex index = new NameCandidatesIndex(NAMES);
+    assertEquals(NAMES.length - 1, index.size());
+    assertFalse(collect("").contains(null));
+  }
+
+  public void testNoFalseNegatives() {
+    final String[] patterns = {"AL", "arl", "*list", "SB", "s*b", "hC", "IOU", "UU", "*out", "aM", "b6", "_p", "\u00C4p", "str util"};
+    for (String pattern : patterns) {
+      final MinusculeMatcher matcher = NameUtil.buildMatcher(pattern, NameUtil.MatchingCaseSensitivity.NONE);
+      final List<String> candidates = collect(pattern);
+      for (String name : NAMES) {
+        if (name != null && matcher.matches(name)) {
+          assertTrue(pattern + " -> " + name, candidates.contains(name));
+        }
+      }
+    }
+  }
+
+  private static void assertCandidates(String pattern, String... expected) {
+    assertEquals(Arrays.asList(expected), collect(pattern));
+  }
+
+  private static List<String> collect(String pattern) {
+    final List<String> result = new ArrayList<String>();
+    new NameCandidatesIndex(NAMES).processCandidates(pattern, new CommonProcessors.CollectProcessor<String>(result));
+    return result;
+  }
+}
@@ -26,6 +26,7 @@ import java.io.*;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 public class UpdateableZipTest extends TestCase {
@@ -108,6 +109,60 @@ public class UpdateableZipTest extends TestCase {
     utilZip.close();
   }
   
+  public void testStreamedEntryHeader() throws Exception {
+    File zipFile = FileUtil.createTempFile("streamed", ".zip");
+    byte[] content = createContent();
+
+    JBZipFile jbZip = new JBZipFile(zipFile);
+    JBZipEntry entry = jbZip.getOrCreateEntry("streamed.txt");
+    entry.setMethod(ZipEntry.DEFLATED);
+    entry.setData(new ByteArrayInputStream(content), System.currentTimeMillis());
+    jbZip.close();
+
+    assertLocalHeader(zipFile, "streamed.txt", content);
+    FileUtil.delete(zipFile);
+  }
+
+  public void testRawCopiedEntryHeader() throws Exception {
+    File sourceFile = FileUtil.createTempFile("source", ".zip");
+    File zipFile = FileUtil.createTempFile("copied", ".zip");
+    byte[] content = createContent();
+
+    JBZipFile sourceZip = new JBZipFile(sourceFile);
+    JBZipEntry sourceEntry = sourceZip.getOrCreateEntry("copied.txt");
+    sourceEntry.setMethod(ZipEntry.DEFLATED);
+    sourceEntry.setData(content);
+    sourceZip.close();
+    long sourceLength = sourceFile.length();
+
+    sourceZip = new JBZipFile(sourceFile, "UTF-8", true);
+    JBZipFile jbZip = new JBZipFile(zipFile);
+    jbZip.getOrCreateEntry("copied.txt").setDataFrom(sourceZip.getEntry("copied.txt"), System.currentTimeMillis());
+    jbZip.close();
+    sourceZip.close();
+
+    assertEquals(sourceLength, sourceFile.length());
+    assertLocalHeader(zipFile, "copied.txt", content);
+    FileUtil.delete(sourceFile);
+    FileUtil.delete(zipFile);
+  }
+
+  public void testReadOnlyArchiveCannotBeModified() throws Exception {
+    JBZipFile jbZip = new JBZipFile(zipFile, "UTF-8", true);
+    assertEntryWithContentExists(jbZip, "/first", "first");
+    try {
+      jbZip.getOrCreateEntry("/third").setData("third".getBytes());
+      fail("read-only archive must not be modified");
+    }
+    catch (IOException ignored) {
+    }
+    jbZip.close();
+
+    ZipFile utilZip = new ZipFile(zipFile);
+    assertNull(utilZip.getEntry("/third"));
+    utilZip.close();
+  }
+
   /*
   public void testAppendToIdeaJar() throws Exception {
     //ProfilingUtil.startCPUProfiling();
@@ -139,6 +194,43 @@ public class UpdateableZipTest extends TestCase {
     return zipFile;
   }
 
+  private static byte[] createContent() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      builder.append("line ").append(i).append('\n');
+    }
+    return builder.toString().getBytes();
+  }
+
+  /**
+   * Checks sizes and crc written to the local file header, which is what streaming zip readers rely on
+   */
+  private static void assertLocalHeader(File zipFile, String entryName, byte[] content) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(content);
+
+    ZipFile utilZip = new ZipFile(zipFile);
+    long compressedSize = utilZip.getEntry(entryName).getCompressedSize();
+    utilZip.close();
+
+    ZipInputStream stream = new ZipInputStream(new FileInputStream(zipFile));
+    try {
+      ZipEntry entry = stream.getNextEntry();
+      assertNotNull(entry);
+      assertEquals(entryName, entry.getName());
+      assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+      assertEquals(crc.getValue(), entry.getCrc());
+      assertEquals(content.length, entry.getSize());
+      assertEquals(compressedSize, entry.getCompressedSize());
+      // the stream verifies crc of the data after it is read
+      assertEquals(new String(content), new String(FileUtil.loadBytes(stream)));
+      assertNull(stream.getNextEntry());
+    }
+    finally {
+      stream.close();
+    }
+  }
+
   private static void assertEntryWithContentExists(JBZipFile jbZip, String entryName, String content) throws IOException {
     JBZipEntry entry = jbZip.getEntry(entryName);
     assertNotNull(entry);
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MultiStringSearcherTest extends TestCase {
+  public void testOverlappingPatterns() {
+    assertOccurrences("ushers", new String[]{"he", "she", "his", "hers"}, true, "1:1", "0:2", "3:2");
+  }
+
+  public void testCaseSensitivity() {
+    final MultiStringSearcher searcher = new MultiStringSearcher(new StringSearcher("Foo", true, true),
+                                                                 new StringSearcher("bar", false, true));
+    assertEquals(Arrays.asList("0:4", "1:8", "1:12"), scan(searcher, "foo Foo BAR bar", 0));
+  }
+
+  public void testRepeatedOccurrences() {
+    assertOccurrences("aaaa", new String[]{"aa", "b"}, true, "0:0", "0:1", "0:2");
+  }
+
+  public void testStartOffset() {
+    final MultiStringSearcher searcher = new MultiStringSearcher(new StringSearcher("abc", true, true),
+                                                                 new StringSearcher("c", true, true));
+    assertEquals(Arrays.asList("1:5"), scan(searcher, "abcabc", 4));
+  }
+
+  public void testSameAsSingleSearcher() {
+    final String text = "getFoo(); setFoo(foo); isFoo(); getFooBar(); foo.getFoo()";
+    final String[] patterns = {"getFoo", "setFoo", "foo", "Foo", "isFoo"};
+    final StringSearcher[] searchers = new StringSearcher[patterns.length];
+    for (int i = 0; i < patterns.length; i++) {
+      searchers[i] = new StringSearcher(patterns[i], i != 2, true);
+    }
+    final List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < searchers.length; i++) {
+      for (int index = searchers[i].scan(text); index >= 0; index = searchers[i].scan(text, index + 1, text.length())) {
+        expected.add(i + ":" + index);
+      }
+    }
+    final List<String> actual = scan(new MultiStringSearcher(searchers), text, 0);
+    assertEquals(sorted(expected), sorted(actual));
+  }
+
+  private static List<String> sorted(List<String> list) {
+    final String[] array = list.toArray(new String[list.size()]);
+    Arrays.sort(array);
+    return Arrays.asList(array);
+  }
+
+  private static void assertOccurrences(String text, String[] patterns, boolean caseSensitive, String... expected) {
+    final StringSearcher[] searchers = new StringSearcher[patterns.length];
+    for (int i = 0; i < patterns.length; i++) {
+      searchers[i] = new StringSearcher(patterns[i], caseSensitive, true);
+    }
+    assertEquals(Arrays.asList(expected), scan(new MultiStringSearcher(searchers), text, 0));
+  }
+
+  private static List<String> scan(MultiStringSearcher searcher, String text, int start) {
+    final List<String> result = new ArrayList<String>();
+    searcher.scan(text, null, start, text.length(), new MultiStringSearcher.OccurrenceConsumer() {
+      @Override
+      public boolean consume(int searcherIndex, int startOffset) {
+        result.add(searcherIndex + ":" + startOffset);
+        return true;
+      }
+    });
+    return result;
+  }
+}
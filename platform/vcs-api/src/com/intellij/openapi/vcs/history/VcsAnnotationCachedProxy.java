@@ -87,7 +87,7 @@ public class VcsAnnotationCachedProxy implements AnnotationProvider {
 
     VcsAnnotation vcsAnnotation = null;
     if (revisionNumber != null) {
-      vcsAnnotation = myCache.get(VcsContextFactory.SERVICE.getInstance().createFilePathOn(file), myVcs.getKeyInstanceMethod(), revisionNumber);
+      vcsAnnotation = myCache.get(filePath, myVcs, revisionNumber);
     }
 
     if (vcsAnnotation != null) {
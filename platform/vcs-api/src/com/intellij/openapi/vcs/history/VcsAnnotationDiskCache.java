@@ -0,0 +1,308 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.history;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.AbstractVcs;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.VcsKey;
+import com.intellij.openapi.vcs.annotate.VcsAnnotation;
+import com.intellij.openapi.vcs.annotate.VcsLineAnnotationData;
+import com.intellij.openapi.vcs.annotate.VcsUsualLineAnnotationData;
+import com.intellij.util.Processor;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk layer of annotations cache.
+ * Keyed by (vcs, revision, path); since annotation of a committed revision never changes, entries are not invalidated on local changes -
+ * locally modified files are annotated against their base revision and reuse the persisted data.
+ * Only basic (line -> revision) data is stored: annotations that carry additional data (like svn merge sources) are kept in memory only.
+ *
+ * The storage is bounded: when its values file grows over the limit, all entries are dropped, since annotations are
+ * recalculated on demand anyway and keeping the access order on disk would cost more than that.
+ *
+ * Thread-safe; all storage access happens under the cache's own lock, so callers need not hold theirs.
+ */
+public class VcsAnnotationDiskCache {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.history.VcsAnnotationDiskCache");
+  private static final int VERSION = 1;
+  private static final char SEPARATOR = '|';
+  private static final long MAX_STORAGE_SIZE = 50 * 1024 * 1024;
+  private static final int PUTS_BETWEEN_SIZE_CHECKS = 100;
+
+  private final Object myLock = new Object();
+  private final File myFile;
+  private final long myMaxSize;
+  private PersistentHashMap<String, PersistedAnnotation> myStorage;
+  private int myPutsSinceSizeCheck;
+
+  public VcsAnnotationDiskCache(@NotNull final Project project) {
+    this(new File(PathManager.getSystemPath() + File.separator + "vcs" + File.separator + "annotations" + File.separator +
+                  project.getName() + "." + project.getLocationHash() + File.separator + "annotations." + VERSION), MAX_STORAGE_SIZE);
+  }
+
+  VcsAnnotationDiskCache(@NotNull final File file, final long maxSize) {
+    myFile = file;
+    myMaxSize = maxSize;
+    myStorage = openStorage();
+  }
+
+  @Nullable
+  private PersistentHashMap<String, PersistedAnnotation> openStorage() {
+    if (getStorageSize() > myMaxSize) {
+      PersistentHashMap.deleteFilesStartingWith(myFile);
+    }
+    try {
+      return createStorage();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      PersistentHashMap.deleteFilesStartingWith(myFile);
+      try {
+        return createStorage();
+      }
+      catch (IOException e1) {
+        LOG.info(e1);
+        return null;
+      }
+    }
+  }
+
+  private PersistentHashMap<String, PersistedAnnotation> createStorage() throws IOException {
+    final PersistentHashMap<String, PersistedAnnotation> storage =
+      new PersistentHashMap<String, PersistedAnnotation>(myFile, new EnumeratorStringDescriptor(), new PersistedAnnotationExternalizer());
+    if (storage.makesSenseToCompact()) {
+      storage.compact();
+    }
+    return storage;
+  }
+
+  private long getStorageSize() {
+    return new File(myFile.getPath() + PersistentHashMap.DATA_FILE_EXTENSION).length();
+  }
+
+  public void put(@NotNull final FilePath filePath, @NotNull final VcsKey vcsKey, @NotNull final VcsRevisionNumber number,
+                  @NotNull final VcsAnnotation vcsAnnotation) {
+    if (! vcsAnnotation.getAdditionalAnnotations().isEmpty() || ! vcsAnnotation.getCachedOtherRevisions().isEmpty()) return;
+    final PersistedAnnotation persisted = PersistedAnnotation.create(vcsAnnotation);
+    if (persisted == null) return;
+    synchronized (myLock) {
+      if (myStorage == null) return;
+      try {
+        myStorage.put(createKey(filePath, vcsKey, number), persisted);
+        if (++myPutsSinceSizeCheck >= PUTS_BETWEEN_SIZE_CHECKS) {
+          myPutsSinceSizeCheck = 0;
+          myStorage.force();
+          if (getStorageSize() > myMaxSize) {
+            LOG.info("Annotations cache exceeded " + myMaxSize + " bytes, dropping it");
+            dropStorage();
+            myStorage = openStorage();
+          }
+        }
+      }
+      catch (IOException e) {
+        onStorageError(e);
+      }
+    }
+  }
+
+  @Nullable
+  public VcsAnnotation get(@NotNull final FilePath filePath, @NotNull final AbstractVcs<?> vcs, @NotNull final VcsRevisionNumber number) {
+    final PersistedAnnotation persisted;
+    synchronized (myLock) {
+      if (myStorage == null) return null;
+      try {
+        persisted = myStorage.get(createKey(filePath, vcs.getKeyInstanceMethod(), number));
+      }
+      catch (IOException e) {
+        onStorageError(e);
+        return null;
+      }
+    }
+    if (persisted == null) return null;
+    try {
+      return persisted.restore(filePath, vcs);
+    }
+    catch (VcsException e) {
+      LOG.info(e);
+      return null;
+    }
+  }
+
+  public void clear(@NotNull final VcsKey vcsKey) {
+    final String prefix = vcsKey.getName() + SEPARATOR;
+    final List<String> toRemove = new ArrayList<String>();
+    synchronized (myLock) {
+      if (myStorage == null) return;
+      try {
+        myStorage.processKeysWithExistingMapping(new Processor<String>() {
+          @Override
+          public boolean process(String key) {
+            if (key.startsWith(prefix)) {
+              toRemove.add(key);
+            }
+            return true;
+          }
+        });
+        for (String key : toRemove) {
+          myStorage.remove(key);
+        }
+      }
+      catch (IOException e) {
+        onStorageError(e);
+      }
+    }
+  }
+
+  public void close() {
+    synchronized (myLock) {
+      if (myStorage == null) return;
+      try {
+        myStorage.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+      myStorage = null;
+    }
+  }
+
+  private void onStorageError(final IOException e) {
+    LOG.info(e);
+    dropStorage();
+  }
+
+  private void dropStorage() {
+    try {
+      myStorage.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    myStorage = null;
+    PersistentHashMap.deleteFilesStartingWith(myFile);
+  }
+
+  private static String createKey(final FilePath filePath, final VcsKey vcsKey, final VcsRevisionNumber number) {
+    return vcsKey.getName() + SEPARATOR + number.asString() + SEPARATOR + filePath.getPath();
+  }
+
+  private static class PersistedAnnotation {
+    @Nullable private final String myFirstRevision;
+    // distinct revisions of the annotation, lines refer to them by index; -1 stands for not annotated line
+    private final String[] myRevisions;
+    private final int[] myLines;
+
+    private PersistedAnnotation(@Nullable String firstRevision, String[] revisions, int[] lines) {
+      myFirstRevision = firstRevision;
+      myRevisions = revisions;
+      myLines = lines;
+    }
+
+    @Nullable
+    static PersistedAnnotation create(final VcsAnnotation vcsAnnotation) {
+      final VcsLineAnnotationData data = vcsAnnotation.getBasicAnnotation();
+      final int size = data.getNumLines();
+      if (size <= 0) return null;
+      final TObjectIntHashMap<String> indexes = new TObjectIntHashMap<String>();
+      final List<String> revisions = new ArrayList<String>();
+      final int[] lines = new int[size];
+      for (int i = 0; i < size; i++) {
+        final VcsRevisionNumber revision = data.getRevision(i);
+        if (revision == null) {
+          lines[i] = -1;
+          continue;
+        }
+        final String asString = revision.asString();
+        if (! indexes.containsKey(asString)) {
+          indexes.put(asString, revisions.size());
+          revisions.add(asString);
+        }
+        lines[i] = indexes.get(asString);
+      }
+      final VcsRevisionNumber firstRevision = vcsAnnotation.getFirstRevision();
+      return new PersistedAnnotation(firstRevision == null ? null : firstRevision.asString(),
+                                     revisions.toArray(new String[revisions.size()]), lines);
+    }
+
+    @Nullable
+    VcsAnnotation restore(final FilePath filePath, final AbstractVcs<?> vcs) throws VcsException {
+      final VcsRevisionNumber[] revisions = new VcsRevisionNumber[myRevisions.length];
+      for (int i = 0; i < myRevisions.length; i++) {
+        revisions[i] = vcs.parseRevisionNumber(myRevisions[i]);
+        if (revisions[i] == null) return null;
+      }
+      final VcsUsualLineAnnotationData data = new VcsUsualLineAnnotationData(myLines.length);
+      for (int i = 0; i < myLines.length; i++) {
+        if (myLines[i] >= 0) {
+          data.put(i, revisions[myLines[i]]);
+        }
+      }
+      final VcsRevisionNumber firstRevision = myFirstRevision == null ? null : vcs.parseRevisionNumber(myFirstRevision);
+      return new VcsAnnotation(filePath, data, firstRevision);
+    }
+  }
+
+  private static class PersistedAnnotationExternalizer implements DataExternalizer<PersistedAnnotation> {
+    @Override
+    public void save(DataOutput out, PersistedAnnotation value) throws IOException {
+      out.writeBoolean(value.myFirstRevision != null);
+      if (value.myFirstRevision != null) {
+        IOUtil.writeString(value.myFirstRevision, out);
+      }
+      DataInputOutputUtil.writeINT(out, value.myRevisions.length);
+      for (String revision : value.myRevisions) {
+        IOUtil.writeString(revision, out);
+      }
+      DataInputOutputUtil.writeINT(out, value.myLines.length);
+      for (int line : value.myLines) {
+        // shifted to keep "not annotated" marker non-negative
+        DataInputOutputUtil.writeINT(out, line + 1);
+      }
+    }
+
+    @Override
+    public PersistedAnnotation read(DataInput in) throws IOException {
+      final String firstRevision = in.readBoolean() ? IOUtil.readString(in) : null;
+      final String[] revisions = new String[DataInputOutputUtil.readINT(in)];
+      for (int i = 0; i < revisions.length; i++) {
+        revisions[i] = IOUtil.readString(in);
+      }
+      final int[] lines = new int[DataInputOutputUtil.readINT(in)];
+      for (int i = 0; i < lines.length; i++) {
+        lines[i] = DataInputOutputUtil.readINT(in) - 1;
+      }
+      return new PersistedAnnotation(firstRevision, revisions, lines);
+    }
+  }
+}
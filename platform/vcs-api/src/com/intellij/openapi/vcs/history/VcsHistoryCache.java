@@ -15,6 +15,8 @@
  */
 package com.intellij.openapi.vcs.history;
 
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.AbstractVcs;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.VcsKey;
 import com.intellij.openapi.vcs.annotate.VcsAnnotation;
@@ -38,12 +40,18 @@ public class VcsHistoryCache {
   private final SLRUMap<HistoryCacheBaseKey, CachedHistory> myHistoryCache;
   private final SLRUMap<HistoryCacheWithRevisionKey, VcsAnnotation> myAnnotationCache;
   //private final SLRUMap<HistoryCacheWithRevisionKey, String> myContentCache;
+  @Nullable private final VcsAnnotationDiskCache myAnnotationDiskCache;
 
   public VcsHistoryCache() {
+    this(null);
+  }
+
+  public VcsHistoryCache(@Nullable final Project project) {
     myLock = new Object();
     myHistoryCache = new SLRUMap<HistoryCacheBaseKey, CachedHistory>(10, 10);
     myAnnotationCache = new SLRUMap<HistoryCacheWithRevisionKey, VcsAnnotation>(10, 5);
     //myContentCache = new SLRUMap<HistoryCacheWithRevisionKey, String>(20, 20);
+    myAnnotationDiskCache = project == null || project.isDefault() ? null : new VcsAnnotationDiskCache(project);
   }
 
   public <C extends Serializable, T extends VcsAbstractHistorySession> void put(final FilePath filePath,
@@ -111,6 +119,10 @@ public class VcsHistoryCache {
     synchronized (myLock) {
       myAnnotationCache.put(new HistoryCacheWithRevisionKey(filePath, vcsKey, number), vcsAnnotation);
     }
+    // disk cache has its own lock, do not block memory cache users on IO
+    if (myAnnotationDiskCache != null) {
+      myAnnotationDiskCache.put(filePath, vcsKey, number, vcsAnnotation);
+    }
   }
 
   public VcsAnnotation get(@NotNull final FilePath filePath, @NotNull final VcsKey vcsKey, @NotNull final VcsRevisionNumber number) {
@@ -119,6 +131,46 @@ public class VcsHistoryCache {
     }
   }
 
+  /**
+   * Looks for annotation in memory first and then in the persistent cache; annotation found on disk is put to memory cache
+   */
+  @Nullable
+  public VcsAnnotation get(@NotNull final FilePath filePath, @NotNull final AbstractVcs<?> vcs, @NotNull final VcsRevisionNumber number) {
+    final HistoryCacheWithRevisionKey key = new HistoryCacheWithRevisionKey(filePath, vcs.getKeyInstanceMethod(), number);
+    synchronized (myLock) {
+      final VcsAnnotation annotation = myAnnotationCache.get(key);
+      if (annotation != null) return annotation;
+    }
+    if (myAnnotationDiskCache == null) return null;
+    final VcsAnnotation persisted = myAnnotationDiskCache.get(filePath, vcs, number);
+    if (persisted == null) return null;
+    synchronized (myLock) {
+      final VcsAnnotation concurrent = myAnnotationCache.get(key);
+      if (concurrent != null) return concurrent;
+      myAnnotationCache.put(key, persisted);
+    }
+    return persisted;
+  }
+
+  public void clearAnnotations(@NotNull final VcsKey vcsKey) {
+    synchronized (myLock) {
+      for (Map.Entry<HistoryCacheWithRevisionKey, VcsAnnotation> entry : myAnnotationCache.entrySet()) {
+        if (vcsKey.equals(entry.getKey().getVcsKey())) {
+          myAnnotationCache.remove(entry.getKey());
+        }
+      }
+    }
+    if (myAnnotationDiskCache != null) {
+      myAnnotationDiskCache.clear(vcsKey);
+    }
+  }
+
+  public void dispose() {
+    if (myAnnotationDiskCache != null) {
+      myAnnotationDiskCache.close();
+    }
+  }
+
   public static class CachedHistory {
     private final FilePath myPath;
     private final List<VcsFileRevision> myRevisions;
@@ -43,12 +43,17 @@ abstract class AbstractIgnoredFilesHolder implements FileHolder, IgnoredFilesHol
   protected abstract void removeFile(final VirtualFile file);
   protected abstract Collection<VirtualFile> keys();
 
+  // called before iterating keys for the case they are not iterated when dropped
+  protected void removeDroppedKeys() {
+  }
+
   @Override
   public void cleanAndAdjustScope(final VcsModifiableDirtyScope scope) {
     ApplicationManager.getApplication().runReadAction(new Runnable() {
       public void run() {
         if (myProject.isDisposed()) return;
 
+        removeDroppedKeys();
         final Iterator<VirtualFile> iterator = keys().iterator();
         while (iterator.hasNext()) {
           final VirtualFile file = iterator.next();
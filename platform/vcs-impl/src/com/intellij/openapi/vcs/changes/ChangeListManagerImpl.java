@@ -45,6 +45,7 @@ import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.EditorNotifications;
 import com.intellij.util.*;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.concurrency.Semaphore;
 import com.intellij.util.containers.MultiMap;
 import com.intellij.util.continuation.ContinuationPause;
@@ -56,12 +57,17 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import javax.swing.*;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -85,6 +91,12 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     return VcsUtil.createExecutor("Change List Updater");
   }
 
+  // change providers of independent roots are called concurrently, but not more than this number at a time
+  private static final int ourMaxParallelProviderCalls =
+    Integer.getInteger("vcs.local.changes.parallel.calls", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+  private static final BoundedTaskExecutor ourProviderCallsExecutor =
+    new BoundedTaskExecutor(new PooledThreadExecutor(), ourMaxParallelProviderCalls);
+
   private final Modifier myModifier;
 
   private FileHolderComposite myComposite;
@@ -587,23 +599,40 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     final UpdatingChangeListBuilder builder = new UpdatingChangeListBuilder(dataHolder.getChangeListWorker(),
       dataHolder.getComposite(), myUpdater.getIsStoppedGetter(), myIgnoredIdeaLevel, gate);
 
+    final List<Pair<VcsModifiableDirtyScope, AbstractVcs<?>>> calls = new ArrayList<Pair<VcsModifiableDirtyScope, AbstractVcs<?>>>();
     for (final VcsDirtyScope scope : scopes) {
       if (DEBUG) {
         ChangeListManagerImpl.log("ChangeListManagerImpl.iterateScopes: scope = " + scope);
       }
       myUpdateChangesProgressIndicator.checkCanceled();
 
-      final AbstractVcs vcs = scope.getVcs();
+      final AbstractVcs<?> vcs = scope.getVcs();
       if (vcs == null) continue;
       scope.setWasEverythingDirty(wasEverythingDirty);
       final VcsModifiableDirtyScope adjustedScope = vcs.adjustDirtyScope((VcsModifiableDirtyScope) scope);
 
-      myChangesViewManager.setBusy(true);
-      dataHolder.notifyStartProcessingChanges(adjustedScope);
+      if (VcsType.distibuted.equals(vcs.getType()) && adjustedScope instanceof VcsDirtyScopeImpl) {
+        // roots of distributed vcs are independent repositories
+        for (VcsDirtyScopeImpl rootScope : ((VcsDirtyScopeImpl)adjustedScope).splitByRoots()) {
+          calls.add(Pair.<VcsModifiableDirtyScope, AbstractVcs<?>>create(rootScope, vcs));
+        }
+      } else {
+        calls.add(Pair.<VcsModifiableDirtyScope, AbstractVcs<?>>create(adjustedScope, vcs));
+      }
+    }
 
-      actualUpdate(builder, adjustedScope, vcs, dataHolder, gate);
+    if (calls.size() > 1 && ourMaxParallelProviderCalls > 1) {
+      iterateScopesConcurrently(dataHolder, calls, builder, gate);
+    } else {
+      for (Pair<VcsModifiableDirtyScope, AbstractVcs<?>> call : calls) {
+        myUpdateChangesProgressIndicator.checkCanceled();
+        myChangesViewManager.setBusy(true);
+        dataHolder.notifyStartProcessingChanges(call.getFirst());
+
+        actualUpdate(builder, call.getFirst(), call.getSecond(), dataHolder, gate);
 
-      if (myUpdateException != null) break;
+        if (myUpdateException != null) break;
+      }
     }
     synchronized (myDataLock) {
       if (myAdditionalInfo == null) {
@@ -612,6 +641,75 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     }
   }
 
+  /**
+   * Change providers are called on pooled threads, the results are applied on this thread in the order of scopes,
+   * so they do not depend on which provider finishes first
+   */
+  private void iterateScopesConcurrently(final DataHolder dataHolder, final List<Pair<VcsModifiableDirtyScope, AbstractVcs<?>>> calls,
+                                         final UpdatingChangeListBuilder builder, final ChangeListManagerGate gate) {
+    final ChangeListManagerGate synchronizedGate = new SynchronizedGate(gate);
+    final List<ChangeProviderCall> tasks = new ArrayList<ChangeProviderCall>(calls.size());
+    final List<Future<?>> futures = new ArrayList<Future<?>>(calls.size());
+    for (Pair<VcsModifiableDirtyScope, AbstractVcs<?>> call : calls) {
+      final ChangeProviderCall task = new ChangeProviderCall(call.getSecond(), call.getFirst(), synchronizedGate,
+                                                             myUpdateChangesProgressIndicator);
+      tasks.add(task);
+      futures.add(ourProviderCallsExecutor.submit(task));
+    }
+    myChangesViewManager.setBusy(true);
+
+    try {
+      for (int i = 0; i < tasks.size(); i++) {
+        final ChangeProviderCall task = tasks.get(i);
+        waitFor(futures.get(i));
+        debugLogging("change provider call: " + task);
+
+        if (task.getError() != null) {
+          Rethrow.reThrowRuntime(task.getError());
+        }
+        dataHolder.notifyStartProcessingChanges(task.getScope());
+        try {
+          if (task.isCanceled()) continue;
+          builder.setCurrent(task.getScope(), new FoldersCutDownWorker());
+          task.getBuilder().replay(builder);
+          if (task.getException() != null) {
+            handleUpdateException(task.getException());
+          }
+        }
+        finally {
+          if (!myUpdater.isStopped()) {
+            dataHolder.notifyDoneProcessingChanges();
+          }
+        }
+        if (myUpdateException != null) break;
+      }
+    }
+    finally {
+      for (ChangeProviderCall task : tasks) {
+        task.cancel();
+      }
+    }
+  }
+
+  private void waitFor(final Future<?> future) {
+    while (true) {
+      myUpdateChangesProgressIndicator.checkCanceled();
+      try {
+        future.get(100, TimeUnit.MILLISECONDS);
+        return;
+      }
+      catch (TimeoutException ignore) {
+      }
+      catch (InterruptedException e) {
+        throw new ProcessCanceledException();
+      }
+      catch (ExecutionException e) {
+        LOG.error(e);
+        return;
+      }
+    }
+  }
+
   private void clearCurrentRevisionsCache(final VcsInvalidated invalidated) {
     final ContentRevisionCache cache = ProjectLevelVcsManager.getInstance(myProject).getContentRevisionCache();
     if (invalidated.isEverythingDirty()) {
@@ -1596,4 +1694,68 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
   public static void log(Object o) {
     log.append(o).append("\n");
   }
+
+  private static class SynchronizedGate implements ChangeListManagerGate {
+    private final ChangeListManagerGate myDelegate;
+
+    private SynchronizedGate(final ChangeListManagerGate delegate) {
+      myDelegate = delegate;
+    }
+
+    @Override
+    public synchronized List<LocalChangeList> getListsCopy() {
+      return myDelegate.getListsCopy();
+    }
+
+    @Nullable
+    @Override
+    public synchronized LocalChangeList findChangeList(String name) {
+      return myDelegate.findChangeList(name);
+    }
+
+    @Override
+    public synchronized LocalChangeList addChangeList(String name, String comment) {
+      return myDelegate.addChangeList(name, comment);
+    }
+
+    @Override
+    public synchronized LocalChangeList findOrCreateList(String name, String comment) {
+      return myDelegate.findOrCreateList(name, comment);
+    }
+
+    @Override
+    public synchronized void editComment(String name, String comment) {
+      myDelegate.editComment(name, comment);
+    }
+
+    @Override
+    public synchronized void editName(String oldName, String newName) {
+      myDelegate.editName(oldName, newName);
+    }
+
+    @Override
+    public synchronized void moveChanges(String toList, Collection<Change> changes) {
+      myDelegate.moveChanges(toList, changes);
+    }
+
+    @Override
+    public synchronized void setListsToDisappear(Collection<String> names) {
+      myDelegate.setListsToDisappear(names);
+    }
+
+    @Override
+    public synchronized FileStatus getStatus(VirtualFile file) {
+      return myDelegate.getStatus(file);
+    }
+
+    @Override
+    public synchronized FileStatus getStatus(File file) {
+      return myDelegate.getStatus(file);
+    }
+
+    @Override
+    public synchronized void setDefaultChangeList(@NotNull String list) {
+      myDelegate.setDefaultChangeList(list);
+    }
+  }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.ide.util.DelegatingProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.vcs.AbstractVcs;
+import com.intellij.openapi.vcs.VcsException;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * One change provider call made on a pooled thread during local changes refresh.
+ * Results are recorded and should be replayed into the real builder on the refresh thread, see {@link RecordingChangelistBuilder}.
+ */
+class ChangeProviderCall implements Runnable {
+  private final AbstractVcs<?> myVcs;
+  private final VcsModifiableDirtyScope myScope;
+  private final ChangeListManagerGate myGate;
+  private final RecordingChangelistBuilder myBuilder;
+  private final CallIndicator myIndicator;
+
+  @Nullable private VcsException myException;
+  @Nullable private Throwable myError;
+  private long myTime;
+
+  /**
+   * @param indicator indicator of the whole refresh: its cancellation stops the call too
+   */
+  ChangeProviderCall(final AbstractVcs<?> vcs, final VcsModifiableDirtyScope scope, final ChangeListManagerGate gate,
+                     final ProgressIndicator indicator) {
+    myVcs = vcs;
+    myScope = scope;
+    myGate = gate;
+    myBuilder = new RecordingChangelistBuilder(false);
+    myIndicator = new CallIndicator(indicator);
+  }
+
+  @Override
+  public void run() {
+    final long start = System.currentTimeMillis();
+    try {
+      final ChangeProvider changeProvider = myVcs.getChangeProvider();
+      if (changeProvider != null && ! myIndicator.isCanceled()) {
+        changeProvider.getChanges(myScope, myBuilder, myIndicator, myGate);
+      }
+    }
+    catch (VcsException e) {
+      myException = e;
+    }
+    catch (ProcessCanceledException ignore) {
+    }
+    catch (Throwable t) {
+      myError = t;
+    }
+    finally {
+      myTime = System.currentTimeMillis() - start;
+    }
+  }
+
+  public void cancel() {
+    myIndicator.cancel();
+  }
+
+  public boolean isCanceled() {
+    return myIndicator.isCanceled();
+  }
+
+  public AbstractVcs<?> getVcs() {
+    return myVcs;
+  }
+
+  public VcsModifiableDirtyScope getScope() {
+    return myScope;
+  }
+
+  public RecordingChangelistBuilder getBuilder() {
+    return myBuilder;
+  }
+
+  @Nullable
+  public VcsException getException() {
+    return myException;
+  }
+
+  @Nullable
+  public Throwable getError() {
+    return myError;
+  }
+
+  public long getTime() {
+    return myTime;
+  }
+
+  @Override
+  public String toString() {
+    return myVcs.getName() + " " + myScope.getAffectedContentRoots() + ": " + myTime + " ms, " + myBuilder.size() + " records" +
+           (isCanceled() ? ", canceled" : "");
+  }
+
+  /**
+   * Forwards everything to the refresh indicator, but can also be canceled alone, without canceling the refresh
+   */
+  private static class CallIndicator extends DelegatingProgressIndicator {
+    private volatile boolean myCanceled;
+
+    private CallIndicator(final ProgressIndicator indicator) {
+      super(indicator);
+    }
+
+    @Override
+    public void cancel() {
+      myCanceled = true;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return myCanceled || super.isCanceled();
+    }
+
+    @Override
+    public void checkCanceled() {
+      super.checkCanceled();
+      if (myCanceled) throw new ProcessCanceledException();
+    }
+  }
+}
@@ -19,10 +19,8 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.AbstractVcs;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.util.containers.hash.HashSet;
 
 import java.util.Collection;
-import java.util.Set;
 
 /**
  * @author irengrig
@@ -32,13 +30,19 @@ import java.util.Set;
 public class MapIgnoredFilesHolder extends AbstractIgnoredFilesHolder {
   private final static Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.changes.MapIgnoredFilesHolder");
 
-  private final Set<VirtualFile> mySet;
+  // an ignored directory stands for all files under it: files under ignored directories are not stored separately
+  private final VirtualFileIdSet mySet;
   private final Project myProject;
+  private boolean myHasDirectoriesAdded;
 
   public MapIgnoredFilesHolder(Project project) {
+    this(project, new VirtualFileIdSet());
+  }
+
+  private MapIgnoredFilesHolder(Project project, final VirtualFileIdSet set) {
     super(project);
     myProject = project;
-    mySet = new HashSet<VirtualFile>();
+    mySet = set;
   }
 
   @Override
@@ -51,33 +55,51 @@ public class MapIgnoredFilesHolder extends AbstractIgnoredFilesHolder {
     return mySet;
   }
 
+  @Override
+  protected void removeDroppedKeys() {
+    mySet.removeDropped();
+  }
+
   @Override
   public void addFile(VirtualFile file) {
     // todo fix more. take from x0x branch
     //LOG.assertTrue(! file.isDirectory());
+    if (mySet.containsFileOrParent(file.getParent())) return;
     mySet.add(file);
+    if (file.isDirectory()) {
+      myHasDirectoriesAdded = true;
+    }
   }
 
   @Override
   public boolean containsFile(VirtualFile file) {
-    return mySet.contains(file);
+    return mySet.containsFileOrParent(file);
   }
 
   @Override
   public Collection<VirtualFile> values() {
+    collapseUnderDirectories();
     return mySet;
   }
 
+  // directory can be reported after the files under it
+  private void collapseUnderDirectories() {
+    if (myHasDirectoriesAdded) {
+      mySet.removeUnderContainedDirectories();
+      myHasDirectoriesAdded = false;
+    }
+  }
+
   @Override
   public void cleanAll() {
     mySet.clear();
+    myHasDirectoriesAdded = false;
   }
 
   @Override
   public FileHolder copy() {
-    final MapIgnoredFilesHolder result = new MapIgnoredFilesHolder(myProject);
-    result.mySet.addAll(mySet);
-    return result;
+    collapseUnderDirectories();
+    return new MapIgnoredFilesHolder(myProject, new VirtualFileIdSet(mySet));
   }
 
   @Override
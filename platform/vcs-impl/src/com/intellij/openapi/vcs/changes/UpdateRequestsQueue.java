@@ -34,17 +34,23 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * ChangeListManager updates scheduler.
  * Tries to zip several update requests into one (if starts and see several requests in the queue)
+ * While requests keep coming (for instance, build is writing lots of files), the update is postponed until there are no requests
+ * for a "quiet period", but not longer than "max latency" after the first postponed request
  * own inner synchronization
  */
 @SomeQueue
 public class UpdateRequestsQueue {
   private final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.changes.UpdateRequestsQueue");
   private static final String ourHeavyLatchOptimization = "vcs.local.changes.track.heavy.latch";
+  private static final int ourQuietPeriod = Integer.getInteger("vcs.local.changes.quiet.period", 300);
+  private static final int ourMaxLatency = Integer.getInteger("vcs.local.changes.max.latency", 3000);
   private final Project myProject;
   private final AtomicReference<ScheduledExecutorService> myExecutor;
   private final Runnable myDelegate;
@@ -62,6 +68,10 @@ public class UpdateRequestsQueue {
   private final StartupManager myStartupManager;
   private final boolean myTrackHeavyLatch;
   private final Getter<Boolean> myIsStoppedGetter;
+  // time of the first request zipped into the submitted update, and of the last one
+  private long myFirstRequestTime;
+  private long myLastRequestTime;
+  private final Statistics myStatistics = new Statistics();
 
   public UpdateRequestsQueue(final Project project, final AtomicReference<ScheduledExecutorService> executor, final Runnable delegate) {
     myProject = project;
@@ -102,14 +112,19 @@ public class UpdateRequestsQueue {
       if (! myStarted && ApplicationManager.getApplication().isUnitTestMode()) return;
 
       if (! myStopped) {
+        final long now = System.currentTimeMillis();
+        myLastRequestTime = now;
         if (! myRequestSubmitted) {
           if (ChangeListManagerImpl.DEBUG) {
             ChangeListManagerImpl.log("UpdateRequestsQueue.schedule");
           }
           final MyRunnable runnable = new MyRunnable();
           myRequestSubmitted = true;
-          myExecutor.get().schedule(runnable, 300, TimeUnit.MILLISECONDS);
+          myFirstRequestTime = now;
+          myExecutor.get().schedule(runnable, ourQuietPeriod, TimeUnit.MILLISECONDS);
           LOG.debug("Scheduled for project: " + myProject.getName() + ", runnable: " + runnable.hashCode());
+        } else {
+          myStatistics.myZippedRequests.incrementAndGet();
         }
       }
     }
@@ -266,6 +281,14 @@ public class UpdateRequestsQueue {
             return;
           }
 
+          final long postpone = getPostponeTime(System.currentTimeMillis());
+          if (postpone > 0) {
+            // requests are still coming; myRequestSubmitted remains set, so they would be zipped into this update
+            LOG.debug("MyRunnable: postpone for " + postpone + " ms, project: " + myProject.getName() + ", runnable: " + hashCode());
+            myExecutor.get().schedule(this, postpone, TimeUnit.MILLISECONDS);
+            return;
+          }
+
           copy.addAll(myWaitingUpdateCompletionQueue);
           myRequestSubmitted = false;
         }
@@ -275,7 +298,12 @@ public class UpdateRequestsQueue {
           ChangeListManagerImpl.log("UpdateRequestsQueue$MyRunnable.run");
         }
 
+        final long start = System.currentTimeMillis();
         myDelegate.run();
+        myStatistics.updateFinished(System.currentTimeMillis() - start);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("MyRunnable: " + myStatistics + ", project: " + myProject.getName());
+        }
         if (ChangeListManagerImpl.DEBUG) {
           ChangeListManagerImpl.log(" - end - UpdateRequestsQueue$MyRunnable.run");
         }
@@ -302,7 +330,52 @@ public class UpdateRequestsQueue {
     }
   }
 
+  // should be called under lock
+  private long getPostponeTime(final long now) {
+    // somebody is waiting for the update - do not delay it
+    if (! myWaitingUpdateCompletionSemaphores.isEmpty() || ! myWaitingUpdateCompletionQueue.isEmpty() ||
+        ApplicationManager.getApplication().isUnitTestMode()) {
+      return 0;
+    }
+    return getPostponeTime(myFirstRequestTime, myLastRequestTime, now, ourQuietPeriod, ourMaxLatency);
+  }
+
+  /**
+   * @return how long to wait until there were no requests for the quiet period, but not longer than max latency after the first one;
+   * 0 if the update should start now
+   */
+  static long getPostponeTime(final long firstRequestTime, final long lastRequestTime, final long now,
+                              final long quietPeriod, final long maxLatency) {
+    final long quietTimeLeft = lastRequestTime + quietPeriod - now;
+    final long latencyLeft = firstRequestTime + maxLatency - now;
+    return Math.max(0, Math.min(quietTimeLeft, latencyLeft));
+  }
+
   public void setIgnoreBackgroundOperation(boolean ignoreBackgroundOperation) {
     myIgnoreBackgroundOperation = ignoreBackgroundOperation;
   }
+
+  // written to the debug log after every update
+  private static class Statistics {
+    private final AtomicInteger myUpdates = new AtomicInteger();
+    // requests that came while an update was already submitted
+    private final AtomicInteger myZippedRequests = new AtomicInteger();
+    private final AtomicLong myTotalTime = new AtomicLong();
+    private final AtomicLong myMaxTime = new AtomicLong();
+
+    private void updateFinished(final long time) {
+      myUpdates.incrementAndGet();
+      myTotalTime.addAndGet(time);
+      while (true) {
+        final long max = myMaxTime.get();
+        if (time <= max || myMaxTime.compareAndSet(max, time)) break;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "updates: " + myUpdates + ", zipped requests: " + myZippedRequests + ", total time: " + myTotalTime + " ms, max time: " +
+             myMaxTime + " ms";
+    }
+  }
 }
@@ -184,6 +184,9 @@ public class VcsAnnotationLocalChangesListenerImpl implements Disposable, VcsAnn
 
   private void closeForVcs(final Set<VcsKey> refresh) {
     if (refresh.isEmpty()) return;
+    for (VcsKey key : refresh) {
+      myVcsManager.getVcsHistoryCache().clearAnnotations(key);
+    }
     final Set<FileAnnotation> copy = new HashSet<FileAnnotation>();
     synchronized (myLock) {
       for (FileAnnotation annotation : myFileAnnotationMap.values()) {
@@ -166,6 +166,34 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
     return result;
   }
 
+  /**
+   * @return scopes, one per affected vcs root, together containing the same dirty data as this scope
+   */
+  public List<VcsDirtyScopeImpl> splitByRoots() {
+    final Set<VirtualFile> roots = new HashSet<VirtualFile>(myDirtyFiles.keySet());
+    roots.addAll(myDirtyDirectoriesRecursively.keySet());
+    if (roots.size() <= 1) return Collections.singletonList(this);
+
+    final List<VcsDirtyScopeImpl> result = new ArrayList<VcsDirtyScopeImpl>(roots.size());
+    for (VirtualFile root : roots) {
+      final VcsDirtyScopeImpl scope = new VcsDirtyScopeImpl(myVcs, myProject);
+      final THashSet<FilePath> files = myDirtyFiles.get(root);
+      if (files != null) {
+        scope.myDirtyFiles.put(root, new THashSet<FilePath>((Collection<FilePath>)files));
+      }
+      final THashSet<FilePath> dirs = myDirtyDirectoriesRecursively.get(root);
+      if (dirs != null) {
+        scope.myDirtyDirectoriesRecursively.put(root, new THashSet<FilePath>((Collection<FilePath>)dirs));
+      }
+      scope.myAffectedContentRoots.add(root);
+      scope.myWasEverythingDirty = myWasEverythingDirty;
+      // recursively dirty directory contains a nested root: it is processed together with the outer root, so roots are not independent
+      if (scope.getAffectedContentRootsWithCheck().size() > 1) return Collections.singletonList(this);
+      result.add(scope);
+    }
+    return result;
+  }
+
   @Override
   public boolean isRecursivelyDirty(final VirtualFile vf) {
     for(THashSet<FilePath> dirsByRoot: myDirtyDirectoriesRecursively.values()) {
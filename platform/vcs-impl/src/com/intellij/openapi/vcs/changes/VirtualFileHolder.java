@@ -29,14 +29,18 @@ import java.util.*;
  * @author max
  */
 public class VirtualFileHolder implements FileHolder {
-  private final Set<VirtualFile> myFiles = new HashSet<VirtualFile>();
+  private final VirtualFileIdSet myFiles;
   private final Project myProject;
   private final HolderType myType;
-  private int myNumDirs;
 
   public VirtualFileHolder(Project project, final HolderType type) {
+    this(project, type, new VirtualFileIdSet());
+  }
+
+  private VirtualFileHolder(Project project, final HolderType type, final VirtualFileIdSet files) {
     myProject = project;
     myType = type;
+    myFiles = files;
   }
 
   public HolderType getType() {
@@ -49,7 +53,6 @@ public class VirtualFileHolder implements FileHolder {
 
   public void cleanAll() {
     myFiles.clear();
-    myNumDirs = 0;
   }
 
   // returns number of removed directories
@@ -76,6 +79,7 @@ public class VirtualFileHolder implements FileHolder {
             }
           }
           if (cleanDroppedFiles) {
+            result += removeDroppedIds(files);
             for (Iterator<VirtualFile> iterator = files.iterator(); iterator.hasNext();) {
               final VirtualFile file = iterator.next();
               if (fileDropped(file)) {
@@ -87,6 +91,7 @@ public class VirtualFileHolder implements FileHolder {
           }
         }
         else {
+          result += removeDroppedIds(files);
           for (Iterator<VirtualFile> iterator = files.iterator(); iterator.hasNext();) {
             final VirtualFile file = iterator.next();
             final boolean fileDropped = fileDropped(file);
@@ -105,24 +110,24 @@ public class VirtualFileHolder implements FileHolder {
   }
 
   public void cleanAndAdjustScope(final VcsModifiableDirtyScope scope) {
-    myNumDirs -= cleanScope(myProject, myFiles, scope);
+    cleanScope(myProject, myFiles, scope);
   }
 
   private static boolean fileDropped(final VirtualFile file) {
     return ! file.isValid();
   }
 
+  // deleted files stored by id can not be iterated, and their paths are made dirty by VFS events anyway
+  private static int removeDroppedIds(final Collection<VirtualFile> files) {
+    return files instanceof VirtualFileIdSet ? ((VirtualFileIdSet)files).removeDropped() : 0;
+  }
+
   public void addFile(VirtualFile file) {
     myFiles.add(file);
-    if (file.isDirectory()) ++ myNumDirs;
   }
 
   public void removeFile(VirtualFile file) {
-    if (myFiles.remove(file)) {
-      if (file.isDirectory()) {
-        -- myNumDirs;
-      }
-    }
+    myFiles.remove(file);
   }
 
   // todo track number of copies made
@@ -131,10 +136,7 @@ public class VirtualFileHolder implements FileHolder {
   }
 
   public VirtualFileHolder copy() {
-    final VirtualFileHolder copyHolder = new VirtualFileHolder(myProject, myType);
-    copyHolder.myFiles.addAll(myFiles);
-    copyHolder.myNumDirs = myNumDirs;
-    return copyHolder;
+    return new VirtualFileHolder(myProject, myType, new VirtualFileIdSet(myFiles));
   }
 
   public boolean containsFile(final VirtualFile file) {
@@ -161,7 +163,6 @@ public class VirtualFileHolder implements FileHolder {
   }
 
   public int getNumDirs() {
-    assert myNumDirs >= 0;
-    return myNumDirs;
+    return myFiles.getNumDirs();
   }
 }
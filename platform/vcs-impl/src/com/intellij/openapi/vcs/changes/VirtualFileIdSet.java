@@ -0,0 +1,256 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWithId;
+import com.intellij.openapi.vfs.newvfs.ManagingFS;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntProcedure;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Set of virtual files stored as VFS file ids: an int per file instead of a hash entry holding the file object,
+ * which matters for unversioned/ignored files of big working trees (build output etc.).
+ * Files are resolved back by id when iterated; files that can not be found anymore (deleted) are skipped,
+ * and are not counted by {@link #size()} either. Their ids stay in the set until the owner calls {@link #removeDropped()}
+ * while cleaning dropped files.
+ * Files without id (not from persistent file system) are kept as is.
+ *
+ * Not thread-safe.
+ */
+public class VirtualFileIdSet extends AbstractSet<VirtualFile> {
+  private final TIntHashSet myIds;
+  private final TIntHashSet myDirIds;
+  private final Set<VirtualFile> myOther;
+
+  public VirtualFileIdSet() {
+    myIds = new TIntHashSet();
+    myDirIds = new TIntHashSet();
+    myOther = new HashSet<VirtualFile>();
+  }
+
+  public VirtualFileIdSet(@NotNull final VirtualFileIdSet set) {
+    myIds = (TIntHashSet)set.myIds.clone();
+    myDirIds = (TIntHashSet)set.myDirIds.clone();
+    myOther = new HashSet<VirtualFile>(set.myOther);
+  }
+
+  @Override
+  public boolean add(final VirtualFile file) {
+    if (file instanceof VirtualFileWithId) {
+      final int id = ((VirtualFileWithId)file).getId();
+      if (id > 0) {
+        if (file.isDirectory()) {
+          myDirIds.add(id);
+        }
+        return myIds.add(id);
+      }
+    }
+    return myOther.add(file);
+  }
+
+  @Override
+  public boolean remove(final Object o) {
+    if (o instanceof VirtualFileWithId) {
+      final int id = ((VirtualFileWithId)o).getId();
+      if (id > 0) {
+        myDirIds.remove(id);
+        return myIds.remove(id);
+      }
+    }
+    return myOther.remove(o);
+  }
+
+  @Override
+  public boolean removeAll(final Collection<?> c) {
+    // never iterate this set: it would resolve all the ids
+    boolean modified = false;
+    for (Object o : c) {
+      modified |= remove(o);
+    }
+    return modified;
+  }
+
+  @Override
+  public boolean contains(final Object o) {
+    if (o instanceof VirtualFileWithId) {
+      final int id = ((VirtualFileWithId)o).getId();
+      if (id > 0) {
+        return myIds.contains(id);
+      }
+    }
+    return myOther.contains(o);
+  }
+
+  /**
+   * @return whether the file itself or any of its parents is in the set
+   */
+  public boolean containsFileOrParent(@Nullable VirtualFile file) {
+    while (file != null) {
+      if (contains(file)) return true;
+      file = file.getParent();
+    }
+    return false;
+  }
+
+  /**
+   * Removes files one of parents of which is also in the set
+   * @return number of removed files
+   */
+  public int removeUnderContainedDirectories() {
+    if (myDirIds.isEmpty()) return 0;
+    int result = 0;
+    for (Iterator<VirtualFile> iterator = iterator(); iterator.hasNext(); ) {
+      final VirtualFile file = iterator.next();
+      if (containsFileOrParent(file.getParent())) {
+        iterator.remove();
+        ++ result;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Removes ids of files that can not be found anymore (deleted)
+   * @return number of removed directories
+   */
+  public int removeDropped() {
+    final ManagingFS fs = ManagingFS.getInstance();
+    int result = 0;
+    for (int id : myIds.toArray()) {
+      if (fs.findFileById(id) == null) {
+        myIds.remove(id);
+        if (myDirIds.remove(id)) ++ result;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    return countFound(myIds) + myOther.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return ! iterator().hasNext();
+  }
+
+  public int getNumDirs() {
+    int result = countFound(myDirIds);
+    for (VirtualFile file : myOther) {
+      if (file.isDirectory()) ++ result;
+    }
+    return result;
+  }
+
+  @Override
+  public void clear() {
+    myIds.clear();
+    myDirIds.clear();
+    myOther.clear();
+  }
+
+  private static int countFound(final TIntHashSet ids) {
+    final ManagingFS fs = ManagingFS.getInstance();
+    final int[] result = new int[1];
+    ids.forEach(new TIntProcedure() {
+      @Override
+      public boolean execute(int id) {
+        if (fs.findFileById(id) != null) ++ result[0];
+        return true;
+      }
+    });
+    return result[0];
+  }
+
+  @Override
+  public Iterator<VirtualFile> iterator() {
+    return new MyIterator();
+  }
+
+  /**
+   * Iterates over a snapshot of ids, so the set can be modified during iteration
+   */
+  private class MyIterator implements Iterator<VirtualFile> {
+    private final int[] myIdsSnapshot = myIds.toArray();
+    private final Iterator<VirtualFile> myOtherIterator = myOther.iterator();
+    private int myIndex;
+    private VirtualFile myNext;
+    private VirtualFile myLast;
+    private boolean myLastFromOther;
+
+    private MyIterator() {
+      findNext();
+    }
+
+    private void findNext() {
+      myNext = null;
+      if (myIndex < myIdsSnapshot.length) {
+        final ManagingFS fs = ManagingFS.getInstance();
+        while (myIndex < myIdsSnapshot.length) {
+          final int id = myIdsSnapshot[myIndex++];
+          final VirtualFile file = fs.findFileById(id);
+          if (file != null) {
+            myNext = file;
+            return;
+          }
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return myNext != null || myOtherIterator.hasNext();
+    }
+
+    @Override
+    public VirtualFile next() {
+      if (myNext != null) {
+        myLast = myNext;
+        myLastFromOther = false;
+        findNext();
+      }
+      else {
+        myLast = myOtherIterator.next();
+        myLastFromOther = true;
+      }
+      return myLast;
+    }
+
+    @Override
+    public void remove() {
+      if (myLast == null) throw new IllegalStateException();
+      if (myLastFromOther) {
+        myOtherIterator.remove();
+      }
+      else {
+        final int id = ((VirtualFileWithId)myLast).getId();
+        myIds.remove(id);
+        myDirIds.remove(id);
+      }
+      myLast = null;
+    }
+  }
+}
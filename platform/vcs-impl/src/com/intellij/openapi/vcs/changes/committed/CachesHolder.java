@@ -103,6 +103,12 @@ public class CachesHolder {
     myCacheFiles.clear();
   }
 
+  public void closeAllCaches() {
+    for (ChangesCacheFile cacheFile : myCacheFiles.values()) {
+      cacheFile.close();
+    }
+  }
+
   public List<ChangesCacheFile> getAllCaches() {
     final List<ChangesCacheFile> result = new ArrayList<ChangesCacheFile>();
     iterateAllCaches(new NotNullFunction<ChangesCacheFile, Boolean>() {
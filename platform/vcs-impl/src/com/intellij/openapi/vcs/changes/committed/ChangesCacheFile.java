@@ -30,6 +30,7 @@ import com.intellij.openapi.vcs.versionBrowser.ChangeBrowserSettings;
 import com.intellij.openapi.vcs.versionBrowser.CommittedChangeList;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.containers.FactoryMap;
+import com.intellij.util.io.PersistentHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 
@@ -45,8 +46,12 @@ public class ChangesCacheFile {
 
   private final File myPath;
   private final File myIndexPath;
+  private final File myPathIndexPath;
   private RandomAccessFile myStream;
   private RandomAccessFile myIndexStream;
+  // opened once with the first streams opening and kept open, null if failed
+  @Nullable private ChangesCachePathIndex myPathIndex;
+  private boolean myPathIndexOpened;
   private boolean myStreamsOpen;
   private final Project myProject;
   private final AbstractVcs myVcs;
@@ -71,6 +76,7 @@ public class ChangesCacheFile {
     myProject = project;
     myPath = path;
     myIndexPath = new File(myPath.toString() + INDEX_EXTENSION);
+    myPathIndexPath = ChangesCachePathIndex.getIndexFile(myPath);
     myVcs = vcs;
     myChangesProvider = (CachingCommittedChangesProvider) vcs.getCommittedChangesProvider();
     myVcsManager = ProjectLevelVcsManager.getInstance(project);
@@ -109,11 +115,15 @@ public class ChangesCacheFile {
     catch(VersionMismatchException ex) {
       myPath.delete();
       myIndexPath.delete();
+      close();
+      PersistentHashMap.deleteFilesStartingWith(myPathIndexPath);
       return true;
     }
     catch(EOFException ex) {
       myPath.delete();
       myIndexPath.delete();
+      close();
+      PersistentHashMap.deleteFilesStartingWith(myPathIndexPath);
       return true;
     }
 
@@ -129,6 +139,16 @@ public class ChangesCacheFile {
     catch (IOException e) {
       //
     }
+    close();
+    PersistentHashMap.deleteFilesStartingWith(myPathIndexPath);
+  }
+
+  /**
+   * Releases the path index kept open between operations; it is reopened on the next access
+   */
+  public void close() {
+    closePathIndex();
+    myPathIndexOpened = false;
   }
 
   public List<CommittedChangeList> writeChanges(final List<CommittedChangeList> changes) throws IOException {
@@ -174,9 +194,11 @@ public class ChangesCacheFile {
         //noinspection unchecked
         myChangesProvider.writeChangeList(myStream, list);
         updateCachedRange(list);
+        addToPathIndex(list, (int) (myIndexStream.length() / INDEX_ENTRY_SIZE));
         writeIndexEntry(list.getNumber(), list.getCommitDate().getTime(), position, present == null ? false : iterator.next());
         myIncomingCount++;
       }
+      updatePathIndexLength();
       writeHeader();
       myHeaderLoaded = true;
     }
@@ -216,6 +238,10 @@ public class ChangesCacheFile {
     myStream = new RandomAccessFile(myPath, "rw");
     myIndexStream = new RandomAccessFile(myIndexPath, "rw");
     myStreamsOpen = true;
+    if (! myPathIndexOpened) {
+      myPathIndexOpened = true;
+      openPathIndex();
+    }
   }
 
   private void closeStreams() throws IOException {
@@ -229,6 +255,76 @@ public class ChangesCacheFile {
       if (myIndexStream != null) {
         myIndexStream.close();
       }
+      if (myPathIndex != null) {
+        myPathIndex.force();
+      }
+    }
+  }
+
+  private void openPathIndex() {
+    try {
+      myPathIndex = new ChangesCachePathIndex(myPathIndexPath, myRootPath);
+      if (myPathIndex.getIndexedLength() != myIndexStream.length()) {
+        // missing, or left incomplete (e.g. by a crash): records of some changelists may be absent
+        closePathIndex();
+        PersistentHashMap.deleteFilesStartingWith(myPathIndexPath);
+        myPathIndex = new ChangesCachePathIndex(myPathIndexPath, myRootPath);
+        rebuildPathIndex();
+      }
+    }
+    catch (IOException e) {
+      dropPathIndex(e);
+    }
+  }
+
+  private void rebuildPathIndex() throws IOException {
+    debug("Building path index for cache of " + myLocation);
+    final long totalCount = myIndexStream.length() / INDEX_ENTRY_SIZE;
+    for (int i = 0; i < totalCount && myPathIndex != null; i++) {
+      myIndexStream.seek((long) i * INDEX_ENTRY_SIZE);
+      final IndexEntry e = new IndexEntry();
+      readIndexEntry(e);
+      addToPathIndex(loadChangeListAt(e.offset), i);
+    }
+    updatePathIndexLength();
+  }
+
+  private void addToPathIndex(final CommittedChangeList list, final int entryNumber) {
+    if (myPathIndex == null) return;
+    try {
+      myPathIndex.add(list, entryNumber);
+    }
+    catch (IOException e) {
+      dropPathIndex(e);
+    }
+  }
+
+  private void updatePathIndexLength() {
+    if (myPathIndex == null) return;
+    try {
+      myPathIndex.setIndexedLength(myIndexStream.length());
+    }
+    catch (IOException e) {
+      dropPathIndex(e);
+    }
+  }
+
+  // the index is only an accelerator, continue without it; it is rebuilt when the cache is opened next time
+  private void dropPathIndex(final IOException e) {
+    LOG.info(e);
+    closePathIndex();
+    PersistentHashMap.deleteFilesStartingWith(myPathIndexPath);
+  }
+
+  private void closePathIndex() {
+    if (myPathIndex != null) {
+      try {
+        myPathIndex.close();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+      myPathIndex = null;
     }
   }
 
@@ -493,6 +589,47 @@ public class ChangesCacheFile {
     }
   }
 
+  /**
+   * @return changelists that changed the given path or anything under it, in direct chronological order
+   */
+  public List<CommittedChangeList> readChangesUnder(final FilePath path) throws IOException {
+    openStreams();
+    try {
+      final List<CommittedChangeList> result = new ArrayList<CommittedChangeList>();
+      if (myPathIndex == null) {
+        myStream.seek(HEADER_SIZE);  // skip header
+        while(myStream.getFilePointer() < myStream.length()) {
+          final CommittedChangeList changeList = myChangesProvider.readChangeList(myLocation, myStream);
+          if (isUnder(changeList, path)) {
+            result.add(changeList);
+          }
+        }
+        return result;
+      }
+      for (int number : myPathIndex.getExactOrUnder(path)) {
+        myIndexStream.seek((long) number * INDEX_ENTRY_SIZE);
+        final IndexEntry e = new IndexEntry();
+        readIndexEntry(e);
+        result.add(loadChangeListAt(e.offset));
+      }
+      return result;
+    }
+    finally {
+      closeStreams();
+    }
+  }
+
+  private static boolean isUnder(final CommittedChangeList changeList, final FilePath path) {
+    for (Change change : changeList.getChanges()) {
+      final ContentRevision before = change.getBeforeRevision();
+      final ContentRevision after = change.getAfterRevision();
+      if ((before != null && before.getFile().isUnder(path, false)) || (after != null && after.getFile().isUnder(path, false))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public boolean hasCompleteHistory() {
     return myHaveCompleteHistory;
   }
@@ -1007,29 +1144,31 @@ public class ChangesCacheFile {
     // subsequent committed changelists, regardless of whether they are in "incoming" status.
     private boolean wasSubsequentlyDeleted(final FilePath file, long indexOffset) {
       try {
+        if (myPathIndex != null) {
+          // only changelists that touched the file itself or one of its parents can delete it
+          final long firstNumber = indexOffset / INDEX_ENTRY_SIZE + 1;
+          final Set<Integer> candidates = new TreeSet<Integer>();
+          for (FilePath path = file; path != null; path = path.getParentPath()) {
+            for (int number : myPathIndex.getExact(path)) {
+              if (number >= firstNumber) {
+                candidates.add(number);
+              }
+            }
+          }
+          for (Integer number : candidates) {
+            if (isDeletedIn(file, getChangeListAtOffset(getIndexEntryAtOffset((long) number * INDEX_ENTRY_SIZE).offset))) {
+              return true;
+            }
+          }
+          return false;
+        }
         indexOffset += INDEX_ENTRY_SIZE;
         while(indexOffset < myIndexStream.length()) {
           IndexEntry e = getIndexEntryAtOffset(indexOffset);
 
           final CommittedChangeList changeList = getChangeListAtOffset(e.offset);
-          for(Change c: changeList.getChanges()) {
-            final ContentRevision beforeRevision = c.getBeforeRevision();
-            if ((beforeRevision != null) && (c.getAfterRevision() == null)) {
-              if (file.getIOFile().getAbsolutePath().equals(beforeRevision.getFile().getIOFile().getAbsolutePath()) ||
-                  file.isUnder(beforeRevision.getFile(), false)) {
-                debug("Found subsequent deletion for file " + file);
-                return true;
-              }
-            } else if ((beforeRevision != null) && (c.getAfterRevision() != null)) {
-              boolean underBefore = file.isUnder(beforeRevision.getFile(), false);
-              if (underBefore && c.isIsReplaced() && (! file.equals(beforeRevision.getFile()))) {
-                debug("For " + file + "some of parents is replaced: " + beforeRevision.getFile());
-                return true;
-              } else if (underBefore && (c.isMoved() || c.isRenamed())) {
-                debug("For " + file + "some of parents was renamed/moved: " + beforeRevision.getFile());
-                return true;
-              }
-            }
+          if (isDeletedIn(file, changeList)) {
+            return true;
           }
           indexOffset += INDEX_ENTRY_SIZE;
         }
@@ -1040,6 +1179,29 @@ public class ChangesCacheFile {
       return false;
     }
 
+    private boolean isDeletedIn(final FilePath file, final CommittedChangeList changeList) {
+      for(Change c: changeList.getChanges()) {
+        final ContentRevision beforeRevision = c.getBeforeRevision();
+        if ((beforeRevision != null) && (c.getAfterRevision() == null)) {
+          if (file.getIOFile().getAbsolutePath().equals(beforeRevision.getFile().getIOFile().getAbsolutePath()) ||
+              file.isUnder(beforeRevision.getFile(), false)) {
+            debug("Found subsequent deletion for file " + file);
+            return true;
+          }
+        } else if ((beforeRevision != null) && (c.getAfterRevision() != null)) {
+          boolean underBefore = file.isUnder(beforeRevision.getFile(), false);
+          if (underBefore && c.isIsReplaced() && (! file.equals(beforeRevision.getFile()))) {
+            debug("For " + file + "some of parents is replaced: " + beforeRevision.getFile());
+            return true;
+          } else if (underBefore && (c.isMoved() || c.isRenamed())) {
+            debug("For " + file + "some of parents was renamed/moved: " + beforeRevision.getFile());
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
     private IndexEntry getIndexEntryAtOffset(final long indexOffset) throws IOException {
       IndexEntry e = myIndexEntryCache.get(indexOffset);
       if (e == null) {
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes.committed;
+
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vcs.changes.FilePathsHelper;
+import com.intellij.openapi.vcs.versionBrowser.CommittedChangeList;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Inverted index for {@link ChangesCacheFile}: path -> numbers of index entries of changelists that touched it.
+ * For every changed path two kinds of records are kept: the exact path itself, and all its parent directories under the cache root;
+ * so both "changes of exactly this file" and "changes somewhere under this directory" are single lookups.
+ * Data is only appended, the same way as changelists are appended to the cache file.
+ * The length of the cache index file covered by the records is stored as well, so that an index left incomplete is detected.
+ */
+class ChangesCachePathIndex {
+  private static final String EXACT_PREFIX = "=";
+  private static final String UNDER_PREFIX = "/";
+  private static final String INDEXED_LENGTH_KEY = "#indexedLength";
+
+  private final PersistentHashMap<String, TIntArrayList> myMap;
+  private final FilePath myRootPath;
+
+  ChangesCachePathIndex(final File file, final FilePath rootPath) throws IOException {
+    myRootPath = rootPath;
+    myMap = new PersistentHashMap<String, TIntArrayList>(file, new EnumeratorStringDescriptor(), new IntListExternalizer());
+  }
+
+  public static File getIndexFile(final File cacheFile) {
+    return new File(cacheFile.getPath() + ".paths");
+  }
+
+  public void add(final CommittedChangeList list, final int entryNumber) throws IOException {
+    final Set<String> exact = new HashSet<String>();
+    final Set<String> under = new HashSet<String>();
+    for (Change change : list.getChanges()) {
+      collectKeys(change.getBeforeRevision(), exact, under);
+      collectKeys(change.getAfterRevision(), exact, under);
+    }
+    for (String key : exact) {
+      append(EXACT_PREFIX + key, entryNumber);
+    }
+    for (String key : under) {
+      append(UNDER_PREFIX + key, entryNumber);
+    }
+  }
+
+  private void collectKeys(final ContentRevision revision, final Set<String> exact, final Set<String> under) {
+    if (revision == null) return;
+    final FilePath path = revision.getFile();
+    exact.add(FilePathsHelper.convertPath(path));
+    if (path.isNonLocal() || ! path.isUnder(myRootPath, true)) return;
+    FilePath parent = path.getParentPath();
+    while (parent != null && parent.isUnder(myRootPath, false)) {
+      if (! under.add(FilePathsHelper.convertPath(parent))) break;
+      parent = parent.getParentPath();
+    }
+  }
+
+  private void append(final String key, final int entryNumber) throws IOException {
+    myMap.appendData(key, new PersistentHashMap.ValueDataAppender() {
+      @Override
+      public void append(DataOutput out) throws IOException {
+        out.writeInt(entryNumber);
+      }
+    });
+  }
+
+  /**
+   * @return sorted numbers of index entries of changelists that changed exactly the given path
+   */
+  @NotNull
+  public int[] getExact(final FilePath path) throws IOException {
+    return get(EXACT_PREFIX + FilePathsHelper.convertPath(path));
+  }
+
+  /**
+   * @return sorted numbers of index entries of changelists that changed the given path or anything under it
+   */
+  @NotNull
+  public int[] getExactOrUnder(final FilePath path) throws IOException {
+    final TIntHashSet result = new TIntHashSet(getExact(path));
+    result.addAll(get(UNDER_PREFIX + FilePathsHelper.convertPath(path)));
+    final int[] numbers = result.toArray();
+    Arrays.sort(numbers);
+    return numbers;
+  }
+
+  /**
+   * @return length of the cache index file which changelists are all added to this index, 0 for a new index
+   */
+  public long getIndexedLength() throws IOException {
+    final TIntArrayList value = myMap.get(INDEXED_LENGTH_KEY);
+    if (value == null || value.size() != 2) return 0;
+    return ((long) value.get(0) << 32) | (value.get(1) & 0xFFFFFFFFL);
+  }
+
+  public void setIndexedLength(final long length) throws IOException {
+    final TIntArrayList value = new TIntArrayList(2);
+    value.add((int) (length >>> 32));
+    value.add((int) length);
+    myMap.put(INDEXED_LENGTH_KEY, value);
+  }
+
+  @NotNull
+  private int[] get(final String key) throws IOException {
+    final TIntArrayList list = myMap.get(key);
+    if (list == null) return ArrayUtil.EMPTY_INT_ARRAY;
+    final int[] numbers = list.toNativeArray();
+    Arrays.sort(numbers);
+    return numbers;
+  }
+
+  public void force() {
+    myMap.force();
+  }
+
+  public void close() throws IOException {
+    myMap.close();
+  }
+
+  private static class IntListExternalizer implements DataExternalizer<TIntArrayList> {
+    @Override
+    public void save(DataOutput out, TIntArrayList value) throws IOException {
+      for (int i = 0; i < value.size(); i++) {
+        out.writeInt(value.get(i));
+      }
+    }
+
+    @Override
+    public TIntArrayList read(DataInput in) throws IOException {
+      final TIntArrayList result = new TIntArrayList();
+      final DataInputStream stream = (DataInputStream)in;
+      while (stream.available() > 0) {
+        result.add(in.readInt());
+      }
+      return result;
+    }
+  }
+}
@@ -177,6 +177,7 @@ public class CommittedChangesCache implements PersistentStateComponent<Committed
       public void dispose() {
         cancelRefreshTimer();
         myConnection.disconnect();
+        myCachesHolder.closeAllCaches();
       }
     });
     myExternallyLoadedChangeLists = new ConcurrentHashMap<String, Pair<Long, List<CommittedChangeList>>>();
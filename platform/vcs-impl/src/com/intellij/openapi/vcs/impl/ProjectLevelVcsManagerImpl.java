@@ -137,7 +137,7 @@ public class ProjectLevelVcsManagerImpl extends ProjectLevelVcsManagerEx impleme
       myVcsEventListenerManager = new VcsEventsListenerManagerImpl();
     }
 
-    myVcsHistoryCache = new VcsHistoryCache();
+    myVcsHistoryCache = new VcsHistoryCache(myProject);
     myContentRevisionCache = new ContentRevisionCache();
     myConnect = myMessageBus.connect();
     myVcsFileListenerContextHelper = VcsFileListenerContextHelper.getInstance(myProject);
@@ -209,6 +209,7 @@ public class ProjectLevelVcsManagerImpl extends ProjectLevelVcsManagerEx impleme
     myMappings.disposeMe();
     myConnect.disconnect();
     myAnnotationLocalChangesListener.dispose();
+    myVcsHistoryCache.dispose();
     myContentManager = null;
 
     ToolWindowManager toolWindowManager = ToolWindowManager.getInstance(myProject);
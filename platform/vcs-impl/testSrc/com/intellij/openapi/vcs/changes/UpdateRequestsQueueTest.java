@@ -0,0 +1,80 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class UpdateRequestsQueueTest {
+  private static final long QUIET_PERIOD = 300;
+  private static final long MAX_LATENCY = 3000;
+
+  @Test
+  public void testSingleRequestIsNotPostponed() throws Exception {
+    assertEquals(0, postpone(1000, 1000, 1000 + QUIET_PERIOD));
+  }
+
+  @Test
+  public void testPostponedUntilQuietPeriodPasses() throws Exception {
+    assertEquals(200, postpone(1000, 1200, 1300));
+    assertEquals(0, postpone(1000, 1200, 1500));
+  }
+
+  @Test
+  public void testNotPostponedAfterMaxLatency() throws Exception {
+    assertEquals(100, postpone(1000, 3800, 3900));
+    assertEquals(0, postpone(1000, 3950, 4000));
+    assertEquals(0, postpone(1000, 4100, 4200));
+  }
+
+  @Test
+  public void testUpdateOfContinuousRequestsStartsAtMaxLatency() throws Exception {
+    // a request every 100 ms, much more often than the quiet period
+    assertEquals(MAX_LATENCY, simulateUpdateStart(100, 10 * MAX_LATENCY));
+  }
+
+  @Test
+  public void testUpdateOfBurstStartsAfterQuietPeriod() throws Exception {
+    // requests during one second, then none
+    assertEquals(1000 + QUIET_PERIOD, simulateUpdateStart(100, 1000));
+  }
+
+  @Test
+  public void testUpdateOfRareRequestsIsNotPostponed() throws Exception {
+    assertEquals(QUIET_PERIOD, simulateUpdateStart(QUIET_PERIOD * 2, 10 * MAX_LATENCY));
+  }
+
+  private static long postpone(final long first, final long last, final long now) {
+    return UpdateRequestsQueue.getPostponeTime(first, last, now, QUIET_PERIOD, MAX_LATENCY);
+  }
+
+  /**
+   * Requests come each {@code interval} ms from 0 till {@code duration}; the update is scheduled after the quiet period
+   * since the first one and rescheduled as long as it should be postponed, the same way the queue does it
+   *
+   * @return time when the update starts
+   */
+  private static long simulateUpdateStart(final long interval, final long duration) {
+    long now = QUIET_PERIOD;
+    while (true) {
+      final long lastRequest = Math.min(now / interval * interval, duration / interval * interval);
+      final long postpone = postpone(0, lastRequest, now);
+      if (postpone == 0) return now;
+      now += postpone;
+    }
+  }
+}
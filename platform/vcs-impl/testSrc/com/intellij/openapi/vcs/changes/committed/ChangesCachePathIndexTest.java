@@ -0,0 +1,168 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes.committed;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.openapi.vcs.versionBrowser.CommittedChangeList;
+import com.intellij.openapi.vcs.versionBrowser.CommittedChangeListImpl;
+import com.intellij.testFramework.vcs.MockContentRevision;
+import com.intellij.util.io.PersistentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ChangesCachePathIndexTest {
+  private File myDir;
+  private File myIndexFile;
+  private ChangesCachePathIndex myIndex;
+
+  @Before
+  public void setUp() throws Exception {
+    myDir = FileUtil.createTempDirectory("changesCache", null);
+    myIndexFile = ChangesCachePathIndex.getIndexFile(new File(myDir, "cache"));
+    myIndex = openIndex();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    myIndex.close();
+    PersistentHashMap.deleteFilesStartingWith(myIndexFile);
+    FileUtil.delete(myDir);
+  }
+
+  @Test
+  public void testEntriesOfChangedPaths() throws Exception {
+    myIndex.add(changeList(1, modification("src/A.java"), modification("src/B.java")), 0);
+    myIndex.add(changeList(2, modification("src/A.java")), 1);
+    myIndex.add(changeList(3, deletion("src/B.java"), addition("src/C.java")), 2);
+
+    assertIndexed("src/A.java", 0, 1);
+    assertIndexed("src/B.java", 0, 2);
+    assertIndexed("src/C.java", 2);
+    assertIndexed("src/D.java");
+  }
+
+  @Test
+  public void testParentDirectoryIsNotIndexedByChildChanges() throws Exception {
+    myIndex.add(changeList(1, modification("src/A.java")), 0);
+    assertIndexed("src");
+  }
+
+  @Test
+  public void testChangesUnderDirectory() throws Exception {
+    myIndex.add(changeList(1, modification("src/a/A.java")), 0);
+    myIndex.add(changeList(2, modification("src/b/B.java")), 1);
+    myIndex.add(changeList(3, modification("src/a/b/C.java"), modification("src/b/B.java")), 2);
+    myIndex.add(changeList(4, modification("src")), 3);
+
+    assertIndexedUnder("src", 0, 1, 2, 3);
+    assertIndexedUnder("src/a", 0, 2);
+    assertIndexedUnder("src/a/b", 2);
+    assertIndexedUnder("src/b", 1, 2);
+    assertIndexedUnder("src/b/B.java", 1, 2);
+    assertIndexedUnder("src/c");
+  }
+
+  @Test
+  public void testPathsOutsideOfRootAreNotIndexedUnderParents() throws Exception {
+    final File outside = new File(myDir.getParentFile(), myDir.getName() + "_other/A.java");
+    myIndex.add(changeList(1, modification(new FilePathImpl(outside, false))), 0);
+    assertEquals("[0]", Arrays.toString(myIndex.getExact(new FilePathImpl(outside, false))));
+    assertEquals("[]", Arrays.toString(myIndex.getExactOrUnder(new FilePathImpl(outside.getParentFile(), true))));
+  }
+
+  @Test
+  public void testIndexedLength() throws Exception {
+    assertEquals(0, myIndex.getIndexedLength());
+    myIndex.add(changeList(1, modification("src/A.java")), 0);
+    myIndex.setIndexedLength(1L << 33 | 26);
+    myIndex.close();
+
+    myIndex = openIndex();
+    assertEquals(1L << 33 | 26, myIndex.getIndexedLength());
+    assertIndexed("src/A.java", 0);
+  }
+
+  @Test
+  public void testMovedFileIndexedByBothPaths() throws Exception {
+    myIndex.add(changeList(1, new Change(revision("src/A.java"), revision("src/B.java"))), 0);
+    assertIndexed("src/A.java", 0);
+    assertIndexed("src/B.java", 0);
+  }
+
+  @Test
+  public void testSurvivesReopening() throws Exception {
+    myIndex.add(changeList(1, modification("src/A.java")), 0);
+    myIndex.force();
+    myIndex.close();
+
+    myIndex = openIndex();
+    myIndex.add(changeList(2, modification("src/A.java")), 1);
+    assertIndexed("src/A.java", 0, 1);
+  }
+
+  private void assertIndexed(final String path, final int... expected) throws Exception {
+    assertEquals(Arrays.toString(expected), Arrays.toString(myIndex.getExact(path(path))));
+  }
+
+  private void assertIndexedUnder(final String path, final int... expected) throws Exception {
+    assertEquals(Arrays.toString(expected), Arrays.toString(myIndex.getExactOrUnder(path(path))));
+  }
+
+  private ChangesCachePathIndex openIndex() throws Exception {
+    return new ChangesCachePathIndex(myIndexFile, new FilePathImpl(myDir, true));
+  }
+
+  private FilePath path(final String relative) {
+    return new FilePathImpl(new File(myDir, relative), false);
+  }
+
+  private ContentRevision revision(final String relative) {
+    return new MockContentRevision(path(relative), VcsRevisionNumber.NULL);
+  }
+
+  private Change modification(final String relative) {
+    return modification(path(relative));
+  }
+
+  private static Change modification(final FilePath path) {
+    final ContentRevision revision = new MockContentRevision(path, VcsRevisionNumber.NULL);
+    return new Change(revision, revision);
+  }
+
+  private Change addition(final String relative) {
+    return new Change(null, revision(relative));
+  }
+
+  private Change deletion(final String relative) {
+    return new Change(revision(relative), null);
+  }
+
+  private static CommittedChangeList changeList(final long number, final Change... changes) {
+    return new CommittedChangeListImpl(String.valueOf(number), "", "", number, new Date(number), Arrays.asList(changes));
+  }
+}
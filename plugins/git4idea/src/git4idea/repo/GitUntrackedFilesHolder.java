@@ -22,6 +22,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.ChangeListManager;
 import com.intellij.openapi.vcs.changes.VcsDirtyScopeManager;
+import com.intellij.openapi.vcs.changes.VirtualFileIdSet;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.newvfs.BulkFileListener;
@@ -92,7 +93,7 @@ public class GitUntrackedFilesHolder implements Disposable, BulkFileListener {
   private final GitRepositoryFiles myRepositoryFiles;
   private final Git myGit;
 
-  private final Set<VirtualFile> myDefinitelyUntrackedFiles = new HashSet<VirtualFile>();
+  private final VirtualFileIdSet myDefinitelyUntrackedFiles = new VirtualFileIdSet();
   private final Set<VirtualFile> myPossiblyUntrackedFiles = new HashSet<VirtualFile>();
   private boolean myReady;   // if false, total refresh is needed
   private final Object LOCK = new Object();
@@ -158,6 +159,8 @@ public class GitUntrackedFilesHolder implements Disposable, BulkFileListener {
       rescanAll();
     }
     synchronized (myDefinitelyUntrackedFiles) {
+      // ids of deleted files are not returned, but would stay in the set until the next full rescan
+      myDefinitelyUntrackedFiles.removeDropped();
       return new ArrayList<VirtualFile>(myDefinitelyUntrackedFiles);
     }
   }